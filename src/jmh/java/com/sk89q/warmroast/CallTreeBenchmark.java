@@ -0,0 +1,140 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures logging sampled stacks into a call tree, which the aggregator
+ * does for every thread of every sample.
+ *
+ * <p>Stacks are <code>deep</code> (256 frames that differ only near the
+ * innermost end, like recursion), <code>wide</code> (32 frames with many
+ * distinct paths, so most logs add nodes) or <code>repeated</code> (a few
+ * stacks of 40 frames logged over and over, like a server's tick loop).
+ * Each iteration starts from an empty tree.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallTreeBenchmark {
+
+    private static final int STACKS = 1 << 16;
+    private static final StackTraceElement[] OUTER_FRAMES = new StackTraceElement[257];
+
+    static {
+        for (int i = 0; i < OUTER_FRAMES.length; i++) {
+            OUTER_FRAMES[i] = new StackTraceElement("net.example.Level" + i, "run", null, -1);
+        }
+    }
+
+    @Param({ "object", "compact" })
+    public String tree;
+
+    @Param({ "deep", "wide", "repeated" })
+    public String shape;
+
+    private FrameTable frames;
+    private StackTraceElement[][] stacks;
+    private ThreadNode node;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createStacks() {
+        Random random = new Random(0);
+        StackTraceElement[][] loop = new StackTraceElement[8][];
+        for (int i = 0; i < loop.length; i++) {
+            loop[i] = stack(random, 40, 3, 4);
+        }
+        stacks = new StackTraceElement[STACKS][];
+        for (int i = 0; i < STACKS; i++) {
+            switch (shape) {
+                case "deep":
+                    stacks[i] = stack(random, 256, 4, 16);
+                    break;
+                case "wide":
+                    stacks[i] = stack(random, 32, 32, 16);
+                    break;
+                case "repeated":
+                    stacks[i] = loop[random.nextInt(loop.length)];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown shape " + shape);
+            }
+        }
+    }
+
+    /**
+     * Create a stack whose outer frames are always the same, and whose
+     * innermost frames are picked at random. The outer frames are shared
+     * between stacks, as a thread dump's are not, to keep the setup small.
+     *
+     * @param random the random source
+     * @param depth the number of frames
+     * @param varied how many of the innermost frames vary
+     * @param choices how many methods each varied frame is picked from
+     * @return the stack, innermost frame first
+     */
+    private static StackTraceElement[] stack(Random random, int depth, int varied, int choices) {
+        StackTraceElement[] stack = new StackTraceElement[depth];
+        for (int i = 0; i < depth; i++) {
+            int level = depth - i;
+            if (i < varied) {
+                stack[i] = new StackTraceElement("net.example.Level" + level,
+                        "call" + random.nextInt(choices), null, -1);
+            } else {
+                stack[i] = OUTER_FRAMES[level];
+            }
+        }
+        return stack;
+    }
+
+    @Setup(Level.Iteration)
+    public void createTree() {
+        frames = new FrameTable();
+        node = new ThreadNode("Server thread", tree.equals("compact")
+                ? new CompactCallTree(frames) : new ObjectCallTree(frames));
+        next = 0;
+    }
+
+    @Benchmark
+    public int log() {
+        StackTraceElement[] stack = stacks[next];
+        next = (next + 1) & (STACKS - 1);
+        return node.log(stack, 1000000);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading MCP mappings from a generated joined.srg and
+ * methods.csv, with <code>methods</code> methods on each class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappingBenchmark {
+
+    @Param({ "5000", "50000" })
+    public int classes;
+
+    @Param({ "8" })
+    public int methods;
+
+    private File joinedFile;
+    private File methodsFile;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        joinedFile = File.createTempFile("joined", ".srg");
+        methodsFile = File.createTempFile("methods", ".csv");
+        try (BufferedWriter srg = new BufferedWriter(new FileWriter(joinedFile));
+             BufferedWriter csv = new BufferedWriter(new FileWriter(methodsFile))) {
+            csv.write("searge,name,side,desc\n");
+            int id = 0;
+            for (int i = 0; i < classes; i++) {
+                String obfuscated = obfuscatedName(i);
+                String actual = "net/minecraft/pkg" + (i % 64) + "/Class" + i;
+                srg.write("CL: " + obfuscated + " " + actual + "\n");
+                for (int j = 0; j < methods; j++) {
+                    String searge = "func_" + id++ + "_" + obfuscatedName(j);
+                    String desc = "(I)V";
+                    srg.write("MD: " + obfuscated + "/" + obfuscatedName(j) + " " + desc + " " +
+                            actual + "/" + searge + " " + desc + "\n");
+                    csv.write(searge + ",method" + j + ",2,Does something\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a short name like the ones obfuscated classes and methods have.
+     *
+     * @param index the index
+     * @return a, b, ..., z, aa, ab, ...
+     */
+    private static String obfuscatedName(int index) {
+        StringBuilder builder = new StringBuilder();
+        do {
+            builder.insert(0, (char) ('a' + index % 26));
+            index = index / 26 - 1;
+        } while (index >= 0);
+        return builder.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        joinedFile.delete();
+        methodsFile.delete();
+    }
+
+    @Benchmark
+    public McpMapping read() throws IOException {
+        McpMapping mapping = new McpMapping();
+        mapping.read(joinedFile, methodsFile);
+        return mapping;
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering a whole thread's tree as HTML and as JSON, on random
+ * trees of <code>nodes</code> nodes. The output is counted and thrown
+ * away, so only the rendering is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class RenderBenchmark {
+
+    @Param({ "10000", "100000", "1000000", "5000000" })
+    public int nodes;
+
+    @Param({ "object", "compact" })
+    public String tree;
+
+    private final McpMapping mapping = new McpMapping();
+    private ThreadNode node;
+
+    /**
+     * Build a random recursive tree: each node after the root is the child
+     * of a node picked at random from those before it, which gives the
+     * wide tops and long thin tails that real profiles have.
+     */
+    @Setup(Level.Trial)
+    public void createTree() {
+        FrameTable frames = new FrameTable();
+        node = new ThreadNode("Server thread", tree.equals("compact")
+                ? new CompactCallTree(frames) : new ObjectCallTree(frames));
+
+        Random random = new Random(0);
+        int[] parents = new int[nodes];
+        int[] depths = new int[nodes];
+        int[] frameIds = new int[nodes];
+        int[] childCounts = new int[nodes];
+        int[] path = new int[64];
+        parents[0] = -1;
+        for (int i = 1; i < nodes; i++) {
+            int parent = random.nextInt(i);
+            parents[i] = parent;
+            depths[i] = depths[parent] + 1;
+            frameIds[i] = frames.intern("net.example.Depth" + depths[i],
+                    "call" + childCounts[parent]++).getId();
+
+            int depth = depths[i];
+            if (depth > path.length) {
+                path = new int[depth * 2];
+            }
+            for (int n = i, j = depth - 1; j >= 0; n = parents[n], j--) {
+                path[j] = frameIds[n];
+            }
+            node.log(path, depth, 1 + random.nextInt(1000000));
+        }
+    }
+
+    @Benchmark
+    public long html() throws IOException {
+        CountingWriter writer = new CountingWriter();
+        node.writeHtml(writer, mapping);
+        return writer.count;
+    }
+
+    @Benchmark
+    public long json() throws IOException {
+        CountingWriter writer = new CountingWriter();
+        node.writeJson(writer, mapping);
+        return writer.count;
+    }
+
+    private static class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures one whole sample: dumping every thread through this VM's own
+ * thread bean, then adding the dump to the trees, as a roast does for
+ * each tick. <code>threads</code> extra threads wait at a depth of 40
+ * frames so the dump has realistic stacks to walk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplingBenchmark {
+
+    private static final int DEPTH = 40;
+
+    @Param({ "16", "128" })
+    public int threads;
+
+    @Param({ "false", "true" })
+    public boolean cpu;
+
+    private final List<Thread> waiters = new ArrayList<>();
+    private volatile boolean stopped;
+    private WarmRoast roast;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, InterruptedException {
+        CountDownLatch started = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> descend(DEPTH, started), "Waiter " + i);
+            thread.setDaemon(true);
+            thread.start();
+            waiters.add(thread);
+        }
+        started.await();
+
+        roast = new WarmRoast(null, TimeUnit.MILLISECONDS.toNanos(10), 16);
+        roast.setCpuMode(cpu);
+        roast.connect(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    private void descend(int depth, CountDownLatch started) {
+        if (depth > 0) {
+            descend(depth - 1, started);
+        } else {
+            started.countDown();
+            while (!stopped) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        stopped = true;
+        for (Thread thread : waiters) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Benchmark
+    public boolean sample() {
+        roast.capture(TimeUnit.MILLISECONDS.toNanos(10));
+        return roast.aggregateNext();
+    }
+
+}
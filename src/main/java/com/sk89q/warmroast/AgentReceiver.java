@@ -0,0 +1,207 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import com.sun.tools.attach.AgentInitializationException;
+import com.sun.tools.attach.AgentLoadException;
+import com.sun.tools.attach.VirtualMachine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads a {@link SamplingAgent} into the target VM and applies the deltas
+ * it sends to a {@link WarmRoast}.
+ */
+class AgentReceiver implements Runnable {
+
+    private static final long FLUSH_INTERVAL = 1000000000L;
+
+    private final WarmRoast roast;
+    private ServerSocket serverSocket;
+    private final List<String> threadNames = new ArrayList<>();
+    private final List<Frame> frames = new ArrayList<>();
+    // Mirrors DeltaTree: for roots, parent is -1 and frame is the thread index
+    private int[] parent = new int[256];
+    private int[] frame = new int[256];
+    private int nodeCount;
+    // Deltas received since the last end-of-batch message
+    private int[] batchNodes = new int[256];
+    private long[] batchTimes = new long[256];
+    private int batchSize;
+    private int[] path = new int[256];
+
+    AgentReceiver(WarmRoast roast) {
+        this.roast = roast;
+    }
+
+    /**
+     * Load the agent into a VM.
+     *
+     * @param vm the VM
+     * @param interval the interval between samples, in nanoseconds, which is
+     *     the shortest interval if there is a budget
+     * @param budget the fraction of time to spend capturing, or 0 for a
+     *     fixed interval
+     * @param selection the threads to sample, or null for all
+     * @param folder the folder to shorten stacks with, or null
+     * @throws IOException on I/O error
+     * @throws AgentLoadException if the agent can't be loaded
+     * @throws AgentInitializationException if the agent fails to start
+     * @see RateController
+     */
+    void attach(VirtualMachine vm, long interval, double budget, ThreadSelection selection,
+            StackFolder folder)
+            throws IOException, AgentLoadException, AgentInitializationException {
+        File jar;
+        try {
+            jar = new File(SamplingAgent.class.getProtectionDomain()
+                    .getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Could not find the WarmRoast jar", e);
+        }
+        if (!jar.isFile()) {
+            throw new IOException("Agent mode requires running WarmRoast from its jar, " +
+                    "but it was loaded from " + jar.getAbsolutePath());
+        }
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        vm.loadAgent(jar.getAbsolutePath(), SamplingAgent.formatOptions(
+                serverSocket.getLocalPort(), interval, budget, FLUSH_INTERVAL, selection, folder));
+    }
+
+    @Override
+    public void run() {
+        try (Socket socket = serverSocket.accept();
+             DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(socket.getInputStream()))) {
+            serverSocket.close();
+            roast.getSampler().markStarted();
+            while (true) {
+                if (!read(in)) {
+                    System.err.println("Sampling has stopped.");
+                    roast.saveOutputs();
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("The agent in the target VM has disconnected.");
+        } catch (IOException e) {
+            System.err.println("Lost the connection to the agent in the target VM.");
+            e.printStackTrace();
+        }
+    }
+
+    private boolean read(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case DeltaTree.MSG_FRAME:
+                String className = in.readUTF();
+                String methodName = in.readUTF();
+                frames.add(roast.getFrames().intern(className, methodName));
+                break;
+            case DeltaTree.MSG_THREAD:
+                addNode(-1, threadNames.size());
+                threadNames.add(in.readUTF());
+                break;
+            case DeltaTree.MSG_NODE:
+                int parentNode = Varints.readVarInt(in);
+                int frameIndex = Varints.readVarInt(in);
+                addNode(parentNode, frames.get(frameIndex).getId());
+                break;
+            case DeltaTree.MSG_TIME:
+                if (batchSize == batchNodes.length) {
+                    batchNodes = Arrays.copyOf(batchNodes, batchSize * 2);
+                    batchTimes = Arrays.copyOf(batchTimes, batchSize * 2);
+                }
+                batchNodes[batchSize] = Varints.readVarInt(in);
+                batchTimes[batchSize] = Varints.readVarLong(in);
+                batchSize++;
+                break;
+            case DeltaTree.MSG_END:
+                long samples = Varints.readVarLong(in);
+                long latency = Varints.readVarLong(in);
+                long maxLatency = Varints.readVarLong(in);
+                long missed = Varints.readVarLong(in);
+                long interval = Varints.readVarLong(in);
+                roast.getSampler().record(samples, latency, maxLatency, missed);
+                // Only reported, since the agent's sampler is the one running
+                roast.getSampler().setInterval(interval);
+                roast.recordCaptured(samples);
+                if (samples > 0) {
+                    // The agent only sends totals, so each dump counts as the mean
+                    roast.getDumpTimes().record(latency / samples, samples);
+                }
+                long start = System.nanoTime();
+                applyBatch();
+                roast.getAggregationTimes().record(System.nanoTime() - start);
+                return !roast.isPastEndTime();
+            default:
+                throw new IOException("Unknown message type " + type);
+        }
+        return true;
+    }
+
+    private void addNode(int parentNode, int frameId) {
+        if (nodeCount == parent.length) {
+            parent = Arrays.copyOf(parent, nodeCount * 2);
+            frame = Arrays.copyOf(frame, nodeCount * 2);
+        }
+        parent[nodeCount] = parentNode;
+        frame[nodeCount] = frameId;
+        nodeCount++;
+    }
+
+    private void applyBatch() {
+        long now = System.currentTimeMillis();
+        synchronized (roast) {
+            roast.getRevisions().increment();
+            for (int i = 0; i < batchSize; i++) {
+                int length = 0;
+                int node = batchNodes[i];
+                while (parent[node] != -1) {
+                    if (length == path.length) {
+                        path = Arrays.copyOf(path, length * 2);
+                    }
+                    path[length++] = frame[node];
+                    node = parent[node];
+                }
+                // The path was collected innermost first
+                for (int a = 0, b = length - 1; a < b; a++, b--) {
+                    int t = path[a];
+                    path[a] = path[b];
+                    path[b] = t;
+                }
+                roast.log(threadNames.get(frame[node]), path, length, batchTimes[i], now);
+            }
+        }
+        batchSize = 0;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+/**
+ * Stores the tree of stack frames sampled from one thread.
+ */
+public interface CallTree {
+
+    /**
+     * Receives nodes from {@link #visitChangedSince(int, Visitor)}.
+     */
+    interface Visitor {
+        /**
+         * Visit a node. A node is always visited before its children.
+         *
+         * @param id the node's ID, stable for the life of the tree
+         * @param parentId the parent's ID, where the root is 0
+         * @param frame the frame
+         * @param time the node's total time, in nanoseconds
+         */
+        void visit(int id, int parentId, Frame frame, long time);
+    }
+
+    /**
+     * Record a sampled stack.
+     *
+     * @param elements the stack, innermost frame first
+     * @param time the time to credit every frame on the stack with, in nanoseconds
+     * @return the ID of the node for the innermost frame
+     */
+    int log(StackTraceElement[] elements, long time);
+
+    /**
+     * Record a sampled stack given as interned frame IDs.
+     *
+     * @param frameIds the frame IDs, outermost frame first
+     * @param length the number of frame IDs to use
+     * @param time the time to credit every frame on the stack with, in nanoseconds
+     * @return the ID of the node for the innermost frame
+     */
+    int log(int[] frameIds, int length, long time);
+
+    /**
+     * Get a child of a node, adding it if there is none, without changing
+     * any node's time. With {@link #addTime(int, long)}, this builds a tree
+     * from saved totals without walking from the root for every node.
+     *
+     * @param parentId the parent's ID, where the root is 0
+     * @param frameId the child's frame ID
+     * @return the child's ID
+     */
+    int addChild(int parentId, int frameId);
+
+    /**
+     * Add time to one node, but not to its ancestors.
+     *
+     * @param id the node's ID, where the root is 0
+     * @param time the time, in nanoseconds
+     */
+    void addTime(int id, long time);
+
+    /**
+     * Get the total time of every sample logged.
+     *
+     * @return the total time, in nanoseconds
+     */
+    long getTotalTime();
+
+    /**
+     * Get the root node, which has no frame and whose children are the
+     * outermost frames.
+     *
+     * @return the root
+     */
+    StackTraceNode getRoot();
+
+    /**
+     * Get the parent of a node. A node's ID is always greater than its
+     * parent's, and frame nodes are numbered from 1 to {@link #size()}.
+     *
+     * @param id the node's ID
+     * @return the parent's ID, or -1 for the root
+     */
+    int getParent(int id);
+
+    /**
+     * Get the frame of a node.
+     *
+     * @param id the node's ID
+     * @return the frame, or null for the root
+     */
+    Frame getFrame(int id);
+
+    /**
+     * Visit every frame node whose time changed after the given revision.
+     *
+     * <p>Because a sample changes every node on its path, the search skips
+     * any subtree whose root has not changed.</p>
+     *
+     * @param revision the last revision the caller has seen
+     * @param visitor the visitor
+     */
+    void visitChangedSince(int revision, Visitor visitor);
+
+    /**
+     * Get the number of frame nodes in the tree.
+     *
+     * @return the number of nodes
+     */
+    int size();
+
+    /**
+     * Estimate the heap used by the tree, assuming a 64-bit VM with
+     * compressed references.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes();
+
+}
@@ -18,45 +18,31 @@
 
 package com.sk89q.warmroast;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * A view of one class in a {@link MappingTable}.
+ */
 public class ClassMapping {
     
-    private final String obfuscated;
-    private final String actual;
-    private final Map<String, List<String>> methods = new HashMap<>();
+    private final MappingTable table;
+    private final int index;
     
-    public ClassMapping(String obfuscated, String actual) {
-        this.obfuscated = obfuscated;
-        this.actual = actual;
+    ClassMapping(MappingTable table, int index) {
+        this.table = table;
+        this.index = index;
     }
 
     public String getObfuscated() {
-        return obfuscated;
+        return table.classKeys[index];
     }
     
     public String getActual() {
-        return actual;
-    }
-    
-    public void addMethod(String obfuscated, String actual) {
-        List<String> m = methods.get(obfuscated);
-        if (m == null) {
-            m = new ArrayList<>();
-            methods.put(obfuscated, m);
-        }
-        m.add(actual);
+        return table.classNames[index];
     }
     
     public List<String> mapMethod(String obfuscated) {
-        List<String> m = methods.get(obfuscated);
-        if (m == null) {
-            return new ArrayList<>();
-        }
-        return m;
+        return table.findMethods(index, obfuscated);
     }
     
     @Override
@@ -0,0 +1,319 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A call tree stored in parallel primitive arrays rather than one object
+ * per node.
+ *
+ * <p>Node 0 is the root. Children are kept in a singly linked sibling list,
+ * and a child that is found is moved to the front of its list so that hot
+ * frames are found after a step or two.</p>
+ */
+public class CompactCallTree implements CallTree {
+
+    static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final FrameTable frames;
+    private final RevisionCounter revisions;
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private int[] frame = new int[INITIAL_CAPACITY];
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+    private int[] nextSibling = new int[INITIAL_CAPACITY];
+    private long[] time = new long[INITIAL_CAPACITY];
+    private int[] revision = new int[INITIAL_CAPACITY];
+    private int count;
+    private final CompactNode root;
+
+    public CompactCallTree(FrameTable frames) {
+        this(frames, new RevisionCounter());
+    }
+
+    public CompactCallTree(FrameTable frames, RevisionCounter revisions) {
+        this.frames = frames;
+        this.revisions = revisions;
+        add(NONE, NONE);
+        root = new CompactNode(this, 0);
+    }
+
+    @Override
+    public int log(StackTraceElement[] elements, long time) {
+        int revision = revisions.get();
+        int node = 0;
+        this.time[node] += time;
+        this.revision[node] = revision;
+        for (int i = elements.length - 1; i >= 0; i--) {
+            StackTraceElement element = elements[i];
+            int frameId = frames.intern(element.getClassName(), element.getMethodName()).getId();
+            int child = findChild(node, frameId);
+            if (child == NONE) {
+                child = add(node, frameId);
+            }
+            this.time[child] += time;
+            this.revision[child] = revision;
+            node = child;
+        }
+        return node;
+    }
+
+    @Override
+    public int log(int[] frameIds, int length, long time) {
+        int revision = revisions.get();
+        int node = 0;
+        this.time[node] += time;
+        this.revision[node] = revision;
+        for (int i = 0; i < length; i++) {
+            int child = findChild(node, frameIds[i]);
+            if (child == NONE) {
+                child = add(node, frameIds[i]);
+            }
+            this.time[child] += time;
+            this.revision[child] = revision;
+            node = child;
+        }
+        return node;
+    }
+
+    private int findChild(int node, int frameId) {
+        int prev = NONE;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (frame[child] == frameId) {
+                if (prev != NONE) {
+                    nextSibling[prev] = nextSibling[child];
+                    nextSibling[child] = firstChild[node];
+                    firstChild[node] = child;
+                }
+                return child;
+            }
+            prev = child;
+        }
+        return NONE;
+    }
+
+    /**
+     * Find a child without moving it to the front of its siblings, for
+     * readers that should not change the tree.
+     *
+     * @param node the parent
+     * @param frameId the frame ID
+     * @return the child, or {@link #NONE}
+     */
+    int findChildQuietly(int node, int frameId) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (frame[child] == frameId) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private int add(int parentNode, int frameId) {
+        if (count == frame.length) {
+            int capacity = count + (count >> 1);
+            parent = Arrays.copyOf(parent, capacity);
+            frame = Arrays.copyOf(frame, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            time = Arrays.copyOf(time, capacity);
+            revision = Arrays.copyOf(revision, capacity);
+        }
+        int node = count++;
+        parent[node] = parentNode;
+        frame[node] = frameId;
+        firstChild[node] = NONE;
+        if (parentNode != NONE) {
+            nextSibling[node] = firstChild[parentNode];
+            firstChild[parentNode] = node;
+        } else {
+            nextSibling[node] = NONE;
+        }
+        return node;
+    }
+
+    @Override
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    @Override
+    public Frame getFrame(int node) {
+        return frame[node] != NONE ? frames.get(frame[node]) : null;
+    }
+
+    /**
+     * Add a node with a known time, for building a tree from another.
+     *
+     * @param parentNode the parent
+     * @param frameId the frame ID
+     * @param time the node's total time, in nanoseconds
+     * @return the new node
+     */
+    int append(int parentNode, int frameId, long time) {
+        int node = add(parentNode, frameId);
+        this.time[node] = time;
+        return node;
+    }
+
+    @Override
+    public int addChild(int parentNode, int frameId) {
+        int child = findChildQuietly(parentNode, frameId);
+        return child != NONE ? child : add(parentNode, frameId);
+    }
+
+    @Override
+    public void addTime(int node, long time) {
+        this.time[node] += time;
+        this.revision[node] = revisions.get();
+    }
+
+    /**
+     * Copy a tree, so that it can be read while the original keeps
+     * changing.
+     *
+     * @param tree the tree, which must not change while it is copied
+     * @param frames the frame table
+     * @return the copy
+     */
+    static CompactCallTree copyOf(CallTree tree, FrameTable frames) {
+        CompactCallTree copy = new CompactCallTree(frames);
+        copy.addTime(0, tree.getTotalTime());
+        int[] ids = new int[tree.size() + 1];
+        // Every node's revision is at least 0, and parents are visited first
+        tree.visitChangedSince(-1, (id, parentId, frame, time) ->
+                ids[id] = copy.append(ids[parentId], frame.getId(), time));
+        return copy;
+    }
+
+    /**
+     * Copy only the part of a tree that a reader will look at: the nodes on
+     * a path from the root, then the given number of levels below the end
+     * of it. Below a node with less than the minimum time, only its
+     * children are copied, so that they can still be counted.
+     *
+     * @param root the root of the tree, which must not change while it is copied
+     * @param path frame IDs from the root
+     * @param levels the number of levels to copy below the end of the path
+     * @param minTime the time a node needs for its grandchildren to be copied
+     * @param frames the frame table
+     * @return the copy, which only has the root if the path is not in the tree
+     */
+    static CompactCallTree copyOf(StackTraceNode root, int[] path, int levels, long minTime,
+            FrameTable frames) {
+        CompactCallTree copy = new CompactCallTree(frames);
+        copy.addTime(0, root.getTotalTime());
+        StackTraceNode node = root;
+        int id = 0;
+        for (int frameId : path) {
+            node = node.findChild(frameId);
+            if (node == null) {
+                return copy;
+            }
+            id = copy.append(id, frameId, node.getTotalTime());
+        }
+        copy.copyChildren(id, node, levels, minTime);
+        return copy;
+    }
+
+    private void copyChildren(int id, Node parent, int levels, long minTime) {
+        Node[] children = new Node[parent.getChildCount()];
+        parent.fillChildren(children);
+        for (Node node : children) {
+            StackTraceNode child = (StackTraceNode) node;
+            int childId = append(id, child.getFrame().getId(), child.getTotalTime());
+            if (levels > 1 && child.getTotalTime() >= minTime) {
+                copyChildren(childId, child, levels - 1, minTime);
+            }
+        }
+    }
+
+    long getTime(int node) {
+        return time[node];
+    }
+
+    List<CompactNode> getChildren(int node) {
+        List<CompactNode> list = new ArrayList<>();
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            list.add(new CompactNode(this, child));
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    int getChildCount(int node) {
+        int count = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    void fillChildren(int node, Node[] out) {
+        int n = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            out[n++] = new CompactNode(this, child);
+        }
+    }
+
+    @Override
+    public long getTotalTime() {
+        return time[0];
+    }
+
+    @Override
+    public CompactNode getRoot() {
+        return root;
+    }
+
+    @Override
+    public void visitChangedSince(int revision, Visitor visitor) {
+        int[] stack = new int[64];
+        int depth = 0;
+        stack[depth++] = 0;
+        while (depth > 0) {
+            int node = stack[--depth];
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                if (this.revision[child] > revision) {
+                    visitor.visit(child, node, frames.get(frame[child]), time[child]);
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+                    stack[depth++] = child;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return count - 1;
+    }
+
+    @Override
+    public long estimateBytes() {
+        // This object, then five int[] and one long[] of the same length
+        return 48 + 5 * IntMap.arrayBytes(frame.length, 4) + IntMap.arrayBytes(time.length, 8);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Collection;
+
+/**
+ * A view of one node in a {@link CompactCallTree}, created while rendering.
+ */
+class CompactNode extends StackTraceNode {
+
+    private final CompactCallTree tree;
+    private final int index;
+
+    CompactNode(CompactCallTree tree, int index) {
+        super(tree.getFrame(index));
+        this.tree = tree;
+        this.index = index;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    @Override
+    long getTotalTime() {
+        return tree.getTime(index);
+    }
+
+    @Override
+    Collection<CompactNode> getChildren() {
+        return tree.getChildren(index);
+    }
+
+    @Override
+    CompactNode findChild(int frameId) {
+        int child = tree.findChildQuietly(index, frameId);
+        return child != CompactCallTree.NONE ? new CompactNode(tree, child) : null;
+    }
+
+    @Override
+    int getChildCount() {
+        return tree.getChildCount(index);
+    }
+
+    @Override
+    void fillChildren(Node[] out) {
+        tree.fillChildren(index, out);
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Serves the summary of lock contention as JSON:
+ *
+ * <pre>
+ * {"locks":[{"name":"java.lang.Object","time":120000,
+ *   "instances":[{"name":"java.lang.Object@1b6d3586","time":120000}],
+ *   "threads":[{"name":"Server thread","time":120000}],
+ *   "owners":[{"name":"Chunk loader","frame":"net.minecraft.World.save()","time":120000}]}],
+ *  "threads":[{"name":"Server thread","blockedCount":12,"blockedTime":130000,
+ *   "waitedCount":3,"waitedTime":-1}]}
+ * </pre>
+ *
+ * <p>Locks are listed by class, with the instances of each that blocked
+ * threads the longest. Owners are the threads seen holding each lock, with
+ * the frame that locked it when it is a monitor. Times are in microseconds. The call
+ * sites are in the trees of {@link View#CONTENTION}.</p>
+ *
+ * @see LockContention
+ */
+public class ContentionServlet extends HttpServlet {
+
+    private static final long serialVersionUID = -5080245377254911603L;
+
+    private final List<WarmRoast> roasts;
+
+    public ContentionServlet(List<WarmRoast> roasts) {
+        this.roasts = roasts;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        WarmRoast roast = Servlets.findRoast(roasts, request, response);
+        if (roast == null) {
+            return;
+        }
+
+        // The summary is small, so it is rendered under the lock and sent
+        // after it is released, so that a slow client doesn't hold up sampling
+        StringWriter json = new StringWriter();
+        synchronized (roast) {
+            LockContention contention = roast.getContention();
+            if (contention != null) {
+                contention.writeJson(json, roast.getMapping(), new RenderBuffer());
+            }
+        }
+        if (json.getBuffer().length() == 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND,
+                    "Lock contention is not recorded; run with --contention");
+            return;
+        }
+
+        response.setContentType("application/json; charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        try (Writer w = Servlets.openWriter(request, response)) {
+            w.write(json.toString());
+        }
+    }
+}
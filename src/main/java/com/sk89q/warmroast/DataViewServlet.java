@@ -25,41 +25,99 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Collection;
+import java.util.List;
 
 public class DataViewServlet extends HttpServlet {
     
     private static final long serialVersionUID = -2331397310804298286L;
     
-    private final WarmRoast roast;
+    private final List<WarmRoast> roasts;
 
-    public DataViewServlet(WarmRoast roast) {
-        this.roast = roast;
+    public DataViewServlet(List<WarmRoast> roasts) {
+        this.roasts = roasts;
     }
 
     @Override
     protected void doGet(HttpServletRequest request,
             HttpServletResponse response) throws ServletException, IOException {
+        WarmRoast roast = Servlets.findRoast(roasts, request, response);
+        View view = roast != null ? Servlets.findView(roast, request, response) : null;
+        if (view == null) {
+            return;
+        }
+
+        TimeRange range;
+        try {
+            range = Servlets.parseRange(request);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Bad 'window', 'from' or 'to'");
+            return;
+        }
+
         response.setContentType("text/html; charset=utf-8");
         response.setStatus(HttpServletResponse.SC_OK);
         
-        PrintWriter w = response.getWriter();
+        PrintWriter w = new PrintWriter(Servlets.openWriter(request, response));
         w.println("<!DOCTYPE html><html><head><title>WarmRoast</title>");
         w.println("<link rel=\"stylesheet\" type=\"text/css\" href=\"style.css\">");
         w.println("</head><body>");
         w.println("<h1>WarmRoast</h1>");
+        if (roasts.size() > 1) {
+            w.println("<h2>" + Node.escapeHtml(roast.getName()) + "</h2>");
+        }
+        if (view != View.WALL) {
+            w.println("<p class=\"window\">Counting " + view.getDescription() + "</p>");
+        }
+        if (range != null) {
+            w.println("<p class=\"window\">Samples from " + formatTime(range.getFrom()) +
+                    " to " + formatTime(range.getTo()) + " only</p>");
+        }
         w.println("<div class=\"loading\">Downloading snapshot; please wait...</div>");
         w.println("<div class=\"stack\" style=\"display: none\">");
+        // Rendered from a copy, as the client may read slowly
+        Collection<ThreadNode> nodes = roast.snapshot(view, range, null).values();
+        for (ThreadNode node : nodes) {
+            node.writeHtml(w, roast.getMapping(), view.getUnit());
+            w.println();
+        }
+        if (nodes.size() == 0) {
+            w.println("<p class=\"no-results\">There are no results. " +
+            		"(Thread filter does not match thread?)</p>");
+        }
+        w.println("</div>");
+        long size = roast.getTreeSize();
+        long bytes = roast.estimateTreeBytes();
+        w.println("<p class=\"memory\">Call tree: " + size + " nodes, ~" +
+                (bytes / 1024) + " KiB" +
+                (size > 0 ? " (" + (bytes / size) + " bytes/node)" : "") + "</p>");
+        String history = null;
         synchronized (roast) {
-            Collection<ThreadNode> nodes = roast.getData().values();
-            for (ThreadNode node : nodes) {
-                w.println(node.toHtml(roast.getMapping()));
-            }
-            if (nodes.size() == 0) {
-                w.println("<p class=\"no-results\">There are no results. " +
-                		"(Thread filter does not match thread?)</p>");
+            EpochRing epochs = roast.getHistory(View.WALL);
+            if (epochs != null) {
+                history = epochs.size() + " of " + epochs.getCapacity() + " epochs of " +
+                        (epochs.getLength() / 1000.0) + "s, ~" +
+                        (roast.estimateHistoryBytes() / 1024) + " KiB";
             }
         }
-        w.println("</div>");
+        if (history != null) {
+            w.println("<p class=\"memory\">History: " + history + "</p>");
+        }
+        w.println("<p class=\"memory\">Samples: " + roast.getCapturedCount() + " captured, " +
+                roast.getAggregatedCount() + " aggregated, " +
+                roast.getBufferedCount() + " buffered, " +
+                roast.getDroppedCount() + " dropped</p>");
+        Sampler sampler = roast.getSampler();
+        w.println("<p class=\"memory\">Capture latency: " +
+                formatMs(sampler.getLastLatency()) + " last, " +
+                formatMs(sampler.getMeanLatency()) + " mean, " +
+                formatMs(sampler.getMaxLatency()) + " max; " +
+                sampler.getMissedTicks() + " missed ticks; " +
+                String.format("%.2f", sampler.getOverhead() * 100) + "% of time spent capturing" +
+                (roast.getRateController() != null
+                        ? String.format(" (budget %.2f%%), sampling every %s",
+                                roast.getRateController().getBudget() * 100,
+                                formatMs(sampler.getInterval()))
+                        : "") + "</p>");
         w.println("<p class=\"legend\">Legend: ");
         w.println("<span class=\"matched\">Mapped</span> ");
         w.println("<span class=\"multiple-matches\">Multiple Mappings</span> ");
@@ -71,5 +129,14 @@ public class DataViewServlet extends HttpServlet {
         w.println("<script src=\"//ajax.googleapis.com/ajax/libs/jquery/1.10.1/jquery.min.js\"></script>");
         w.println("<script src=\"warmroast.js\"></script>");
         w.println("</body></html>");
+        w.close();
+    }
+
+    private static String formatTime(long millis) {
+        return millis == Long.MAX_VALUE ? "now" : String.format("%tT", millis);
+    }
+
+    private static String formatMs(long nanos) {
+        return String.format("%.3fms", nanos / 1000000.0);
     }
 }
\ No newline at end of file
@@ -0,0 +1,164 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the nodes that changed after a given revision as JSON, so that
+ * a live view can patch its tree instead of downloading all of it again.
+ *
+ * <p>The response looks like this, with times in microseconds and each
+ * node given as <code>[id, parentId, nameHtml, time]</code>:</p>
+ *
+ * <pre>
+ * {"revision":42,"unit":"ms","threads":[{"name":"Server thread","time":1500,
+ *   "nodes":[[1,0,"java.lang.Thread.run()",1500]]}]}
+ * </pre>
+ *
+ * <p>The <code>view</code> parameter picks the {@link View}, as for
+ * {@link TreeServlet}, whose <code>unit</code> is given as there.</p>
+ */
+public class DeltaServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 6188330961347719201L;
+
+    private final List<WarmRoast> roasts;
+
+    public DeltaServlet(List<WarmRoast> roasts) {
+        this.roasts = roasts;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        WarmRoast roast = Servlets.findRoast(roasts, request, response);
+        View view = roast != null ? Servlets.findView(roast, request, response) : null;
+        if (view == null) {
+            return;
+        }
+
+        int since;
+        try {
+            String param = request.getParameter("since");
+            since = param != null ? Integer.parseInt(param) : 0;
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Bad 'since' revision");
+            return;
+        }
+
+        response.setContentType("application/json; charset=utf-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        // The changes are copied under the lock and written after it is
+        // released, so that a slow client doesn't hold up sampling
+        int revision;
+        List<Changes> threads = new ArrayList<>();
+        synchronized (roast) {
+            revision = roast.getRevisions().get();
+            for (Map.Entry<String, ThreadNode> entry : roast.getData(view, null).entrySet()) {
+                CallTree tree = entry.getValue().getTree();
+                Changes changes = new Changes(entry.getKey(), tree.getTotalTime());
+                tree.visitChangedSince(since, changes);
+                threads.add(changes);
+            }
+        }
+
+        PrintWriter w = new PrintWriter(Servlets.openWriter(request, response));
+        McpMapping mapping = roast.getMapping();
+        w.print("{\"revision\":");
+        w.print(revision);
+        w.print(",\"unit\":\"");
+        w.print(view.getUnit());
+        w.print("\",\"threads\":[");
+        boolean firstThread = true;
+        for (Changes changes : threads) {
+            if (!firstThread) {
+                w.print(",");
+            }
+            firstThread = false;
+            w.print("{\"name\":\"");
+            w.print(Node.escapeJson(changes.name));
+            w.print("\",\"time\":");
+            w.print(changes.totalTime / 1000);
+            w.print(",\"nodes\":[");
+            for (int i = 0; i < changes.count; i++) {
+                if (i > 0) {
+                    w.print(",");
+                }
+                w.print("[");
+                w.print(changes.ids[i]);
+                w.print(",");
+                w.print(changes.parentIds[i]);
+                w.print(",\"");
+                w.print(mapping.getNames(changes.frames[i]).getHtmlJson());
+                w.print("\",");
+                w.print(changes.times[i] / 1000);
+                w.print("]");
+            }
+            w.print("]}");
+        }
+        w.print("]}");
+        w.close();
+    }
+
+    /**
+     * The nodes of one thread's tree that changed, in the order visited.
+     */
+    private static class Changes implements CallTree.Visitor {
+        private final String name;
+        private final long totalTime;
+        private int[] ids = new int[16];
+        private int[] parentIds = new int[16];
+        private Frame[] frames = new Frame[16];
+        private long[] times = new long[16];
+        private int count;
+
+        private Changes(String name, long totalTime) {
+            this.name = name;
+            this.totalTime = totalTime;
+        }
+
+        @Override
+        public void visit(int id, int parentId, Frame frame, long time) {
+            if (count == ids.length) {
+                int capacity = count * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                parentIds = Arrays.copyOf(parentIds, capacity);
+                frames = Arrays.copyOf(frames, capacity);
+                times = Arrays.copyOf(times, capacity);
+            }
+            ids[count] = id;
+            parentIds[count] = parentId;
+            frames[count] = frame;
+            times[count] = time;
+            count++;
+        }
+    }
+}
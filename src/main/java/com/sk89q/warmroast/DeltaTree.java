@@ -0,0 +1,199 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates samples inside the target VM and writes out only what changed
+ * since the last flush.
+ *
+ * <p>Nodes get sequential IDs in creation order and are never removed, so
+ * the receiving side can mirror the tree's shape from the definitions it is
+ * sent. Each node tracks the self time (time where it was the innermost
+ * frame) gained since the last flush; replaying every node's path with its
+ * self time reproduces the totals exactly.</p>
+ *
+ * <p>This class runs in the target VM and must only use the JDK.</p>
+ */
+class DeltaTree {
+
+    static final int MSG_FRAME = 1;
+    static final int MSG_THREAD = 2;
+    static final int MSG_NODE = 3;
+    static final int MSG_TIME = 4;
+    static final int MSG_END = 5;
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final FrameTable frames = new FrameTable();
+    private final Map<String, Integer> roots = new HashMap<>();
+    private final List<String> threadNames = new ArrayList<>();
+    // For roots, parent is NONE and frame is the index into threadNames
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private int[] frame = new int[INITIAL_CAPACITY];
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+    private int[] nextSibling = new int[INITIAL_CAPACITY];
+    private long[] delta = new long[INITIAL_CAPACITY];
+    private int[] dirty = new int[INITIAL_CAPACITY];
+    private int count;
+    private int dirtyCount;
+    private int sentNodes;
+    private int sentFrames;
+
+    void log(String threadName, StackTraceElement[] elements, long time) {
+        int node = getRoot(threadName);
+        for (int i = elements.length - 1; i >= 0; i--) {
+            StackTraceElement element = elements[i];
+            int frameId = frames.intern(element.getClassName(), element.getMethodName()).getId();
+            int child = findChild(node, frameId);
+            if (child == NONE) {
+                child = add(node, frameId);
+            }
+            node = child;
+        }
+        addDelta(node, time);
+    }
+
+    /**
+     * Record a sampled stack after shortening it.
+     *
+     * @param threadName the thread
+     * @param elements the stack, innermost frame first
+     * @param folder the folder to shorten it with
+     * @param time the time the sample stands for, in nanoseconds
+     */
+    void log(String threadName, StackTraceElement[] elements, StackFolder folder, long time) {
+        int length = folder.fold(elements, frames);
+        int[] path = folder.getPath();
+        int node = getRoot(threadName);
+        for (int i = 0; i < length; i++) {
+            int child = findChild(node, path[i]);
+            if (child == NONE) {
+                child = add(node, path[i]);
+            }
+            node = child;
+        }
+        addDelta(node, time);
+    }
+
+    private void addDelta(int node, long time) {
+        if (delta[node] == 0) {
+            if (dirtyCount == dirty.length) {
+                dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+            }
+            dirty[dirtyCount++] = node;
+        }
+        delta[node] += time;
+    }
+
+    private int getRoot(String threadName) {
+        Integer root = roots.get(threadName);
+        if (root == null) {
+            root = add(NONE, threadNames.size());
+            threadNames.add(threadName);
+            roots.put(threadName, root);
+        }
+        return root;
+    }
+
+    private int findChild(int node, int frameId) {
+        int prev = NONE;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (frame[child] == frameId) {
+                if (prev != NONE) {
+                    nextSibling[prev] = nextSibling[child];
+                    nextSibling[child] = firstChild[node];
+                    firstChild[node] = child;
+                }
+                return child;
+            }
+            prev = child;
+        }
+        return NONE;
+    }
+
+    private int add(int parentNode, int frameId) {
+        if (count == frame.length) {
+            int capacity = count + (count >> 1);
+            parent = Arrays.copyOf(parent, capacity);
+            frame = Arrays.copyOf(frame, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            delta = Arrays.copyOf(delta, capacity);
+        }
+        int node = count++;
+        parent[node] = parentNode;
+        frame[node] = frameId;
+        firstChild[node] = NONE;
+        if (parentNode != NONE) {
+            nextSibling[node] = firstChild[parentNode];
+            firstChild[parentNode] = node;
+        } else {
+            nextSibling[node] = NONE;
+        }
+        return node;
+    }
+
+    /**
+     * Write new frames, new nodes and the time gained since the last flush,
+     * then reset the gained time.
+     *
+     * @param out the stream
+     * @throws IOException on I/O error
+     */
+    void flush(DataOutputStream out) throws IOException {
+        for (int id = sentFrames; id < frames.size(); id++) {
+            Frame f = frames.get(id);
+            out.writeByte(MSG_FRAME);
+            out.writeUTF(f.getClassName());
+            out.writeUTF(f.getMethodName());
+        }
+        sentFrames = frames.size();
+
+        for (int node = sentNodes; node < count; node++) {
+            if (parent[node] == NONE) {
+                out.writeByte(MSG_THREAD);
+                out.writeUTF(threadNames.get(frame[node]));
+            } else {
+                out.writeByte(MSG_NODE);
+                Varints.writeVarInt(out, parent[node]);
+                Varints.writeVarInt(out, frame[node]);
+            }
+        }
+        sentNodes = count;
+
+        for (int i = 0; i < dirtyCount; i++) {
+            int node = dirty[i];
+            out.writeByte(MSG_TIME);
+            Varints.writeVarInt(out, node);
+            Varints.writeVarLong(out, delta[node]);
+            delta[node] = 0;
+        }
+        dirtyCount = 0;
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Compares the call trees of two VMs or saved profiles by merging them by
+ * frame path, and serves parts of the result like {@link TreeServlet}.
+ *
+ * <p>Parameters, all optional but <code>base</code>:</p>
+ *
+ * <ul>
+ *     <li><code>base</code>: the VM to compare against</li>
+ *     <li><code>vm</code>: the VM to compare (default 0)</li>
+ *     <li><code>view</code>, <code>thread</code>, <code>path</code>,
+ *     <code>depth</code>, <code>window</code>, <code>from</code> and
+ *     <code>to</code>: as for {@link TreeServlet}, for both VMs</li>
+ *     <li><code>min</code>: leave out nodes below this percentage of their
+ *     thread's time in both VMs (default 0)</li>
+ *     <li><code>sort</code>: <code>regression</code> for the largest
+ *     increase first (the default), <code>improvement</code> for the
+ *     largest decrease first, <code>relative</code> for the largest
+ *     increase relative to the base first, or <code>time</code></li>
+ *     <li><code>normalize</code>: <code>0</code> to compare raw totals
+ *     instead of scaling the base's to the length of the other's session,
+ *     which is taken as the wall time of its longest sampled thread</li>
+ * </ul>
+ *
+ * <pre>
+ * {"unit":"ms","scale":0.5,"threads":[{"name":"Server thread",
+ *   "before":1000,"after":1500,"childCount":1,"children":[{"frame":3,
+ *   "name":"java.lang.Thread.run()","before":1000,"after":1500,
+ *   "childCount":2}],"omitted":0}]}
+ * </pre>
+ *
+ * <p><code>before</code> is the base's time, already scaled by
+ * <code>scale</code>, and <code>after</code> is the other VM's. Only the
+ * subtree below <code>path</code> is merged, which takes time linear in
+ * its size.</p>
+ *
+ * @see DiffTree
+ */
+public class DiffServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 4113580757096216344L;
+    private static final int MAX_DEPTH = 1024;
+
+    private final List<WarmRoast> roasts;
+
+    public DiffServlet(List<WarmRoast> roasts) {
+        this.roasts = roasts;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        if (request.getParameter("base") == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing 'base'");
+            return;
+        }
+        WarmRoast base = Servlets.findRoast(roasts, "base", request, response);
+        View baseView = base != null ? Servlets.findView(base, request, response) : null;
+        if (baseView == null) {
+            return;
+        }
+        WarmRoast roast = Servlets.findRoast(roasts, request, response);
+        View view = roast != null ? Servlets.findView(roast, request, response) : null;
+        if (view == null) {
+            return;
+        }
+
+        String threadName = request.getParameter("thread");
+        boolean normalize = !"0".equals(request.getParameter("normalize"));
+        Comparator<Change> order = getOrder(request.getParameter("sort"));
+        if (order == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown 'sort'");
+            return;
+        }
+        int[] path;
+        int depth;
+        double min;
+        TimeRange range;
+        try {
+            path = Servlets.parsePath(request.getParameter("path"));
+            String param = request.getParameter("depth");
+            depth = param != null ? Math.min(MAX_DEPTH, Integer.parseInt(param)) : 1;
+            param = request.getParameter("min");
+            min = param != null ? Double.parseDouble(param) / 100 : 0;
+            range = Servlets.parseRange(request);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Bad 'path', 'depth', 'min', 'window', 'from' or 'to'");
+            return;
+        }
+
+        response.setContentType("application/json; charset=utf-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        double scale = 1;
+        if (normalize) {
+            long baseLength = sessionLength(base, range);
+            long length = sessionLength(roast, range);
+            if (baseLength > 0 && length > 0) {
+                scale = length / (double) baseLength;
+            }
+        }
+
+        // Each side is copied under its own lock, one at a time, and the
+        // copies are merged and written once both locks are released
+        Map<String, ThreadNode> before = base.snapshot(view, range, threadName, path, depth + 1, 0);
+        Map<String, ThreadNode> after = roast.snapshot(view, range, threadName, path, depth + 1, 0);
+        try (Writer w = Servlets.openWriter(request, response)) {
+            write(w, before, after, roast, view, threadName, path, depth, min, scale, order);
+        }
+    }
+
+    private static void write(Writer w, Map<String, ThreadNode> before, Map<String, ThreadNode> after,
+            WarmRoast roast, View view, String threadName, int[] path, int depth, double min,
+            double scale, Comparator<Change> order) throws IOException {
+
+        SortedSet<String> names = new TreeSet<>();
+        if (threadName != null) {
+            names.add(threadName);
+        } else {
+            names.addAll(before.keySet());
+            names.addAll(after.keySet());
+        }
+
+        RenderBuffer buffer = new RenderBuffer();
+        Output out = new Output(w, roast.getMapping(), roast.getFrames(), buffer, scale, order);
+        w.write("{\"unit\":\"");
+        w.write(view.getUnit());
+        w.write("\",\"scale\":");
+        buffer.writeDecimal2(w, scale);
+        w.write(",\"threads\":[");
+        boolean first = true;
+        for (String name : names) {
+            ThreadNode beforeThread = before.get(name);
+            ThreadNode afterThread = after.get(name);
+            if (beforeThread == null && afterThread == null) {
+                continue;
+            }
+            if (!first) {
+                w.write(",");
+            }
+            first = false;
+
+            StackTraceNode beforeRoot = beforeThread != null ? beforeThread.getTree().getRoot() : null;
+            StackTraceNode afterRoot = afterThread != null ? afterThread.getTree().getRoot() : null;
+            long beforeTotal = beforeRoot != null ? beforeRoot.getTotalTime() : 0;
+            long afterTotal = afterRoot != null ? afterRoot.getTotalTime() : 0;
+            w.write("{\"name\":\"");
+            w.write(Node.escapeJson(name));
+            w.write("\",\"before\":");
+            buffer.writeLong(w, Math.round(beforeTotal * scale) / 1000);
+            w.write(",\"after\":");
+            buffer.writeLong(w, afterTotal / 1000);
+
+            StackTraceNode beforeNode = beforeRoot != null ? TreeServlet.find(beforeRoot, path) : null;
+            StackTraceNode afterNode = afterRoot != null ? TreeServlet.find(afterRoot, path) : null;
+            if (beforeNode != null || afterNode != null) {
+                DiffTree diff = new DiffTree(beforeNode, afterNode);
+                long minTime = (long) (Math.max(beforeTotal * scale, afterTotal) * min);
+                w.write(",");
+                out.writeChildren(diff, 0, 0, depth, minTime);
+            }
+            w.write("}");
+        }
+        w.write("]}");
+    }
+
+    private static long sessionLength(WarmRoast roast, TimeRange range) {
+        long length = 0;
+        synchronized (roast) {
+            for (ThreadNode thread : roast.getData(View.WALL, range).values()) {
+                length = Math.max(length, thread.getTotalTime());
+            }
+        }
+        return length;
+    }
+
+    private static Comparator<Change> getOrder(String sort) {
+        if (sort == null || sort.isEmpty() || sort.equals("regression")) {
+            return (a, b) -> Long.compare(b.after - b.before, a.after - a.before);
+        } else if (sort.equals("improvement")) {
+            return (a, b) -> Long.compare(a.after - a.before, b.after - b.before);
+        } else if (sort.equals("relative")) {
+            return (a, b) -> Double.compare(b.getRelative(), a.getRelative());
+        } else if (sort.equals("time")) {
+            return (a, b) -> Long.compare(b.after, a.after);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * A child in the merged tree, with the base's time scaled.
+     */
+    private static class Change {
+        private final int node;
+        private final long before;
+        private final long after;
+
+        private Change(int node, long before, long after) {
+            this.node = node;
+            this.before = before;
+            this.after = after;
+        }
+
+        private double getRelative() {
+            // Stacks only in the other VM count as the largest increases
+            return before > 0 ? (after - before) / (double) before : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private static class Output {
+        private final Writer w;
+        private final McpMapping mapping;
+        private final FrameTable frames;
+        private final RenderBuffer buffer;
+        private final double scale;
+        private final Comparator<Change> order;
+
+        private Output(Writer w, McpMapping mapping, FrameTable frames, RenderBuffer buffer,
+                double scale, Comparator<Change> order) {
+            this.w = w;
+            this.mapping = mapping;
+            this.frames = frames;
+            this.buffer = buffer;
+            this.scale = scale;
+            this.order = order;
+        }
+
+        private void writeChildren(DiffTree diff, int node, int level, int depth,
+                long minTime) throws IOException {
+            int count = diff.getChildCount(node);
+            int firstChild = diff.getFirstChild(node);
+            Change[] children = new Change[count];
+            for (int i = 0; i < count; i++) {
+                int child = firstChild + i;
+                children[i] = new Change(child,
+                        Math.round(diff.getBefore(child) * scale), diff.getAfter(child));
+            }
+            Arrays.sort(children, order);
+
+            int omitted = 0;
+            w.write("\"childCount\":");
+            buffer.writeLong(w, count);
+            w.write(",\"children\":[");
+            boolean first = true;
+            for (Change child : children) {
+                if (Math.max(child.before, child.after) < minTime) {
+                    omitted++;
+                    continue;
+                }
+                if (!first) {
+                    w.write(",");
+                }
+                first = false;
+                Frame frame = frames.get(diff.getFrameId(child.node));
+                w.write("{\"frame\":");
+                buffer.writeLong(w, frame.getId());
+                w.write(",\"name\":\"");
+                w.write(mapping.getNames(frame).getHtmlJson());
+                w.write("\",\"before\":");
+                buffer.writeLong(w, child.before / 1000);
+                w.write(",\"after\":");
+                buffer.writeLong(w, child.after / 1000);
+                w.write(",");
+                if (level + 1 < depth) {
+                    writeChildren(diff, child.node, level + 1, depth, minTime);
+                } else {
+                    w.write("\"childCount\":");
+                    buffer.writeLong(w, diff.getChildCount(child.node));
+                }
+                w.write("}");
+            }
+            w.write("],\"omitted\":");
+            buffer.writeLong(w, omitted);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Arrays;
+
+/**
+ * Two call trees merged by frame path, so that the time of each stack can
+ * be compared between two profiles, such as a live one and a saved one.
+ *
+ * <p>The merge is breadth-first and visits each node of both trees once.
+ * Nodes are kept in arrays in the order they are found, so each node's
+ * children sit next to each other. Both trees must share a
+ * {@link FrameTable}, so that a frame has the same ID in each.</p>
+ */
+class DiffTree {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private int[] frames = new int[INITIAL_CAPACITY];
+    private long[] before = new long[INITIAL_CAPACITY];
+    private long[] after = new long[INITIAL_CAPACITY];
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+    private int[] childCount = new int[INITIAL_CAPACITY];
+
+    /**
+     * Merge two trees. Node 0 is the root, which has no frame.
+     *
+     * @param beforeRoot the root of the first tree, or null if it is empty
+     * @param afterRoot the root of the second tree, or null if it is empty
+     */
+    DiffTree(StackTraceNode beforeRoot, StackTraceNode afterRoot) {
+        StackTraceNode[] befores = new StackTraceNode[INITIAL_CAPACITY];
+        StackTraceNode[] afters = new StackTraceNode[INITIAL_CAPACITY];
+        befores[0] = beforeRoot;
+        afters[0] = afterRoot;
+        add(-1, beforeRoot != null ? beforeRoot.getTotalTime() : 0,
+                afterRoot != null ? afterRoot.getTotalTime() : 0);
+
+        // The index + 1 of the child with each frame ID; entries from
+        // earlier nodes point before the current first child, so they are
+        // never cleared
+        int[] slots = new int[0];
+        Node[] children = new Node[16];
+        for (int i = 0; i < size; i++) {
+            StackTraceNode beforeNode = befores[i];
+            StackTraceNode afterNode = afters[i];
+            befores[i] = null;
+            afters[i] = null;
+            int first = size;
+            firstChild[i] = first;
+
+            if (beforeNode != null) {
+                int count = beforeNode.getChildCount();
+                children = ensure(children, count);
+                beforeNode.fillChildren(children);
+                for (int j = 0; j < count; j++) {
+                    StackTraceNode child = (StackTraceNode) children[j];
+                    children[j] = null;
+                    int frame = child.getFrame().getId();
+                    if (frame >= slots.length) {
+                        slots = Arrays.copyOf(slots, Math.max(frame + 1, slots.length * 2));
+                    }
+                    slots[frame] = size + 1;
+                    befores = ensure(befores, size + 1);
+                    afters = ensure(afters, size + 1);
+                    befores[size] = child;
+                    add(frame, child.getTotalTime(), 0);
+                }
+            }
+
+            if (afterNode != null) {
+                int count = afterNode.getChildCount();
+                children = ensure(children, count);
+                afterNode.fillChildren(children);
+                for (int j = 0; j < count; j++) {
+                    StackTraceNode child = (StackTraceNode) children[j];
+                    children[j] = null;
+                    int frame = child.getFrame().getId();
+                    int slot = frame < slots.length ? slots[frame] - 1 : -1;
+                    if (slot >= first) {
+                        after[slot] = child.getTotalTime();
+                    } else {
+                        slot = size;
+                        befores = ensure(befores, size + 1);
+                        afters = ensure(afters, size + 1);
+                        add(frame, 0, child.getTotalTime());
+                    }
+                    afters[slot] = child;
+                }
+            }
+
+            childCount[i] = size - first;
+        }
+    }
+
+    private void add(int frame, long beforeTime, long afterTime) {
+        if (size == frames.length) {
+            int capacity = size * 2;
+            frames = Arrays.copyOf(frames, capacity);
+            before = Arrays.copyOf(before, capacity);
+            after = Arrays.copyOf(after, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+        }
+        frames[size] = frame;
+        before[size] = beforeTime;
+        after[size] = afterTime;
+        size++;
+    }
+
+    private static <T> T[] ensure(T[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the frame ID of a node.
+     *
+     * @param node the node
+     * @return the frame ID, or -1 for the root
+     */
+    int getFrameId(int node) {
+        return frames[node];
+    }
+
+    /**
+     * Get a node's total time in the first tree.
+     *
+     * @param node the node
+     * @return the time, or 0 if the stack is only in the second tree
+     */
+    long getBefore(int node) {
+        return before[node];
+    }
+
+    /**
+     * Get a node's total time in the second tree.
+     *
+     * @param node the node
+     * @return the time, or 0 if the stack is only in the first tree
+     */
+    long getAfter(int node) {
+        return after[node];
+    }
+
+    /**
+     * Get the first child of a node. Its children are the nodes from there
+     * up to {@link #getChildCount(int)}, in no particular order.
+     *
+     * @param node the node
+     * @return the first child's node
+     */
+    int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    int getChildCount(int node) {
+        return childCount[node];
+    }
+
+    /**
+     * Find a node's child by frame.
+     *
+     * @param node the node
+     * @param frameId the child's frame ID
+     * @return the child, or -1 if it has none with that frame
+     */
+    int findChild(int node, int frameId) {
+        int end = firstChild[node] + childCount[node];
+        for (int i = firstChild[node]; i < end; i++) {
+            if (frames[i] == frameId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Keeps recent samples in fixed-length epochs, so that a window of time can
+ * be viewed on its own rather than only the whole session.
+ *
+ * <p>An epoch does not hold a tree of its own. For each thread, it adds up
+ * the time of each sample against the node of its innermost frame in the
+ * thread's {@link CallTree}, which the tree already has to find. A window's
+ * tree is rebuilt from those times in one pass over the thread's nodes.
+ * Epochs are kept in a ring: once it is full, the oldest is dropped, while
+ * its time stays in the session's trees.</p>
+ *
+ * <p>Callers synchronize on the roast that owns the trees.</p>
+ */
+class EpochRing {
+
+    private final long length;
+    private final Epoch[] ring;
+    private int newest = -1;
+    private int count;
+    private long modifications;
+    private long cachedFirst = -1;
+    private long cachedLast;
+    private long cachedModifications;
+    private SortedMap<String, ThreadNode> cached;
+
+    /**
+     * Create a new ring.
+     *
+     * @param length the length of an epoch, in milliseconds
+     * @param capacity the number of epochs to keep
+     */
+    EpochRing(long length, int capacity) {
+        if (length <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Epoch length and capacity must be positive");
+        }
+        this.length = length;
+        this.ring = new Epoch[capacity];
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Record a sample of a thread.
+     *
+     * @param thread the thread
+     * @param node the ID of the node for the sample's innermost frame
+     * @param time the time the sample stands for, in nanoseconds
+     * @param now the time it was taken, in milliseconds since the epoch
+     */
+    void record(ThreadNode thread, int node, long time, long now) {
+        Epoch epoch = count > 0 ? ring[newest] : null;
+        if (epoch == null || now >= epoch.start + length) {
+            epoch = new Epoch(now - now % length);
+            newest = (newest + 1) % ring.length;
+            ring[newest] = epoch;
+            count = Math.min(count + 1, ring.length);
+        }
+        NodeTimes times = epoch.threads.get(thread);
+        if (times == null) {
+            times = new NodeTimes();
+            epoch.threads.put(thread, times);
+        }
+        times.add(node, time);
+        modifications++;
+    }
+
+    /**
+     * Build the trees for the epochs that overlap a range of time.
+     *
+     * <p>The last result is reused until an epoch it covers changes, so
+     * expanding nodes of a window that has ended is cheap.</p>
+     *
+     * @param from the start of the range, in milliseconds since the epoch
+     * @param to the end of the range, in milliseconds since the epoch
+     * @param frames the frame table
+     * @return a tree for each thread sampled in the range, by name
+     */
+    SortedMap<String, ThreadNode> query(long from, long to, FrameTable frames) {
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < count; i++) {
+            Epoch epoch = get(i);
+            if (epoch.start < to && epoch.start + length > from) {
+                if (first == -1) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+        if (first == -1) {
+            return Collections.emptySortedMap();
+        }
+
+        long lastModifications = last == count - 1 ? modifications : -1;
+        if (cached != null && cachedFirst == get(first).start
+                && cachedLast == get(last).start && cachedModifications == lastModifications) {
+            return cached;
+        }
+
+        Map<ThreadNode, long[]> totals = new HashMap<>();
+        for (int i = first; i <= last; i++) {
+            for (Map.Entry<ThreadNode, NodeTimes> entry : get(i).threads.entrySet()) {
+                long[] times = totals.get(entry.getKey());
+                if (times == null) {
+                    times = new long[entry.getKey().getTree().size() + 1];
+                    totals.put(entry.getKey(), times);
+                }
+                entry.getValue().addTo(times);
+            }
+        }
+
+        SortedMap<String, ThreadNode> result = new TreeMap<>();
+        for (Map.Entry<ThreadNode, long[]> entry : totals.entrySet()) {
+            String name = entry.getKey().getName();
+            result.put(name, new ThreadNode(name, build(entry.getKey().getTree(), entry.getValue(), frames)));
+        }
+
+        cachedFirst = get(first).start;
+        cachedLast = get(last).start;
+        cachedModifications = lastModifications;
+        cached = result;
+        return result;
+    }
+
+    /**
+     * Estimate the heap used by the epochs, as {@link CallTree#estimateBytes()}
+     * does.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        long bytes = 32 + IntMap.arrayBytes(ring.length, 4);
+        for (int i = 0; i < count; i++) {
+            Map<ThreadNode, NodeTimes> threads = get(i).threads;
+            // The epoch, its map and table, then an entry per thread
+            bytes += 24 + 48 + IntMap.arrayBytes(threads.size() * 2, 4) + threads.size() * 32;
+            for (NodeTimes times : threads.values()) {
+                bytes += times.estimateBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private Epoch get(int i) {
+        return ring[(newest - count + 1 + i + ring.length) % ring.length];
+    }
+
+    /**
+     * Build a tree of the nodes with time from a thread's tree.
+     *
+     * @param tree the thread's tree
+     * @param times the time of samples that ended at each node, by node ID
+     * @param frames the frame table
+     * @return the new tree
+     */
+    private static CallTree build(CallTree tree, long[] times, FrameTable frames) {
+        // A parent's ID is less than its children's, so a single pass from
+        // the end adds each node's total to its parent before the parent is read
+        for (int id = times.length - 1; id > 0; id--) {
+            if (times[id] != 0) {
+                times[tree.getParent(id)] += times[id];
+            }
+        }
+
+        CompactCallTree window = new CompactCallTree(frames);
+        window.addTime(0, times[0]);
+        int[] ids = new int[times.length];
+        for (int id = 1; id < times.length; id++) {
+            if (times[id] != 0) {
+                ids[id] = window.append(ids[tree.getParent(id)], tree.getFrame(id).getId(), times[id]);
+            }
+        }
+        return window;
+    }
+
+    private static class Epoch {
+        private final long start;
+        private final Map<ThreadNode, NodeTimes> threads = new HashMap<>();
+
+        private Epoch(long start) {
+            this.start = start;
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Serves the call trees as folded stacks, for flame graph tools. Takes the
+ * same <code>view</code>, <code>thread</code>, <code>window</code>,
+ * <code>from</code> and <code>to</code> parameters as {@link TreeServlet}.
+ *
+ * @see FoldedStackWriter
+ */
+public class FoldedStackServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 2890383407127406452L;
+
+    private final List<WarmRoast> roasts;
+
+    public FoldedStackServlet(List<WarmRoast> roasts) {
+        this.roasts = roasts;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        WarmRoast roast = Servlets.findRoast(roasts, request, response);
+        View view = roast != null ? Servlets.findView(roast, request, response) : null;
+        if (view == null) {
+            return;
+        }
+
+        TimeRange range;
+        try {
+            range = Servlets.parseRange(request);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Bad 'window', 'from' or 'to'");
+            return;
+        }
+
+        response.setContentType("text/plain; charset=utf-8");
+        response.setHeader("Content-Disposition", "inline; filename=\"warmroast.folded\"");
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        try (Writer w = Servlets.openWriter(request, response)) {
+            roast.writeFolded(w, view, range, request.getParameter("thread"));
+        }
+    }
+}
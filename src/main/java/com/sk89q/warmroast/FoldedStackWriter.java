@@ -0,0 +1,84 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes call trees in the folded stack format used by flame graph tools:
+ * one line per distinct stack, with frames from outermost to innermost
+ * separated by semicolons, followed by the stack's self time in
+ * microseconds.
+ *
+ * <pre>
+ * Server thread;java.lang.Thread.run();net.minecraft.server.MinecraftServer.run() 1500
+ * </pre>
+ *
+ * <p>Only the names on the current path are kept while walking the tree,
+ * so no full path string is ever built.</p>
+ */
+class FoldedStackWriter {
+
+    private final Writer out;
+    private final McpMapping mapping;
+    private final RenderBuffer buffer = new RenderBuffer();
+    private String[] names = new String[64];
+
+    FoldedStackWriter(Writer out, McpMapping mapping) {
+        this.out = out;
+        this.mapping = mapping;
+    }
+
+    void write(ThreadNode thread) throws IOException {
+        names[0] = thread.getName().replace(';', ':');
+        write(thread, 0);
+    }
+
+    private void write(Node node, int depth) throws IOException {
+        int count = node.getChildCount();
+        Node[] children = buffer.getChildren(node, depth);
+        long childTime = 0;
+        for (int i = 0; i < count; i++) {
+            StackTraceNode child = (StackTraceNode) children[i];
+            children[i] = null;
+            childTime += child.getTotalTime();
+            if (depth + 1 == names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            names[depth + 1] = mapping.getNames(child.getFrame()).getText();
+            write(child, depth + 1);
+        }
+
+        long self = (node.getTotalTime() - childTime) / 1000;
+        if (self > 0) {
+            for (int i = 0; i <= depth; i++) {
+                if (i > 0) {
+                    out.write(';');
+                }
+                out.write(names[i]);
+            }
+            out.write(' ');
+            buffer.writeLong(out, self);
+            out.write('\n');
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+/**
+ * An interned (class, method) pair.
+ */
+public final class Frame {
+
+    private final int id;
+    private final int hash;
+    private final String className;
+    private final String methodName;
+
+    Frame(int id, int hash, String className, String methodName) {
+        this.id = id;
+        this.hash = hash;
+        this.className = className;
+        this.methodName = methodName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    int getHash() {
+        return hash;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    boolean matches(int hash, String className, String methodName) {
+        return this.hash == hash
+                && this.methodName.equals(methodName)
+                && this.className.equals(className);
+    }
+
+    @Override
+    public String toString() {
+        return StackTraceNode.getName(className, methodName);
+    }
+
+}
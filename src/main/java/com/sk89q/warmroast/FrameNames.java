@@ -0,0 +1,93 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+/**
+ * The display names of a frame under a mapping, resolved once.
+ *
+ * @see NameCache
+ */
+final class FrameNames {
+
+    private final Frame frame;
+    private final MappingTable table;
+    private final String html;
+    private final String htmlJson;
+    private final String json;
+    private final String text;
+
+    private FrameNames(Frame frame, MappingTable table, String html, String json, String text) {
+        this.frame = frame;
+        this.table = table;
+        this.html = html;
+        this.htmlJson = Node.escapeJson(html);
+        this.json = json;
+        this.text = text;
+    }
+
+    static FrameNames resolve(Frame frame, McpMapping mapping) {
+        // Read the table first: if it is swapped while the names are being
+        // resolved, they are tagged with the old one and resolved again
+        MappingTable table = mapping.getTable();
+        return new FrameNames(frame, table,
+                StackTraceNode.getNameHtml(frame, mapping),
+                StackTraceNode.getNameJson(frame, mapping),
+                StackTraceNode.getNameText(frame, mapping));
+    }
+
+    Frame getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return the mapping table the names were resolved with
+     */
+    MappingTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return the name as HTML, with mapped parts marked up
+     */
+    String getHtml() {
+        return html;
+    }
+
+    /**
+     * @return {@link #getHtml()} escaped for a JSON string
+     */
+    String getHtmlJson() {
+        return htmlJson;
+    }
+
+    /**
+     * @return the plain name, escaped for a JSON string
+     */
+    String getJson() {
+        return json;
+    }
+
+    /**
+     * @return the plain name
+     */
+    String getText() {
+        return text;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Arrays;
+
+/**
+ * Interns (class, method) pairs into {@link Frame}s with dense integer IDs.
+ *
+ * <p>Looking up a frame that has already been seen takes no lock and
+ * allocates nothing, so it is safe to call for every element of every
+ * sampled stack. Only the first sighting of a frame takes the lock.</p>
+ */
+public class FrameTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Object lock = new Object();
+    private volatile Frame[] slots = new Frame[INITIAL_CAPACITY * 2];
+    private volatile Frame[] frames = new Frame[INITIAL_CAPACITY];
+    private volatile int size;
+
+    public Frame intern(String className, String methodName) {
+        int hash = hash(className, methodName);
+        Frame frame = find(slots, hash, className, methodName);
+        if (frame != null) {
+            return frame;
+        }
+
+        synchronized (lock) {
+            Frame[] slots = this.slots;
+            frame = find(slots, hash, className, methodName);
+            if (frame != null) {
+                return frame;
+            }
+
+            int id = size;
+            frame = new Frame(id, hash, className, methodName);
+
+            if (id == frames.length) {
+                frames = Arrays.copyOf(frames, id * 2);
+            }
+            frames[id] = frame;
+
+            if ((id + 1) * 2 > slots.length) {
+                slots = rehash(slots, slots.length * 2);
+                insert(slots, frame);
+                this.slots = slots;
+            } else {
+                insert(slots, frame);
+            }
+
+            size = id + 1;
+            return frame;
+        }
+    }
+
+    public Frame get(int id) {
+        return frames[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static Frame find(Frame[] slots, int hash, String className, String methodName) {
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Frame frame = slots[i];
+            if (frame == null) {
+                return null;
+            }
+            if (frame.matches(hash, className, methodName)) {
+                return frame;
+            }
+        }
+    }
+
+    private static void insert(Frame[] slots, Frame frame) {
+        int mask = slots.length - 1;
+        int i = frame.getHash() & mask;
+        while (slots[i] != null) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = frame;
+    }
+
+    private static Frame[] rehash(Frame[] slots, int capacity) {
+        Frame[] rehashed = new Frame[capacity];
+        for (Frame frame : slots) {
+            if (frame != null) {
+                insert(rehashed, frame);
+            }
+        }
+        return rehashed;
+    }
+
+    private static int hash(String className, String methodName) {
+        int h = className.hashCode() * 31 + methodName.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+}
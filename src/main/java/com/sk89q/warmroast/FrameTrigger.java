@@ -0,0 +1,81 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.lang.management.ThreadInfo;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fires when a thread is seen in a method for longer than some time, in
+ * consecutive samples.
+ */
+class FrameTrigger extends Trigger {
+
+    private final String className;
+    private final String methodName;
+    private final long threshold;
+    private final Map<String, Long> inFrame = new HashMap<>();
+
+    /**
+     * Create a new trigger.
+     *
+     * @param className the class's name
+     * @param methodName the method's name
+     * @param threshold the time in the method, in nanoseconds
+     */
+    FrameTrigger(String className, String methodName, long threshold) {
+        this.className = className;
+        this.methodName = methodName;
+        this.threshold = threshold;
+    }
+
+    @Override
+    String getName() {
+        return "frame";
+    }
+
+    @Override
+    boolean sample(ThreadInfo thread, long weight) {
+        String threadName = thread.getThreadName();
+        if (!contains(thread.getStackTrace())) {
+            inFrame.remove(threadName);
+            return false;
+        }
+        Long time = inFrame.get(threadName);
+        time = time != null ? time + weight : weight;
+        if (time > threshold) {
+            inFrame.remove(threadName);
+            return true;
+        }
+        inFrame.put(threadName, time);
+        return false;
+    }
+
+    private boolean contains(StackTraceElement[] stack) {
+        for (StackTraceElement element : stack) {
+            if (element.getMethodName().equals(methodName)
+                    && element.getClassName().equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.management.MBeanServerConnection;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Fires when the target's collectors spend more than some time collecting
+ * between polls.
+ */
+class GcTrigger extends Trigger {
+
+    private final long threshold;
+    private List<GarbageCollectorMXBean> collectors;
+    private long lastTime = -1;
+
+    /**
+     * Create a new trigger.
+     *
+     * @param threshold the time spent collecting, in nanoseconds
+     */
+    GcTrigger(long threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    String getName() {
+        return "gc";
+    }
+
+    @Override
+    boolean poll(MBeanServerConnection connection, ThreadMXBean threads, long elapsed)
+            throws IOException {
+        if (collectors == null) {
+            collectors = ManagementFactory.getPlatformMXBeans(
+                    connection, GarbageCollectorMXBean.class);
+        }
+        long time = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        // Collection times are in milliseconds
+        time *= Node.NANOS_PER_MS;
+        long spent = lastTime != -1 ? time - lastTime : 0;
+        lastTime = time;
+        return spent > threshold;
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values, such as latencies, into fixed buckets, the way Prometheus
+ * histograms do. Recording is lock-free and never allocates, so it can be
+ * done on the sampling thread.
+ *
+ * <p>Bucket <i>i</i> counts values up to and including bound <i>i</i>, and
+ * one more bucket counts the values above the last bound.</p>
+ *
+ * @see Metrics
+ */
+class Histogram {
+
+    /** 10µs to 10s, in nanoseconds. */
+    private static final long[] LATENCY_BOUNDS = {
+            10000L, 25000L, 50000L, 100000L, 250000L, 500000L,
+            1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L,
+            100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L,
+            5000000000L, 10000000000L };
+
+    /** 1 KiB to 64 MiB, by powers of four. */
+    private static final long[] SIZE_BOUNDS = {
+            1L << 10, 1L << 12, 1L << 14, 1L << 16, 1L << 18, 1L << 20,
+            1L << 22, 1L << 24, 1L << 26 };
+
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Create a new histogram.
+     *
+     * @param bounds the upper bounds of the buckets, in ascending order
+     */
+    Histogram(long[] bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Bounds must be ascending");
+            }
+        }
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Create a histogram of durations in nanoseconds.
+     *
+     * @return the histogram
+     */
+    static Histogram forLatency() {
+        return new Histogram(LATENCY_BOUNDS);
+    }
+
+    /**
+     * Create a histogram of sizes in bytes.
+     *
+     * @return the histogram
+     */
+    static Histogram forSize() {
+        return new Histogram(SIZE_BOUNDS);
+    }
+
+    void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * Record the same value several times, such as the mean of a batch
+     * whose values are not known one by one.
+     *
+     * @param value the value
+     * @param times the number of times
+     */
+    void record(long value, long times) {
+        if (times <= 0) {
+            return;
+        }
+        counts.addAndGet(bucketOf(value), times);
+        sum.addAndGet(value * times);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // Lost to another thread, so try again
+        }
+    }
+
+    private int bucketOf(long value) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (value <= bounds[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the upper bounds of the buckets, leaving out the last bucket,
+     * whose bound is infinite.
+     *
+     * @return the bounds, which must not be modified
+     */
+    long[] getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Get the number of values in each bucket, as of one moment per bucket.
+     *
+     * @return the counts, one more than there are bounds
+     */
+    long[] getCounts() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    long getSum() {
+        return sum.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    long getMean() {
+        long count = getCount();
+        return count > 0 ? getSum() / count : 0;
+    }
+
+    /**
+     * Estimate a quantile as the upper bound of the bucket it falls in,
+     * which is never more than the largest value recorded.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the estimate, or 0 if nothing has been recorded
+     */
+    long getQuantile(double quantile) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i < bounds.length ? Math.min(bounds[i], getMax()) : getMax();
+            }
+        }
+        return getMax();
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recognizes threads that are idle from their innermost frame alone:
+ * parked, sleeping, waiting on a monitor or waiting for I/O in native
+ * code, where a thread is often reported as runnable. Threads with no
+ * Java frames at all, such as the VM's signal dispatcher, count as idle.
+ */
+final class IdleFrames {
+
+    // Method name to the classes that declare it
+    private static final Map<String, Set<String>> FRAMES = new HashMap<>();
+
+    static {
+        add("park", "sun.misc.Unsafe", "jdk.internal.misc.Unsafe");
+        add("wait", "java.lang.Object");
+        add("wait0", "java.lang.Object");
+        add("sleep", "java.lang.Thread");
+        add("sleep0", "java.lang.Thread");
+        add("waitForReferencePendingList", "java.lang.ref.Reference");
+        add("socketAccept", "java.net.PlainSocketImpl", "java.net.DualStackPlainSocketImpl");
+        add("socketRead0", "java.net.SocketInputStream");
+        add("accept", "sun.nio.ch.Net");
+        add("accept0", "sun.nio.ch.ServerSocketChannelImpl");
+        add("poll", "sun.nio.ch.Net", "sun.nio.ch.KQueue");
+        add("read0", "sun.nio.ch.SocketDispatcher", "sun.nio.ch.FileDispatcherImpl");
+        add("epollWait", "sun.nio.ch.EPollArrayWrapper");
+        add("wait", "sun.nio.ch.EPoll");
+        add("kevent0", "sun.nio.ch.KQueueArrayWrapper");
+        add("poll0", "sun.nio.ch.WindowsSelectorImpl$SubSelector", "sun.nio.ch.PollArrayWrapper");
+        add("epollWait", "io.netty.channel.epoll.Native");
+        add("epollWait0", "io.netty.channel.epoll.Native");
+    }
+
+    private IdleFrames() {
+    }
+
+    private static void add(String methodName, String... classNames) {
+        Set<String> classes = FRAMES.get(methodName);
+        if (classes == null) {
+            classes = new HashSet<>();
+            FRAMES.put(methodName, classes);
+        }
+        classes.addAll(Arrays.asList(classNames));
+    }
+
+    /**
+     * Check whether a stack is idle in a waiting frame.
+     *
+     * @param stack the stack, innermost frame first
+     * @return true if the thread is idle or has no frames
+     */
+    static boolean isIdle(StackTraceElement[] stack) {
+        if (stack.length == 0) {
+            return true;
+        }
+        Set<String> classes = FRAMES.get(stack[0].getMethodName());
+        return classes != null && classes.contains(stack[0].getClassName());
+    }
+
+    /**
+     * Get the innermost frame of a stack, to log an idle thread as the
+     * frame it is waiting in.
+     *
+     * @param stack the stack, innermost frame first
+     * @return a stack of at most one frame
+     */
+    static StackTraceElement[] innermost(StackTraceElement[] stack) {
+        return stack.length > 1 ? new StackTraceElement[] { stack[0] } : stack;
+    }
+
+}
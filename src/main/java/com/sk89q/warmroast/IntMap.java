@@ -0,0 +1,148 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An open-addressing map from non-negative int keys to values.
+ */
+class IntMap<V> {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    IntMap() {
+        this(4);
+    }
+
+    IntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 2) * 2 - 1) * 2;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return (V) values[i];
+            } else if (k == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    void put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                values[i] = value;
+                return;
+            } else if (k == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void values(Collection<? super V> out) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                out.add((V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the number of slots, for iterating with {@link #valueAt(int)}.
+     *
+     * @return the number of slots
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Get the value in a slot.
+     *
+     * @param slot the slot, less than {@link #capacity()}
+     * @return the value, or null if the slot is empty
+     */
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return keys[slot] != EMPTY ? (V) values[slot] : null;
+    }
+
+    long estimateBytes() {
+        // Object header + two references + size, then the two arrays
+        return 24 + arrayBytes(keys.length, 4) + arrayBytes(values.length, 4);
+    }
+
+    static long arrayBytes(int length, int elementSize) {
+        return (16 + (long) length * elementSize + 7) & ~7L;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != EMPTY) {
+                int i = mix(key) & mask;
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
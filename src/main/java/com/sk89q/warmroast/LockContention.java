@@ -0,0 +1,345 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.LockInfo;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Works out which locks block which threads from thread dumps taken with
+ * locked monitors and synchronizers, and adds up a summary of each lock.
+ *
+ * <p>A thread counts as contended if it is blocked entering a monitor, or
+ * parked acquiring a synchronizer such as a {@code ReentrantLock}. Threads
+ * waiting for a signal in {@link Object#wait()} or on a condition are not
+ * contended. The time is the thread's blocked or waited time since the
+ * previous sample when the VM measures it, or else the sample's weight, so
+ * time spent blocked between samples is put on the stack the thread is
+ * seen blocked in.</p>
+ *
+ * <p>Locks are summed up by class, since locks made per request or per
+ * chunk would otherwise each be kept forever. For each class, only the
+ * {@link #LIMIT} instances, blocked threads and owners with the most time
+ * are kept: a new one takes the place of the one with the least time and
+ * carries on from its time, so one that keeps coming back stays listed,
+ * at the cost of overstating its time by at most what it replaced.</p>
+ *
+ * <p>Callers synchronize on the roast.</p>
+ */
+class LockContention {
+
+    private static final String CONDITION_SUFFIX = "$ConditionObject";
+
+    /**
+     * The most instances, blocked threads and owners kept for each lock class.
+     */
+    static final int LIMIT = 10;
+
+    private final FrameTable frames;
+    private final Map<String, Lock> locks = new HashMap<>();
+    private Map<String, long[]> counters = new TreeMap<>();
+    private Map<Long, long[]> lastTimes = new HashMap<>();
+
+    LockContention(FrameTable frames) {
+        this.frames = frames;
+    }
+
+    /**
+     * Find the contended threads in a sample and add them to the summary.
+     *
+     * @param threads the sampled threads, whose lock owners are only found
+     *     if they were sampled too
+     * @param weight the time the sample stands for, in nanoseconds
+     * @return the time each thread was contended, in nanoseconds, by index,
+     *         or 0 if it was not
+     */
+    long[] sample(ThreadInfo[] threads, long weight) {
+        Map<Long, ThreadInfo> byId = new HashMap<>();
+        for (ThreadInfo thread : threads) {
+            if (thread != null) {
+                byId.put(thread.getThreadId(), thread);
+            }
+        }
+
+        long[] times = new long[threads.length];
+        Map<Long, long[]> seenTimes = new HashMap<>();
+        Map<String, long[]> seenCounters = new TreeMap<>();
+        for (int i = 0; i < threads.length; i++) {
+            ThreadInfo thread = threads[i];
+            if (thread == null || thread.getThreadName() == null) {
+                continue;
+            }
+
+            long[] current = { thread.getBlockedTime(), thread.getWaitedTime() };
+            long[] last = lastTimes.get(thread.getThreadId());
+            seenTimes.put(thread.getThreadId(), current);
+            seenCounters.put(thread.getThreadName(), new long[] {
+                    thread.getBlockedCount(), current[0], thread.getWaitedCount(), current[1] });
+
+            if (!isContended(thread)) {
+                continue;
+            }
+
+            int which = thread.getThreadState() == Thread.State.BLOCKED ? 0 : 1;
+            long time;
+            if (current[which] < 0) {
+                // Contention monitoring is off or not supported
+                time = weight;
+            } else if (last != null && current[which] > last[which]) {
+                time = (current[which] - last[which]) * 1000000;
+            } else {
+                continue;
+            }
+
+            times[i] = time;
+            record(thread, byId.get(thread.getLockOwnerId()), time);
+        }
+        // Only threads that are still alive are kept
+        lastTimes = seenTimes;
+        counters = seenCounters;
+        return times;
+    }
+
+    private void record(ThreadInfo thread, ThreadInfo owner, long time) {
+        LockInfo info = thread.getLockInfo();
+        Lock lock = locks.get(info.getClassName());
+        if (lock == null) {
+            lock = new Lock(info.getClassName());
+            locks.put(lock.name, lock);
+        }
+        lock.time += time;
+        add(lock.instances, getLockName(info), time);
+        add(lock.threads, thread.getThreadName(), time);
+
+        if (owner != null) {
+            Frame frame = findLockedFrame(owner, info);
+            String key = owner.getThreadName() + (frame != null ? "\n" + frame.getId() : "");
+            Holder holder = lock.owners.get(key);
+            if (holder == null) {
+                holder = new Holder(owner.getThreadName(), frame);
+                if (lock.owners.size() >= LIMIT) {
+                    Map.Entry<String, Holder> least = null;
+                    for (Map.Entry<String, Holder> entry : lock.owners.entrySet()) {
+                        if (least == null || entry.getValue().time < least.getValue().time) {
+                            least = entry;
+                        }
+                    }
+                    lock.owners.remove(least.getKey());
+                    holder.time = least.getValue().time;
+                }
+                lock.owners.put(key, holder);
+            }
+            holder.time += time;
+        }
+    }
+
+    private Frame findLockedFrame(ThreadInfo owner, LockInfo lock) {
+        MonitorInfo[] monitors = owner.getLockedMonitors();
+        if (monitors != null) {
+            for (MonitorInfo monitor : monitors) {
+                if (monitor.getIdentityHashCode() == lock.getIdentityHashCode()
+                        && monitor.getClassName().equals(lock.getClassName())
+                        && monitor.getLockedStackFrame() != null) {
+                    StackTraceElement element = monitor.getLockedStackFrame();
+                    return frames.intern(element.getClassName(), element.getMethodName());
+                }
+            }
+        }
+        // Synchronizers do not say where they were locked
+        return null;
+    }
+
+    /**
+     * Check whether a thread is blocked on a monitor or parked acquiring a
+     * synchronizer, rather than running or waiting for a signal.
+     *
+     * @param thread the thread
+     * @return true if it is contended
+     */
+    static boolean isContended(ThreadInfo thread) {
+        LockInfo lock = thread.getLockInfo();
+        if (lock == null) {
+            return false;
+        }
+        switch (thread.getThreadState()) {
+            case BLOCKED:
+                return true;
+            case WAITING:
+            case TIMED_WAITING:
+                StackTraceElement[] stack = thread.getStackTrace();
+                return !lock.getClassName().endsWith(CONDITION_SUFFIX)
+                        && stack != null && stack.length > 0
+                        && stack[0].getMethodName().startsWith("park");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the name a lock instance is shown under: its class and identity
+     * hash. Identity hashes can be reused once a lock is collected.
+     *
+     * @param lock the lock
+     * @return the name
+     */
+    private static String getLockName(LockInfo lock) {
+        return lock.getClassName() + "@" + Integer.toHexString(lock.getIdentityHashCode());
+    }
+
+    /**
+     * Write the summary as JSON. Times are in microseconds, and a thread's
+     * blocked or waited time is -1 if the VM does not measure it.
+     *
+     * @param w the writer
+     * @param mapping the mapping for frame names
+     * @param buffer the buffer for numbers
+     * @throws IOException on I/O error
+     */
+    void writeJson(Writer w, McpMapping mapping, RenderBuffer buffer) throws IOException {
+        List<Lock> sorted = new ArrayList<>(locks.values());
+        sorted.sort((o1, o2) -> Long.compare(o2.time, o1.time));
+
+        w.write("{\"locks\":[");
+        for (int i = 0; i < sorted.size(); i++) {
+            Lock lock = sorted.get(i);
+            if (i > 0) {
+                w.write(',');
+            }
+            w.write("{\"name\":\"");
+            w.write(Node.escapeJson(lock.name));
+            w.write("\",\"time\":");
+            buffer.writeLong(w, lock.time / 1000);
+            w.write(",\"instances\":");
+            writeTimes(w, lock.instances, buffer);
+            w.write(",\"threads\":");
+            writeTimes(w, lock.threads, buffer);
+            w.write(",\"owners\":[");
+            List<Holder> owners = new ArrayList<>(lock.owners.values());
+            owners.sort((o1, o2) -> Long.compare(o2.time, o1.time));
+            for (int j = 0; j < owners.size(); j++) {
+                Holder holder = owners.get(j);
+                if (j > 0) {
+                    w.write(',');
+                }
+                w.write("{\"name\":\"");
+                w.write(Node.escapeJson(holder.thread));
+                w.write('"');
+                if (holder.frame != null) {
+                    w.write(",\"frame\":\"");
+                    w.write(mapping.getNames(holder.frame).getJson());
+                    w.write('"');
+                }
+                w.write(",\"time\":");
+                buffer.writeLong(w, holder.time / 1000);
+                w.write('}');
+            }
+            w.write("]}");
+        }
+
+        w.write("],\"threads\":[");
+        boolean first = true;
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            long[] values = entry.getValue();
+            if (!first) {
+                w.write(',');
+            }
+            first = false;
+            w.write("{\"name\":\"");
+            w.write(Node.escapeJson(entry.getKey()));
+            w.write("\",\"blockedCount\":");
+            buffer.writeLong(w, values[0]);
+            w.write(",\"blockedTime\":");
+            buffer.writeLong(w, values[1] < 0 ? -1 : values[1] * 1000);
+            w.write(",\"waitedCount\":");
+            buffer.writeLong(w, values[2]);
+            w.write(",\"waitedTime\":");
+            buffer.writeLong(w, values[3] < 0 ? -1 : values[3] * 1000);
+            w.write('}');
+        }
+        w.write("]}");
+    }
+
+    private static void writeTimes(Writer w, Map<String, Long> times, RenderBuffer buffer)
+            throws IOException {
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(times.entrySet());
+        sorted.sort((o1, o2) -> Long.compare(o2.getValue(), o1.getValue()));
+        w.write('[');
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i > 0) {
+                w.write(',');
+            }
+            w.write("{\"name\":\"");
+            w.write(Node.escapeJson(sorted.get(i).getKey()));
+            w.write("\",\"time\":");
+            buffer.writeLong(w, sorted.get(i).getValue() / 1000);
+            w.write('}');
+        }
+        w.write(']');
+    }
+
+    /**
+     * Add time to a key, keeping at most {@link #LIMIT} keys.
+     */
+    private static void add(Map<String, Long> times, String key, long time) {
+        Long total = times.get(key);
+        if (total == null && times.size() >= LIMIT) {
+            Map.Entry<String, Long> least = null;
+            for (Map.Entry<String, Long> entry : times.entrySet()) {
+                if (least == null || entry.getValue() < least.getValue()) {
+                    least = entry;
+                }
+            }
+            times.remove(least.getKey());
+            total = least.getValue();
+        }
+        times.put(key, total != null ? total + time : time);
+    }
+
+    private static class Lock {
+        private final String name;
+        private final Map<String, Long> instances = new HashMap<>();
+        private final Map<String, Long> threads = new HashMap<>();
+        private final Map<String, Holder> owners = new HashMap<>();
+        private long time;
+
+        private Lock(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Holder {
+        private final String thread;
+        private final Frame frame;
+        private long time;
+
+        private Holder(String thread, Frame frame) {
+            this.thread = thread;
+            this.frame = frame;
+        }
+    }
+
+}
@@ -10,8 +10,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class Main {
     private static final String SEPARATOR =
@@ -33,27 +37,220 @@ public class Main {
         System.err.println(SEPARATOR);
         System.err.println("");
 
-        VirtualMachine vm = null;
+        if (!opt.openFiles.isEmpty()) {
+            open(opt);
+            return;
+        }
+
+        List<VirtualMachine> vms = new ArrayList<>();
+        List<String> vmNames = new ArrayList<>();
+        attach(opt, vms, vmNames);
+
+        InetSocketAddress address = new InetSocketAddress(opt.bindAddress, opt.port);
+
+        if (opt.interval <= 0) {
+            System.err.println("The interval must be greater than zero.");
+            System.exit(1);
+        }
+        if (opt.maxOverhead != null && (opt.maxOverhead <= 0 || opt.maxOverhead >= 100)) {
+            System.err.println("The overhead budget must be a percentage between 0 and 100.");
+            System.exit(1);
+        }
+        ThreadSelection selection = null;
+        try {
+            selection = parseThreadSelection(opt);
+        } catch (PatternSyntaxException e) {
+            System.err.println("Bad --thread-regex: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Bad thread selection: " + e.getMessage());
+            System.exit(1);
+        }
+        StackFolder folder = null;
+        if (opt.maxDepth != 0 || !opt.foldPackages.isEmpty() || opt.foldRecursion) {
+            try {
+                folder = new StackFolder(opt.maxDepth, opt.foldPackages, opt.foldRecursion);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Bad --max-depth or --fold: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (opt.threadGroup != null && !opt.agent) {
+            System.err.println("Thread groups can only be seen from inside the target VM; add --agent.");
+            System.exit(1);
+        }
+        if (opt.samplerThreads <= 0) {
+            System.err.println("There must be at least one sampler thread.");
+            System.exit(1);
+        }
+        if (opt.epoch <= 0) {
+            System.err.println("The epoch must be at least a second long.");
+            System.exit(1);
+        }
 
-        if (opt.pid != null) {
+        for (String spec : opt.triggers) {
             try {
-                vm = VirtualMachine.attach(String.valueOf(opt.pid));
-                System.err.println("Attaching to PID " + opt.pid + "...");
+                Trigger.parse(spec);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Bad --trigger: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (opt.cpu && opt.agent) {
+            System.err.println("CPU time and thread states are only recorded over JMX; leave out --agent.");
+            System.exit(1);
+        }
+        if (opt.collapseIdle && opt.agent) {
+            System.err.println("Idle threads are only collapsed over JMX; leave out --agent.");
+            System.exit(1);
+        }
+        if (opt.allocation && opt.agent) {
+            System.err.println("Allocation is only recorded over JMX; leave out --agent.");
+            System.exit(1);
+        }
+        if (opt.contention && opt.agent) {
+            System.err.println("Lock contention is only recorded over JMX; leave out --agent.");
+            System.exit(1);
+        }
+        if (!opt.triggers.isEmpty()) {
+            if (opt.agent) {
+                System.err.println("Triggers need sampling over JMX; leave out --agent.");
+                System.exit(1);
+            }
+            if (opt.triggerInterval <= 0 || opt.triggerDuration <= 0 || opt.triggerBefore < 0) {
+                System.err.println("The trigger's interval and duration must be greater than zero.");
+                System.exit(1);
+            }
+            if ((opt.triggerCooldown != null && opt.triggerCooldown < 0) || opt.triggerKeep < 0) {
+                System.err.println("--trigger-cooldown and --trigger-keep can't be negative.");
+                System.exit(1);
+            }
+            if (opt.history < opt.triggerBefore + opt.triggerDuration) {
+                System.err.println("--history must be at least --trigger-before plus --trigger-duration.");
+                System.exit(1);
+            }
+        }
+
+        McpMapping mapping = new McpMapping();
+        FrameTable frames = new FrameTable();
+        readMappings(mapping, opt);
+
+        System.err.println(SEPARATOR);
+
+        long endTime = -1;
+        if (opt.timeout != null && opt.timeout > 0) {
+            endTime = System.currentTimeMillis() + opt.timeout * 1000;
+            System.err.println("Sampling set to stop in " + opt.timeout + " seconds.");
+        }
+
+        // Captures made by triggers are added as they are saved
+        List<WarmRoast> roasts = new CopyOnWriteArrayList<>();
+        TriggerCaptures captures = opt.triggerKeep > 0
+                ? new TriggerCaptures(roasts, opt.triggerKeep) : null;
+        long cooldown = (opt.triggerCooldown != null ? opt.triggerCooldown : opt.triggerDuration) * 1000L;
+        for (int i = 0; i < vms.size(); i++) {
+            WarmRoast roast = new WarmRoast(vms.get(i), mapping, frames,
+                    (long) (opt.interval * 1000000), opt.bufferSize);
+            roast.setName(vmNames.get(i));
+            roast.setThreadSelection(selection);
+            roast.setStackFolder(folder);
+            roast.setCompactTree(opt.compact);
+            roast.setAgentMode(opt.agent);
+            roast.setCpuMode(opt.cpu);
+            roast.setCollapseIdle(opt.collapseIdle);
+            roast.setAllocationMode(opt.allocation);
+            roast.setContentionMode(opt.contention);
+            if (opt.maxOverhead != null) {
+                roast.setMaxOverhead(opt.maxOverhead / 100);
+            }
+            roast.setEndTime(endTime);
+            roast.setHistory(opt.epoch * 1000L, (Math.max(0, opt.history) + opt.epoch - 1) / opt.epoch);
+            if (opt.foldedFile != null) {
+                roast.setFoldedOutput(new File(forVm(opt.foldedFile, i, vms.size())));
+            }
+            if (opt.outputFile != null) {
+                String output = forVm(opt.outputFile, i, vms.size());
+                roast.setProfileOutput(new File(output), opt.compress,
+                        Math.max(0, opt.outputInterval) * 1000L);
+                System.err.println("The profile of " + roast.getName() + " will be saved to " + output + ".");
+            }
+            if (!opt.triggers.isEmpty()) {
+                List<Trigger> triggers = new ArrayList<>();
+                for (String spec : opt.triggers) {
+                    triggers.add(Trigger.parse(spec));
+                }
+                roast.setTriggerWatcher(new TriggerWatcher(roast, triggers,
+                        (long) (opt.triggerInterval * 1000000), opt.triggerDuration * 1000L, cooldown,
+                        opt.triggerBefore * 1000L, new File(opt.triggerDir), opt.compress, captures));
+            }
+            roasts.add(roast);
+        }
+
+        // Saved profiles to compare against come after the VMs, and are
+        // never connected or sampled
+        List<WarmRoast> baselines = new ArrayList<>();
+        for (String path : opt.baselineFiles) {
+            baselines.add(load(path, mapping, frames, opt));
+        }
+
+        System.err.println("Starting a server on " + address.toString() + "...");
+        System.err.println("Once the server starts (shortly), visit the URL in your browser.");
+        System.err.println("Note: The longer you wait before using the output of that " +
+        		"webpage, the more accurate the results will be.");
+
+        try {
+            SamplingScheduler scheduler = new SamplingScheduler(opt.samplerThreads);
+            for (WarmRoast roast : roasts) {
+                roast.connect();
+            }
+            scheduler.start();
+            for (WarmRoast roast : roasts) {
+                roast.start(scheduler);
+            }
+            roasts.addAll(baselines);
+            new RoastServer(roasts).serve(address);
+        } catch (Throwable t) {
+            t.printStackTrace();
+            System.exit(3);
+        }
+    }
+
+    /**
+     * Attach to the VMs given by PID or name, or ask which to attach to if
+     * none were given. Exits if a VM can't be attached to.
+     *
+     * @param opt the options
+     * @param vms the list to add the VMs to
+     * @param names the list to add the VMs' names to
+     * @throws IOException on I/O error reading the choice
+     */
+    private static void attach(RoastOptions opt, List<VirtualMachine> vms, List<String> names)
+            throws IOException {
+        List<VirtualMachineDescriptor> descriptors = VirtualMachine.list();
+
+        for (Integer pid : opt.pids) {
+            try {
+                vms.add(VirtualMachine.attach(String.valueOf(pid)));
+                names.add(describe(String.valueOf(pid), descriptors));
+                System.err.println("Attaching to PID " + pid + "...");
             } catch (AttachNotSupportedException | IOException e) {
-                System.err.println("Failed to attach VM by PID " + opt.pid);
+                System.err.println("Failed to attach VM by PID " + pid);
                 e.printStackTrace();
                 System.exit(1);
             }
-        } else if (opt.vmName != null) {
-            for (VirtualMachineDescriptor desc : VirtualMachine.list()) {
-                if (desc.displayName().contains(opt.vmName)) {
+        }
+
+        for (String vmName : opt.vmNames) {
+            for (VirtualMachineDescriptor desc : descriptors) {
+                if (desc.displayName().contains(vmName)) {
                     try {
-                        vm = VirtualMachine.attach(desc);
+                        vms.add(VirtualMachine.attach(desc));
+                        names.add(desc.id() + " " + desc.displayName());
                         System.err.println("Attaching to '" + desc.displayName() + "'...");
 
                         break;
                     } catch (AttachNotSupportedException | IOException e) {
-                        System.err.println("Failed to attach VM by name '" + opt.vmName + "'");
+                        System.err.println("Failed to attach VM by name '" + vmName + "'");
                         e.printStackTrace();
                         System.exit(1);
                     }
@@ -61,8 +258,8 @@ public class Main {
             }
         }
 
-        if (vm == null) {
-            List<VirtualMachineDescriptor> descriptors = VirtualMachine.list();
+        if (vms.isEmpty()) {
+            descriptors = new ArrayList<>(descriptors);
             descriptors.sort(Comparator.comparing(VirtualMachineDescriptor::displayName));
 
             System.err.println("Choose a VM:");
@@ -75,19 +272,23 @@ public class Main {
 
             // Ask for choice
             System.err.println("");
-            System.err.print("Enter choice #: ");
+            System.err.print("Enter choice # (or several, separated by commas): ");
             BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
             String s = reader.readLine();
 
-            // Get the VM
+            // Get the VMs
             try {
-                int choice = Integer.parseInt(s) - 1;
-                if (choice < 0 || choice >= descriptors.size()) {
-                    System.err.println("");
-                    System.err.println("Given choice is out of range.");
-                    System.exit(1);
+                for (String part : (s != null ? s : "").split(",")) {
+                    int choice = Integer.parseInt(part.trim()) - 1;
+                    if (choice < 0 || choice >= descriptors.size()) {
+                        System.err.println("");
+                        System.err.println("Given choice is out of range.");
+                        System.exit(1);
+                    }
+                    VirtualMachineDescriptor desc = descriptors.get(choice);
+                    vms.add(VirtualMachine.attach(desc));
+                    names.add(desc.id() + " " + desc.displayName());
                 }
-                vm = VirtualMachine.attach(descriptors.get(choice));
             } catch (NumberFormatException e) {
                 System.err.println("");
                 System.err.println("That's not a number. Bye.");
@@ -99,44 +300,133 @@ public class Main {
                 System.exit(1);
             }
         }
+    }
 
-        InetSocketAddress address = new InetSocketAddress(opt.bindAddress, opt.port);
-
-        WarmRoast roast = new WarmRoast(vm, opt.interval);
-        if (opt.mappingsDir != null) {
-            File dir = new File(opt.mappingsDir);
-            File joined = new File(dir, "joined.srg");
-            File methods = new File(dir, "methods.csv");
-            try {
-                roast.getMapping().read(joined, methods);
-            } catch (IOException e) {
-                System.err.println(
-                        "Failed to read the mappings files (joined.srg, methods.csv) " +
-                        "from " + dir.getAbsolutePath() + ": " + e.getMessage());
-                System.exit(2);
+    private static String describe(String id, List<VirtualMachineDescriptor> descriptors) {
+        for (VirtualMachineDescriptor desc : descriptors) {
+            if (desc.id().equals(id)) {
+                return id + " " + desc.displayName();
             }
         }
+        return "PID " + id;
+    }
 
-        System.err.println(SEPARATOR);
+    /**
+     * Get the path of an output file for one of several VMs, by adding the
+     * VM's number before the extension.
+     *
+     * @param path the path given
+     * @param index the VM's index
+     * @param count the number of VMs
+     * @return the path
+     */
+    static String forVm(String path, int index, int count) {
+        if (count == 1) {
+            return path;
+        }
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar));
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1) {
+            dot = path.length();
+        }
+        return path.substring(0, dot) + "-" + index + path.substring(dot);
+    }
 
-        roast.setFilterThread(opt.threadName);
+    /**
+     * Serve saved profiles without attaching to a VM.
+     *
+     * @param opt the options
+     */
+    private static void open(RoastOptions opt) {
+        InetSocketAddress address = new InetSocketAddress(opt.bindAddress, opt.port);
+        McpMapping mapping = new McpMapping();
+        FrameTable frames = new FrameTable();
+        readMappings(mapping, opt);
 
-        if (opt.timeout != null && opt.timeout > 0) {
-            roast.setEndTime(System.currentTimeMillis() + opt.timeout * 1000);
-            System.err.println("Sampling set to stop in " + opt.timeout + " seconds.");
+        List<WarmRoast> roasts = new ArrayList<>();
+        for (String path : opt.openFiles) {
+            roasts.add(load(path, mapping, frames, opt));
         }
 
+        System.err.println(SEPARATOR);
         System.err.println("Starting a server on " + address.toString() + "...");
-        System.err.println("Once the server starts (shortly), visit the URL in your browser.");
-        System.err.println("Note: The longer you wait before using the output of that " +
-        		"webpage, the more accurate the results will be.");
 
         try {
-            roast.connect();
-            roast.start(address);
+            new RoastServer(roasts).serve(address);
         } catch (Throwable t) {
             t.printStackTrace();
             System.exit(3);
         }
     }
+
+    /**
+     * Load a saved profile. Exits if it can't be loaded.
+     *
+     * @param path the path to the profile
+     * @param mapping the mappings
+     * @param frames the frame table
+     * @param opt the options
+     * @return the roast
+     */
+    private static WarmRoast load(String path, McpMapping mapping, FrameTable frames,
+            RoastOptions opt) {
+        File file = new File(path);
+        WarmRoast roast = new WarmRoast(null, mapping, frames,
+                (long) (opt.interval * 1000000), opt.bufferSize);
+        roast.setName(file.getName());
+        roast.setCompactTree(opt.compact);
+        try {
+            long start = System.nanoTime();
+            ProfileFile.load(roast, file);
+            System.err.println("Loaded " + file.getAbsolutePath() + " in " +
+                    (System.nanoTime() - start) / 1000000 + "ms.");
+        } catch (IOException e) {
+            System.err.println("Failed to load the profile from " +
+                    file.getAbsolutePath() + ": " + e.getMessage());
+            System.exit(2);
+        }
+        return roast;
+    }
+
+    /**
+     * Get the threads to sample from the options.
+     *
+     * @param opt the options
+     * @return the selection, or null to sample every thread
+     * @throws IllegalArgumentException if an option is out of range
+     * @throws PatternSyntaxException if the regex is bad
+     */
+    private static ThreadSelection parseThreadSelection(RoastOptions opt) {
+        if (opt.threadNames.isEmpty() && opt.threadRegex == null && opt.threadIds.isEmpty()
+                && opt.threadGroup == null && opt.topCpu == 0) {
+            return null;
+        }
+        return new ThreadSelection(opt.threadNames,
+                opt.threadRegex != null ? Pattern.compile(opt.threadRegex) : null,
+                opt.threadIds, opt.threadGroup, opt.topCpu,
+                (long) (opt.threadRefresh * 1000000000L));
+    }
+
+    private static void readMappings(McpMapping mapping, RoastOptions opt) {
+        if (opt.mappingsPath != null) {
+            File path = new File(opt.mappingsPath);
+            File index = MappingIndex.fileFor(path);
+            try {
+                MappingProvider provider = MappingProvider.forPath(path);
+                long start = System.nanoTime();
+                boolean indexed = mapping.load(provider, index);
+                System.err.println("Loaded mappings " + (indexed ? "from the index " : "") +
+                        "in " + (System.nanoTime() - start) / 1000000 + "ms.");
+
+                Thread watcher = new Thread(
+                        new MappingWatcher(mapping, provider, index), "Mapping Watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+            } catch (IOException e) {
+                System.err.println("Failed to read the mappings from " +
+                        path.getAbsolutePath() + ": " + e.getMessage());
+                System.exit(2);
+            }
+        }
+    }
 }
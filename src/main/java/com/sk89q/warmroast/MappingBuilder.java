@@ -0,0 +1,127 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects mappings from a {@link MappingProvider} and packs them into a
+ * {@link MappingTable}.
+ *
+ * <p>Adding a class or method ID again replaces its name. Methods of
+ * classes that were never added are dropped, and a method name given
+ * twice for the same obfuscated method is kept once.</p>
+ */
+class MappingBuilder {
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<String, String> classes = new LinkedHashMap<>();
+    private final List<String> methods = new ArrayList<>();
+    private final Map<String, String> methodIds = new LinkedHashMap<>();
+
+    void addClass(String obfuscated, String actual) {
+        classes.put(obfuscated, actual);
+    }
+
+    void addMethod(String obfuscatedClass, String obfuscated, String actual) {
+        methods.add(obfuscatedClass);
+        methods.add(obfuscated);
+        methods.add(share(actual));
+    }
+
+    void addMethodName(String id, String name) {
+        methodIds.put(id, share(name));
+    }
+
+    /**
+     * Keep one copy of strings that repeat a lot, like method names.
+     */
+    private String share(String s) {
+        String existing = strings.putIfAbsent(s, s);
+        return existing != null ? existing : s;
+    }
+
+    MappingTable build() {
+        String[] classKeys = classes.keySet().toArray(new String[classes.size()]);
+        String[] classNames = classes.values().toArray(new String[classes.size()]);
+        Map<String, Integer> classIndexes = new HashMap<>();
+        for (int i = 0; i < classKeys.length; i++) {
+            classIndexes.put(classKeys[i], i);
+        }
+
+        int count = methods.size() / 3;
+        int[] owners = new int[count];
+        List<Integer> order = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Integer owner = classIndexes.get(methods.get(i * 3));
+            owners[i] = owner != null ? owner : -1;
+            if (owner != null) {
+                order.add(i);
+            }
+        }
+        // Stable, so several names for one method stay in the order given
+        order.sort(Comparator.<Integer>comparingInt(i -> owners[i])
+                .thenComparing(i -> methods.get(i * 3 + 1)));
+
+        int[] methodStart = new int[classKeys.length + 1];
+        String[] methodKeys = new String[order.size()];
+        String[] methodNames = new String[order.size()];
+        int size = 0;
+        int groupStart = 0;
+        int groupOwner = -1;
+        for (int i : order) {
+            String key = methods.get(i * 3 + 1);
+            String name = methods.get(i * 3 + 2);
+            if (owners[i] != groupOwner || !key.equals(methodKeys[groupStart])) {
+                groupStart = size;
+                groupOwner = owners[i];
+            } else if (contains(methodNames, groupStart, size, name)) {
+                continue;
+            }
+            methodKeys[size] = key;
+            methodNames[size] = name;
+            methodStart[owners[i] + 1]++;
+            size++;
+        }
+        for (int i = 0; i < classKeys.length; i++) {
+            methodStart[i + 1] += methodStart[i];
+        }
+
+        String[] idKeys = methodIds.keySet().toArray(new String[methodIds.size()]);
+        String[] idNames = methodIds.values().toArray(new String[methodIds.size()]);
+        return new MappingTable(classKeys, classNames, methodStart,
+                Arrays.copyOf(methodKeys, size), Arrays.copyOf(methodNames, size), idKeys, idNames);
+    }
+
+    private static boolean contains(String[] array, int from, int to, String s) {
+        for (int i = from; i < to; i++) {
+            if (array[i].equals(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A prebuilt binary copy of a {@link MappingTable}, so that later startups
+ * can skip parsing the mapping files.
+ *
+ * <p>After a fixed header (magic number and version), the index records
+ * the length and modification time of each source file it was built from,
+ * and is ignored if any of them has changed. Then come, as varints (see
+ * {@link Varints}):</p>
+ *
+ * <ul>
+ *     <li>a string table: a count, then each string as a byte length and
+ *     UTF-8 bytes</li>
+ *     <li>the classes: a count, then each class's obfuscated and mapped
+ *     names and its number of methods</li>
+ *     <li>the methods, in order, as string indexes of their obfuscated
+ *     and mapped names</li>
+ *     <li>the method IDs: a count, then the string indexes of each ID
+ *     and name</li>
+ * </ul>
+ */
+final class MappingIndex {
+
+    static final int MAGIC = 0x5752494D; // "WRIM"
+    static final int VERSION = 2;
+
+    private MappingIndex() {
+    }
+
+    /**
+     * Get where to keep the index for a mappings file or directory.
+     *
+     * @param path the file or directory
+     * @return the index file
+     */
+    static File fileFor(File path) {
+        return path.isDirectory()
+                ? new File(path, "warmroast.idx")
+                : new File(path.getAbsoluteFile().getParentFile(), path.getName() + ".warmroast.idx");
+    }
+
+    /**
+     * Load an index, if it exists and is up to date.
+     *
+     * @param index the index file
+     * @param sources the files the index was built from
+     * @return the mappings, or null
+     * @throws IOException if the index could not be read
+     */
+    static MappingTable load(File index, List<File> sources) throws IOException {
+        if (!index.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(index.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 5 || buffer.getInt() != MAGIC || (buffer.get() & 0xFF) != VERSION) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+        if (Varints.readVarInt(in) != sources.size()) {
+            return null;
+        }
+        for (File source : sources) {
+            if (Varints.readVarLong(in) != source.length()
+                    || Varints.readVarLong(in) != source.lastModified()) {
+                return null;
+            }
+        }
+
+        String[] strings = new String[Varints.readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[Varints.readVarInt(in)];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int classCount = Varints.readVarInt(in);
+        String[] classKeys = new String[classCount];
+        String[] classNames = new String[classCount];
+        int[] methodStart = new int[classCount + 1];
+        for (int i = 0; i < classCount; i++) {
+            classKeys[i] = string(in, strings);
+            classNames[i] = string(in, strings);
+            methodStart[i + 1] = methodStart[i] + Varints.readVarInt(in);
+        }
+        String[] methodKeys = new String[methodStart[classCount]];
+        String[] methodNames = new String[methodKeys.length];
+        for (int i = 0; i < methodKeys.length; i++) {
+            methodKeys[i] = string(in, strings);
+            methodNames[i] = string(in, strings);
+        }
+
+        String[] idKeys = new String[Varints.readVarInt(in)];
+        String[] idNames = new String[idKeys.length];
+        for (int i = 0; i < idKeys.length; i++) {
+            idKeys[i] = string(in, strings);
+            idNames[i] = string(in, strings);
+        }
+
+        return new MappingTable(classKeys, classNames, methodStart,
+                methodKeys, methodNames, idKeys, idNames);
+    }
+
+    /**
+     * Write an index. The file is written next to the target and then
+     * moved over it.
+     *
+     * @param table the mappings
+     * @param index the index file
+     * @param sources the files the mappings were read from
+     * @throws IOException on I/O error
+     */
+    static void save(MappingTable table, File index, List<File> sources) throws IOException {
+        Map<String, Integer> strings = new HashMap<>();
+        intern(strings, table.classKeys);
+        intern(strings, table.classNames);
+        intern(strings, table.methodKeys);
+        intern(strings, table.methodNames);
+        intern(strings, table.idKeys);
+        intern(strings, table.idNames);
+        String[] stringTable = new String[strings.size()];
+        for (Map.Entry<String, Integer> entry : strings.entrySet()) {
+            stringTable[entry.getValue()] = entry.getKey();
+        }
+
+        File temp = new File(index.getAbsoluteFile().getParentFile(), index.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            Varints.writeVarInt(out, sources.size());
+            for (File source : sources) {
+                Varints.writeVarLong(out, source.length());
+                Varints.writeVarLong(out, source.lastModified());
+            }
+
+            Varints.writeVarInt(out, stringTable.length);
+            for (String s : stringTable) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                Varints.writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+
+            Varints.writeVarInt(out, table.getClassCount());
+            for (int i = 0; i < table.getClassCount(); i++) {
+                Varints.writeVarInt(out, strings.get(table.classKeys[i]));
+                Varints.writeVarInt(out, strings.get(table.classNames[i]));
+                Varints.writeVarInt(out, table.methodStart[i + 1] - table.methodStart[i]);
+            }
+            for (int i = 0; i < table.methodKeys.length; i++) {
+                Varints.writeVarInt(out, strings.get(table.methodKeys[i]));
+                Varints.writeVarInt(out, strings.get(table.methodNames[i]));
+            }
+
+            Varints.writeVarInt(out, table.idKeys.length);
+            for (int i = 0; i < table.idKeys.length; i++) {
+                Varints.writeVarInt(out, strings.get(table.idKeys[i]));
+                Varints.writeVarInt(out, strings.get(table.idNames[i]));
+            }
+        }
+        Files.move(temp.toPath(), index.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String string(DataInputStream in, String[] strings) throws IOException {
+        int index = Varints.readVarInt(in);
+        if (index >= strings.length) {
+            throw new IOException("Bad string index " + index);
+        }
+        return strings[index];
+    }
+
+    private static void intern(Map<String, Integer> strings, String[] values) {
+        for (String s : values) {
+            if (!strings.containsKey(s)) {
+                strings.put(s, strings.size());
+            }
+        }
+    }
+
+}
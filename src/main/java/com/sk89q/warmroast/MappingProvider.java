@@ -0,0 +1,99 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Reads mappings from files in some format.
+ */
+interface MappingProvider {
+
+    /**
+     * Get the files that mappings are read from, which are watched for
+     * changes.
+     *
+     * @return the files
+     */
+    List<File> getFiles();
+
+    /**
+     * Read the mappings.
+     *
+     * @param builder the builder to add mappings to
+     * @throws IOException on I/O error
+     */
+    void read(MappingBuilder builder) throws IOException;
+
+    /**
+     * Choose a provider for a path from what it contains: a directory with
+     * MCP's joined.srg or joined.tsrg (and optionally methods.csv), or a
+     * single SRG, TSRG, Tiny v2 or ProGuard (Mojang) mappings file.
+     *
+     * @param path the path
+     * @return the provider
+     * @throws IOException if the format can't be recognized
+     */
+    static MappingProvider forPath(File path) throws IOException {
+        if (path.isDirectory()) {
+            File methods = new File(path, "methods.csv");
+            if (!methods.isFile()) {
+                methods = null;
+            }
+            File joined = new File(path, "joined.srg");
+            if (joined.isFile()) {
+                return new SrgMappingProvider(joined, methods);
+            }
+            joined = new File(path, "joined.tsrg");
+            if (joined.isFile()) {
+                return new TsrgMappingProvider(joined, methods);
+            }
+            throw new IOException("No joined.srg or joined.tsrg in " + path.getAbsolutePath());
+        }
+
+        String first = null;
+        try (BufferedReader reader = Files.newBufferedReader(path.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    first = line;
+                    break;
+                }
+            }
+        }
+        if (first == null) {
+            throw new IOException(path.getAbsolutePath() + " is empty");
+        } else if (first.startsWith("tiny\t2\t")) {
+            return new TinyMappingProvider(path);
+        } else if (first.matches("(PK|CL|FD|MD): .*")) {
+            return new SrgMappingProvider(path, null);
+        } else if (first.contains(" -> ") && first.endsWith(":")) {
+            return new ProGuardMappingProvider(path);
+        } else if (first.startsWith("tsrg2 ") || first.split(" ").length == 2) {
+            return new TsrgMappingProvider(path, null);
+        }
+        throw new IOException("Unrecognized mappings format in " + path.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable set of mappings stored in flat arrays.
+ *
+ * <p>Classes are numbered in the order they were added. Each class's
+ * methods occupy the range <code>methodStart[i]</code> to
+ * <code>methodStart[i + 1]</code> of the method arrays, sorted by
+ * obfuscated name, so a method with several possible names takes several
+ * consecutive entries. Method IDs (like MCP's <code>func_</code> names)
+ * map to names regardless of class. Keys are found through open-addressing
+ * tables of indexes, so there is no map entry or list per mapping.</p>
+ */
+final class MappingTable {
+
+    static final MappingTable EMPTY = new MappingTable(
+            new String[0], new String[0], new int[1],
+            new String[0], new String[0], new String[0], new String[0]);
+
+    final String[] classKeys;
+    final String[] classNames;
+    final int[] methodStart;
+    final String[] methodKeys;
+    final String[] methodNames;
+    final String[] idKeys;
+    final String[] idNames;
+    private final int[] classSlots;
+    private final int[] idSlots;
+
+    MappingTable(String[] classKeys, String[] classNames, int[] methodStart,
+            String[] methodKeys, String[] methodNames, String[] idKeys, String[] idNames) {
+        this.classKeys = classKeys;
+        this.classNames = classNames;
+        this.methodStart = methodStart;
+        this.methodKeys = methodKeys;
+        this.methodNames = methodNames;
+        this.idKeys = idKeys;
+        this.idNames = idNames;
+        this.classSlots = index(classKeys);
+        this.idSlots = index(idKeys);
+    }
+
+    int getClassCount() {
+        return classKeys.length;
+    }
+
+    /**
+     * Find a class.
+     *
+     * @param obfuscated the obfuscated name
+     * @return the class's index, or -1
+     */
+    int findClass(String obfuscated) {
+        return find(classKeys, classSlots, obfuscated);
+    }
+
+    /**
+     * Find the names of a class's method.
+     *
+     * @param classIndex the class's index
+     * @param obfuscated the method's obfuscated name
+     * @return the names, which may be empty
+     */
+    List<String> findMethods(int classIndex, String obfuscated) {
+        int low = methodStart[classIndex];
+        int high = methodStart[classIndex + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (methodKeys[mid].compareTo(obfuscated) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int end = low;
+        while (end < methodStart[classIndex + 1] && methodKeys[end].equals(obfuscated)) {
+            end++;
+        }
+        if (end == low) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(methodNames).subList(low, end));
+    }
+
+    /**
+     * Find the name for a method ID.
+     *
+     * @param id the ID
+     * @return the name, or null
+     */
+    String findMethodId(String id) {
+        int index = find(idKeys, idSlots, id);
+        return index >= 0 ? idNames[index] : null;
+    }
+
+    private static int[] index(String[] keys) {
+        int capacity = 2;
+        while (capacity < keys.length * 2) {
+            capacity *= 2;
+        }
+        int[] slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+        return slots;
+    }
+
+    private static int find(String[] keys, int[] slots, String key) {
+        int mask = slots.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (index < 0) {
+                return -1;
+            }
+            if (keys[index].equals(key)) {
+                return index;
+            }
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+}
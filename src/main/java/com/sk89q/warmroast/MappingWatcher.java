@@ -0,0 +1,112 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a provider's mapping files and reloads the mappings when they
+ * change.
+ *
+ * <p>Reloading happens on the watcher's thread and the new mappings
+ * replace the old ones in one step, so sampling and rendering carry on
+ * throughout. If the new files can't be read, the old mappings stay.</p>
+ */
+class MappingWatcher implements Runnable {
+
+    /** How long the files must go unchanged before they are reloaded. */
+    private static final long QUIET_MILLIS = 1000;
+
+    private final McpMapping mapping;
+    private final MappingProvider provider;
+    private final File indexFile;
+
+    MappingWatcher(McpMapping mapping, MappingProvider provider, File indexFile) {
+        this.mapping = mapping;
+        this.provider = provider;
+        this.indexFile = indexFile;
+    }
+
+    @Override
+    public void run() {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Set<Path> files = new HashSet<>();
+            for (File file : provider.getFiles()) {
+                Path path = file.getAbsoluteFile().toPath();
+                files.add(path);
+                path.getParent().register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                while (key != null) {
+                    changed |= isChanged(key, files);
+                    key.reset();
+                    // Wait for writes to settle, so a file isn't read half-written
+                    key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Stopped watching the mappings for changes: " + e.getMessage());
+        }
+    }
+
+    private static boolean isChanged(WatchKey key, Set<Path> files) {
+        Path dir = (Path) key.watchable();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || files.contains(dir.resolve((Path) event.context()))) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void reload() {
+        long start = System.nanoTime();
+        try {
+            mapping.load(provider, indexFile);
+            System.err.println("Reloaded mappings in " +
+                    (System.nanoTime() - start) / 1000000 + "ms.");
+        } catch (IOException e) {
+            System.err.println("Failed to reload the mappings; keeping the old ones: " +
+                    e.getMessage());
+        }
+    }
+
+}
@@ -19,98 +19,134 @@
 package com.sk89q.warmroast;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.commons.io.FileUtils;
-
-import au.com.bytecode.opencsv.CSVReader;
 
+/**
+ * Maps obfuscated class and method names to readable ones.
+ *
+ * <p>The mappings themselves are an immutable {@link MappingTable} that
+ * is replaced as a whole when mappings are read, so they can be reloaded
+ * while other threads are rendering with them.</p>
+ */
 public class McpMapping {
 
-    private static final Pattern clPattern = 
-            Pattern.compile("CL: (?<obfuscated>[^ ]+) (?<actual>[^ ]+)");
-    private static final Pattern mdPattern = 
-            Pattern.compile("MD: (?<obfuscatedClass>[^ /]+)/(?<obfuscatedMethod>[^ ]+) " +
-            		"[^ ]+ (?<method>[^ ]+) [^ ]+");
-
-    private final Map<String, ClassMapping> classes = new HashMap<>();
-    private final Map<String, String> methods = new HashMap<>();
+    private volatile MappingTable table = MappingTable.EMPTY;
+    private final NameCache names = new NameCache(this);
+    private final Histogram loadTimes = Histogram.forLatency();
     
     public ClassMapping mapClass(String obfuscated) {
-        return classes.get(obfuscated);
+        MappingTable table = this.table;
+        int index = table.findClass(obfuscated);
+        return index >= 0 ? new ClassMapping(table, index) : null;
     }
 
+    /**
+     * Read mappings from MCP's files, replacing the current ones.
+     *
+     * @param joinedFile joined.srg
+     * @param methodsFile methods.csv
+     * @throws IOException on I/O error
+     */
     public void read(File joinedFile, File methodsFile) throws IOException {
-        try (FileReader r = new FileReader(methodsFile)) {
-            try (CSVReader reader = new CSVReader(r)) {
-                List<String[]> entries = reader.readAll();
-                processMethodNames(entries);
+        load(new SrgMappingProvider(joinedFile, methodsFile));
+    }
+
+    /**
+     * Read mappings from a provider, replacing the current ones.
+     *
+     * @param provider the provider
+     * @throws IOException on I/O error
+     */
+    void load(MappingProvider provider) throws IOException {
+        long start = System.nanoTime();
+        build(provider);
+        loadTimes.record(System.nanoTime() - start);
+    }
+
+    private void build(MappingProvider provider) throws IOException {
+        MappingBuilder builder = new MappingBuilder();
+        provider.read(builder);
+        setTable(builder.build());
+    }
+
+    /**
+     * Read mappings from a prebuilt index of a provider's files if it is up
+     * to date, or from the provider otherwise, after which the index is
+     * rebuilt. A failure to write the index is only reported.
+     *
+     * @param provider the provider
+     * @param indexFile the index
+     * @return true if the index was used
+     * @throws IOException on I/O error
+     * @see MappingIndex
+     */
+    boolean load(MappingProvider provider, File indexFile) throws IOException {
+        long start = System.nanoTime();
+        try {
+            MappingTable indexed = MappingIndex.load(indexFile, provider.getFiles());
+            if (indexed != null) {
+                setTable(indexed);
+                loadTimes.record(System.nanoTime() - start);
+                return true;
             }
+        } catch (IOException e) {
+            System.err.println("Ignoring the mappings index " + indexFile.getAbsolutePath() +
+                    ": " + e.getMessage());
         }
-        
-        List<String> lines = FileUtils.readLines(joinedFile, "UTF-8");
-        processClasses(lines);
-        processMethods(lines);
+
+        build(provider);
+        loadTimes.record(System.nanoTime() - start);
+        try {
+            MappingIndex.save(table, indexFile, provider.getFiles());
+        } catch (IOException e) {
+            System.err.println("Failed to write the mappings index " +
+                    indexFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return false;
     }
     
     public String mapMethodId(String id) {
-        return methods.get(id);
+        return table.findMethodId(id);
     }
     
     public String fromMethodId(String id) {
-        String method = methods.get(id);
+        String method = mapMethodId(id);
         if (method == null) {
             return id;
         }
         return method;
     }
-    
-    private void processMethodNames(List<String[]> entries) {
-        boolean first = true;
-        for (String[] entry : entries) {
-            if (entry.length < 2) {
-                continue;
-            }
-            if (first) { // Header
-                first = false;
-                continue;
-            }
-            methods.put(entry[0], entry[1]);
-        }
+
+    /**
+     * Get the display names of a frame, from a cache that is cleared
+     * whenever mappings are read.
+     *
+     * @param frame the frame
+     * @return the names
+     */
+    FrameNames getNames(Frame frame) {
+        return names.get(frame);
     }
-    
-    private void processClasses(List<String> lines) {
-        for (String line : lines) {
-            Matcher m = clPattern.matcher(line);
-            if (m.matches()) {
-                String obfuscated = m.group("obfuscated");
-                String actual = m.group("actual").replace("/", ".");
-                classes.put(obfuscated, new ClassMapping(obfuscated, actual));
-            }
-        }
+
+    /**
+     * Get how long each load of mappings took, in nanoseconds, from an
+     * index or otherwise. Writing the index afterwards is not counted.
+     *
+     * @return the histogram
+     */
+    Histogram getLoadTimes() {
+        return loadTimes;
     }
-    
-    private void processMethods(List<String> lines) {
-        for (String line : lines) {
-            Matcher m = mdPattern.matcher(line);
-            if (m.matches()) {
-                String obfuscatedClass = m.group("obfuscatedClass");
-                String obfuscatedMethod = m.group("obfuscatedMethod");
-                String method = m.group("method");
-                String methodId = method.substring(method.lastIndexOf('/') + 1);
-                ClassMapping mapping = mapClass(obfuscatedClass);
-                if (mapping != null) {
-                    mapping.addMethod(obfuscatedMethod, 
-                            fromMethodId(methodId));
-                }
-            }
-        }
+
+    MappingTable getTable() {
+        return table;
+    }
+
+    private void setTable(MappingTable table) {
+        // Cached names are checked against the table they came from, so
+        // clearing the cache only lets go of the old ones
+        this.table = table;
+        names.clear();
     }
 
 }
@@ -0,0 +1,433 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Measures the profiler itself: what sampling, aggregation, rendering and
+ * reading mappings cost, and how big the trees have grown.
+ *
+ * <p>The measurements are kept where they are made, in {@link WarmRoast},
+ * {@link Sampler} and {@link McpMapping}, except for renders, which
+ * {@link MetricsHandler} records here by path. This class writes them all
+ * out as Prometheus text or JSON, and registers them as MXBeans.</p>
+ *
+ * @see MetricsServlet
+ */
+class Metrics implements MetricsMXBean {
+
+    /** The domain of the MXBeans' names. */
+    static final String DOMAIN = "com.sk89q.warmroast";
+
+    private static final Counter[] COUNTERS = {
+            new Counter("samples_captured_total", "captured", "counter",
+                    "Samples captured.", WarmRoast::getCapturedCount),
+            new Counter("samples_aggregated_total", "aggregated", "counter",
+                    "Samples added to the trees.", WarmRoast::getAggregatedCount),
+            new Counter("samples_dropped_total", "dropped", "counter",
+                    "Samples dropped because the aggregator fell behind.", WarmRoast::getDroppedCount),
+            new Counter("samples_buffered", "buffered", "gauge",
+                    "Samples waiting for the aggregator.", WarmRoast::getBufferedCount),
+            new Counter("ticks_missed_total", "missedTicks", "counter",
+                    "Ticks skipped because a capture overran.", roast -> roast.getSampler().getMissedTicks()),
+            new Counter("tree_nodes", "treeNodes", "gauge",
+                    "Nodes in the trees of every view.", WarmRoast::getTreeSize),
+            new Counter("tree_bytes", "treeBytes", "gauge",
+                    "Estimated heap used by the trees.", WarmRoast::estimateTreeBytes),
+            new Counter("history_bytes", "historyBytes", "gauge",
+                    "Estimated heap used by the history.", WarmRoast::estimateHistoryBytes),
+    };
+
+    private static final Latency[] LATENCIES = {
+            new Latency("dump_seconds", "dump",
+                    "Time taken by each thread dump.", WarmRoast::getDumpTimes),
+            new Latency("aggregation_seconds", "aggregation",
+                    "Time taken to add each sample to the trees.", WarmRoast::getAggregationTimes),
+            new Latency("tick_lateness_seconds", "tickLateness",
+                    "How late each tick fired.", roast -> roast.getSampler().getLateness()),
+    };
+
+    private final List<WarmRoast> roasts;
+    private final McpMapping mapping;
+    private final SortedMap<String, Render> renders = new ConcurrentSkipListMap<>();
+
+    /**
+     * Create a new set of metrics.
+     *
+     * @param roasts the roasts, which may be added to later
+     * @param mapping the mappings that every roast shares
+     */
+    Metrics(List<WarmRoast> roasts, McpMapping mapping) {
+        this.roasts = roasts;
+        this.mapping = mapping;
+    }
+
+    /**
+     * Record a response to a request.
+     *
+     * @param path the path that was requested
+     * @param time how long the response took, in nanoseconds
+     * @param bytes the size of the response, as sent
+     */
+    void recordRender(String path, long time, long bytes) {
+        Render render = renders.get(path);
+        if (render == null) {
+            renders.putIfAbsent(path, new Render());
+            render = renders.get(path);
+        }
+        render.times.record(time);
+        render.sizes.record(bytes);
+    }
+
+    /**
+     * Register this and a bean for each roast with an MBean server, as
+     * <code>com.sk89q.warmroast:type=Metrics</code> and
+     * <code>com.sk89q.warmroast:type=Roast,vm=</code><i>id</i>. Roasts
+     * added afterwards are not registered.
+     *
+     * @param server the server
+     * @throws JMException if a bean can't be registered
+     */
+    void register(MBeanServer server) throws JMException {
+        server.registerMBean(new StandardMBean(this, MetricsMXBean.class, true),
+                new ObjectName(DOMAIN + ":type=Metrics"));
+        for (int i = 0; i < roasts.size(); i++) {
+            server.registerMBean(new StandardMBean(new RoastMetrics(roasts.get(i)),
+                    RoastMetricsMXBean.class, true),
+                    new ObjectName(DOMAIN + ":type=Roast,vm=" + i));
+        }
+    }
+
+    /**
+     * Write the metrics in Prometheus' text format. Durations are in
+     * seconds and sizes in bytes, and each roast is labelled with its
+     * <code>vm</code> ID and name.
+     *
+     * @param out the writer
+     * @throws IOException on I/O error
+     */
+    void writePrometheus(Writer out) throws IOException {
+        for (Counter counter : COUNTERS) {
+            writeFamily(out, counter.name, counter.type, counter.help);
+            for (int i = 0; i < roasts.size(); i++) {
+                WarmRoast roast = roasts.get(i);
+                writeSample(out, counter.name, roastLabels(i, roast), Long.toString(counter.value.applyAsLong(roast)));
+            }
+        }
+
+        writeFamily(out, "capture_overhead_ratio", "gauge", "Fraction of wall time spent capturing.");
+        for (int i = 0; i < roasts.size(); i++) {
+            WarmRoast roast = roasts.get(i);
+            writeSample(out, "capture_overhead_ratio", roastLabels(i, roast),
+                    Double.toString(roast.getSampler().getOverhead()));
+        }
+
+        writeFamily(out, "interval_seconds", "gauge", "The interval between samples, which the overhead budget tunes.");
+        for (int i = 0; i < roasts.size(); i++) {
+            WarmRoast roast = roasts.get(i);
+            writeSample(out, "interval_seconds", roastLabels(i, roast),
+                    scale(roast.getSampler().getInterval(), 9));
+        }
+
+        for (Latency latency : LATENCIES) {
+            writeFamily(out, latency.name, "histogram", latency.help);
+            for (int i = 0; i < roasts.size(); i++) {
+                WarmRoast roast = roasts.get(i);
+                writeHistogram(out, latency.name, roastLabels(i, roast), latency.histogram.apply(roast), 9);
+            }
+        }
+
+        writeFamily(out, "render_seconds", "histogram", "Time taken to respond to each request.");
+        for (Map.Entry<String, Render> entry : renders.entrySet()) {
+            writeHistogram(out, "render_seconds", pathLabel(entry.getKey()), entry.getValue().times, 9);
+        }
+        writeFamily(out, "render_bytes", "histogram", "Size of each response, as sent.");
+        for (Map.Entry<String, Render> entry : renders.entrySet()) {
+            writeHistogram(out, "render_bytes", pathLabel(entry.getKey()), entry.getValue().sizes, 0);
+        }
+
+        writeFamily(out, "mapping_load_seconds", "histogram", "Time taken to load each set of mappings.");
+        writeHistogram(out, "mapping_load_seconds", "", mapping.getLoadTimes(), 9);
+    }
+
+    private static void writeFamily(Writer out, String name, String type, String help)
+            throws IOException {
+        out.write("# HELP warmroast_" + name + " " + help + "\n");
+        out.write("# TYPE warmroast_" + name + " " + type + "\n");
+    }
+
+    private static void writeSample(Writer out, String name, String labels, String value)
+            throws IOException {
+        out.write("warmroast_");
+        out.write(name);
+        if (!labels.isEmpty()) {
+            out.write('{');
+            out.write(labels);
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(value);
+        out.write('\n');
+    }
+
+    /**
+     * Write a histogram's series.
+     *
+     * @param out the writer
+     * @param name the name of the family
+     * @param labels the labels of every series, or an empty string
+     * @param histogram the histogram
+     * @param scale the power of ten to divide values by, such as 9 for
+     *     nanoseconds in seconds
+     * @throws IOException on I/O error
+     */
+    private static void writeHistogram(Writer out, String name, String labels,
+            Histogram histogram, int scale) throws IOException {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long[] bounds = histogram.getBounds();
+        long[] counts = histogram.getCounts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < bounds.length ? scale(bounds[i], scale) : "+Inf";
+            writeSample(out, name + "_bucket", prefix + "le=\"" + le + "\"", Long.toString(cumulative));
+        }
+        writeSample(out, name + "_sum", labels, scale(histogram.getSum(), scale));
+        // Taken from the buckets, so that it matches the +Inf bucket
+        writeSample(out, name + "_count", labels, Long.toString(cumulative));
+    }
+
+    private static String scale(long value, int scale) {
+        return BigDecimal.valueOf(value).movePointLeft(scale).stripTrailingZeros().toPlainString();
+    }
+
+    private static String roastLabels(int id, WarmRoast roast) {
+        return "vm=\"" + id + "\",name=\"" + escapeLabel(roast.getName()) + "\"";
+    }
+
+    private static String pathLabel(String path) {
+        return "path=\"" + escapeLabel(path) + "\"";
+    }
+
+    static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Write the metrics as JSON:
+     *
+     * <pre>
+     * {"vms":[{"id":0,"name":"12345 net.md_5.bungee.Bootstrap","captured":1500,
+     *   "aggregated":1500,"dropped":0,"buffered":0,"missedTicks":2,"treeNodes":8123,
+     *   "treeBytes":402112,"historyBytes":0,"overhead":0.0081,"interval":100000,
+     *   "dump":{"count":1500,"sum":912000,"mean":608,"p50":1000,"p99":2500,"max":3120,
+     *    "bounds":[10,25,...],"counts":[0,0,...]},"aggregation":{...},"tickLateness":{...}}],
+     *  "renders":{"/tree":{"time":{...},"bytes":{...}}},
+     *  "mappingLoad":{...}}
+     * </pre>
+     *
+     * <p>Durations are in microseconds and sizes in bytes. Each histogram
+     * has a count per bucket, with one more count than bounds for the
+     * values above the last bound.</p>
+     *
+     * @param out the writer
+     * @throws IOException on I/O error
+     */
+    void writeJson(Writer out) throws IOException {
+        RenderBuffer buffer = new RenderBuffer();
+        out.write("{\"vms\":[");
+        for (int i = 0; i < roasts.size(); i++) {
+            WarmRoast roast = roasts.get(i);
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write("{\"id\":");
+            buffer.writeLong(out, i);
+            out.write(",\"name\":\"");
+            out.write(Node.escapeJson(roast.getName()));
+            out.write('"');
+            for (Counter counter : COUNTERS) {
+                out.write(",\"" + counter.key + "\":");
+                buffer.writeLong(out, counter.value.applyAsLong(roast));
+            }
+            out.write(",\"overhead\":");
+            out.write(Double.toString(roast.getSampler().getOverhead()));
+            out.write(",\"interval\":");
+            buffer.writeLong(out, roast.getSampler().getInterval() / 1000);
+            for (Latency latency : LATENCIES) {
+                out.write(",\"" + latency.key + "\":");
+                writeJson(out, latency.histogram.apply(roast), 1000, buffer);
+            }
+            out.write('}');
+        }
+        out.write("],\"renders\":{");
+        boolean first = true;
+        for (Map.Entry<String, Render> entry : renders.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write('"');
+            out.write(Node.escapeJson(entry.getKey()));
+            out.write("\":{\"time\":");
+            writeJson(out, entry.getValue().times, 1000, buffer);
+            out.write(",\"bytes\":");
+            writeJson(out, entry.getValue().sizes, 1, buffer);
+            out.write('}');
+        }
+        out.write("},\"mappingLoad\":");
+        writeJson(out, mapping.getLoadTimes(), 1000, buffer);
+        out.write('}');
+    }
+
+    private static void writeJson(Writer out, Histogram histogram, long divisor,
+            RenderBuffer buffer) throws IOException {
+        long[] bounds = histogram.getBounds();
+        long[] counts = histogram.getCounts();
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        out.write("{\"count\":");
+        buffer.writeLong(out, count);
+        out.write(",\"sum\":");
+        buffer.writeLong(out, histogram.getSum() / divisor);
+        out.write(",\"mean\":");
+        buffer.writeLong(out, histogram.getMean() / divisor);
+        out.write(",\"p50\":");
+        buffer.writeLong(out, histogram.getQuantile(0.5) / divisor);
+        out.write(",\"p99\":");
+        buffer.writeLong(out, histogram.getQuantile(0.99) / divisor);
+        out.write(",\"max\":");
+        buffer.writeLong(out, histogram.getMax() / divisor);
+        out.write(",\"bounds\":[");
+        for (int i = 0; i < bounds.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            buffer.writeLong(out, bounds[i] / divisor);
+        }
+        out.write("],\"counts\":[");
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            buffer.writeLong(out, counts[i]);
+        }
+        out.write("]}");
+    }
+
+    @Override
+    public long getMappingLoadCount() {
+        return mapping.getLoadTimes().getCount();
+    }
+
+    @Override
+    public double getMeanMappingLoadMillis() {
+        return toMillis(mapping.getLoadTimes().getMean());
+    }
+
+    @Override
+    public double getMaxMappingLoadMillis() {
+        return toMillis(mapping.getLoadTimes().getMax());
+    }
+
+    @Override
+    public long getRenderCount() {
+        long count = 0;
+        for (Render render : renders.values()) {
+            count += render.times.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getRenderedBytes() {
+        long bytes = 0;
+        for (Render render : renders.values()) {
+            bytes += render.sizes.getSum();
+        }
+        return bytes;
+    }
+
+    @Override
+    public double getMaxRenderMillis() {
+        long max = 0;
+        for (Render render : renders.values()) {
+            max = Math.max(max, render.times.getMax());
+        }
+        return toMillis(max);
+    }
+
+    static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static final class Render {
+        private final Histogram times = Histogram.forLatency();
+        private final Histogram sizes = Histogram.forSize();
+    }
+
+    private static final class Counter {
+        private final String name;
+        private final String key;
+        private final String type;
+        private final String help;
+        private final ToLongFunction<WarmRoast> value;
+
+        private Counter(String name, String key, String type, String help,
+                ToLongFunction<WarmRoast> value) {
+            this.name = name;
+            this.key = key;
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private static final class Latency {
+        private final String name;
+        private final String key;
+        private final String help;
+        private final Function<WarmRoast, Histogram> histogram;
+
+        private Latency(String name, String key, String help,
+                Function<WarmRoast, Histogram> histogram) {
+            this.name = name;
+            this.key = key;
+            this.help = help;
+            this.histogram = histogram;
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Times the requests its handler handles and records them, with the
+ * size of each response as sent, in {@link Metrics}.
+ */
+class MetricsHandler extends HandlerWrapper {
+
+    private final Metrics metrics;
+
+    MetricsHandler(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request,
+            HttpServletResponse response) throws IOException, ServletException {
+        long start = System.nanoTime();
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            // Requests that fall through to the static files are not counted
+            if (baseRequest.isHandled()) {
+                metrics.recordRender(target, System.nanoTime() - start,
+                        baseRequest.getResponse().getContentCount());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+/**
+ * The profiler's costs that are not tied to one roast, registered as
+ * <code>com.sk89q.warmroast:type=Metrics</code>.
+ *
+ * @see Metrics
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Get the number of times mappings have been loaded, including reloads.
+     *
+     * @return the count
+     */
+    long getMappingLoadCount();
+
+    double getMeanMappingLoadMillis();
+
+    double getMaxMappingLoadMillis();
+
+    /**
+     * Get the number of requests the server has responded to, other than
+     * for static files.
+     *
+     * @return the count
+     */
+    long getRenderCount();
+
+    /**
+     * Get the total size of those responses, as sent.
+     *
+     * @return the size, in bytes
+     */
+    long getRenderedBytes();
+
+    double getMaxRenderMillis();
+
+}
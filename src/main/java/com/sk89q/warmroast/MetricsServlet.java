@@ -0,0 +1,61 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Serves the profiler's measurements of itself, in Prometheus' text
+ * format, or as JSON with <code>format=json</code>.
+ *
+ * @see Metrics
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 4419823064412271375L;
+
+    private final Metrics metrics;
+
+    MetricsServlet(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        boolean json = "json".equals(request.getParameter("format"));
+        response.setContentType(json
+                ? "application/json; charset=utf-8"
+                : "text/plain; version=0.0.4; charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        try (Writer w = Servlets.openWriter(request, response)) {
+            if (json) {
+                metrics.writeJson(w);
+            } else {
+                metrics.writePrometheus(w);
+            }
+        }
+    }
+}
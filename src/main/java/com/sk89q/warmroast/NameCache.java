@@ -0,0 +1,77 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Arrays;
+
+/**
+ * A bounded cache of {@link FrameNames}, so that rendering a tree does not
+ * look up and escape every node's name again.
+ *
+ * <p>Entries are stored directly by frame ID, wrapping around once the
+ * cache is at its maximum size, so a lookup is an array read and two
+ * identity checks. Entries are immutable, so readers need no lock; two
+ * threads that miss at once both resolve the name and one copy wins.</p>
+ *
+ * <p>Each entry remembers the mapping table it was resolved with, and one
+ * from an older table counts as a miss. A lookup that grows the cache
+ * while it is cleared may put old entries back, but they are never
+ * returned.</p>
+ */
+class NameCache {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    static final int MAX_CAPACITY = 1 << 16;
+
+    private final McpMapping mapping;
+    private volatile FrameNames[] entries = new FrameNames[INITIAL_CAPACITY];
+
+    NameCache(McpMapping mapping) {
+        this.mapping = mapping;
+    }
+
+    FrameNames get(Frame frame) {
+        FrameNames[] entries = this.entries;
+        int id = frame.getId();
+        if (id >= entries.length && entries.length < MAX_CAPACITY) {
+            int capacity = entries.length;
+            while (capacity <= id && capacity < MAX_CAPACITY) {
+                capacity *= 2;
+            }
+            entries = Arrays.copyOf(entries, capacity);
+            this.entries = entries;
+        }
+
+        int slot = id & (entries.length - 1);
+        FrameNames names = entries[slot];
+        if (names == null || names.getFrame() != frame || names.getTable() != mapping.getTable()) {
+            names = FrameNames.resolve(frame, mapping);
+            entries[slot] = names;
+        }
+        return names;
+    }
+
+    /**
+     * Forget every entry, such as after the mapping has changed.
+     */
+    void clear() {
+        entries = new FrameNames[INITIAL_CAPACITY];
+    }
+
+}
@@ -22,27 +22,18 @@ import com.google.common.escape.Escaper;
 import com.google.common.escape.Escapers;
 import com.google.common.html.HtmlEscapers;
 
-import java.text.NumberFormat;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Locale;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 public abstract class Node implements Comparable<Node> {
     
-    private static final NumberFormat cssDec = NumberFormat.getPercentInstance(Locale.US);
     private static final Escaper htmlEscaper = HtmlEscapers.htmlEscaper();
     private static final Escaper jsonEscaper;
-    private final String name;
-    private final Map<String, StackTraceNode> children = new HashMap<>();
-    private long totalTime;
+    static final long NANOS_PER_MS = 1000000;
     
     static {
-        cssDec.setGroupingUsed(false);
-        cssDec.setMaximumFractionDigits(2);
-
         Escapers.Builder builder = Escapers.builder()
                 .addEscape('\\', "\\\\")
                 .addEscape('"', "\\\"")
@@ -61,115 +52,145 @@ public abstract class Node implements Comparable<Node> {
         jsonEscaper = builder.build();
     }
 
-    Node(String name) {
-        this.name = name;
-    }
-    
-    String getName() {
-        return name;
-    }
+    abstract String getName();
     
     protected abstract String getNameHtml(McpMapping mapping);
 
     protected abstract String getNameJson(McpMapping mapping);
 
-    private Collection<StackTraceNode> getChildren() {
-        return children.values().stream().sorted().collect(Collectors.toList());
-    }
+    /**
+     * Get the children of this node, sorted.
+     *
+     * @return the children
+     */
+    abstract Collection<? extends Node> getChildren();
 
-    private Node getChild(String className, String methodName) {
-        String name = StackTraceNode.getName(className, methodName);
-        StackTraceNode child = children.get(name);
-        if (child == null) {
-            child = new StackTraceNode(className, methodName);
-            children.put(child.getName(), child);
-        }
-        return child;
-    }
-    
-    long getTotalTime() {
-        return totalTime;
-    }
-    
-    private void log(StackTraceElement[] elements, int skip, long time) {
-        totalTime += time;
-        
-        if (elements.length - skip == 0) {
-            return;
-        }
-        
-        StackTraceElement bottom = elements[elements.length - (skip + 1)];
-        getChild(bottom.getClassName(), bottom.getMethodName())
-                .log(elements, skip + 1, time);
-    }
-    
-    void log(StackTraceElement[] elements, long time) {
-        log(elements, 0, time);
-    }
+    abstract int getChildCount();
+
+    /**
+     * Copy the children of this node, in no particular order.
+     *
+     * @param out an array with room for at least {@link #getChildCount()} nodes
+     */
+    abstract void fillChildren(Node[] out);
+
+    abstract long getTotalTime();
 
     @Override
     public int compareTo(Node o) {
         return getName().compareTo(o.getName());
     }
     
-    private void writeHtml(StringBuilder builder, McpMapping mapping, long totalTime) {
-        builder.append("<div class=\"node collapsed\">");
-        builder.append("<div class=\"name\">");
-        builder.append(getNameHtml(mapping));
-        builder.append("<span class=\"percent\">");
-        builder
-                .append(String.format("%.2f", getTotalTime() / (double) totalTime * 100))
-                .append("%");
-        builder.append("</span>");
-        builder.append("<span class=\"time\">");
-        builder.append(getTotalTime()).append("ms");
-        builder.append("</span>");
-        builder.append("<span class=\"bar\">");
-        builder.append("<span class=\"bar-inner\" style=\"width:")
-                .append(formatCssPct(getTotalTime() / (double) totalTime))
-                .append("\">");
-        builder.append("</span>");
-        builder.append("</span>");
-        builder.append("</div>");
-        builder.append("<ul class=\"children\">");
-        for (Node child : getChildren()) {
-            builder.append("<li>");
-            child.writeHtml(builder, mapping, totalTime);
-            builder.append("</li>");
+    private void writeHtml(Writer out, McpMapping mapping, long totalTime,
+            String unit, RenderBuffer buffer, int depth) throws IOException {
+        double fraction = getTotalTime() / (double) totalTime;
+        out.write("<div class=\"node collapsed\">");
+        out.write("<div class=\"name\">");
+        out.write(getNameHtml(mapping));
+        out.write("<span class=\"percent\">");
+        buffer.writeFixed2(out, fraction * 100);
+        out.write("%");
+        out.write("</span>");
+        out.write("<span class=\"time\">");
+        buffer.writeLong(out, getTotalTime() / NANOS_PER_MS);
+        out.write(unit);
+        out.write("</span>");
+        out.write("<span class=\"bar\">");
+        out.write("<span class=\"bar-inner\" style=\"width:");
+        buffer.writePercent(out, fraction);
+        out.write("\">");
+        out.write("</span>");
+        out.write("</span>");
+        out.write("</div>");
+        out.write("<ul class=\"children\">");
+        int count = getChildCount();
+        Node[] children = buffer.getChildren(this, depth);
+        for (int i = 0; i < count; i++) {
+            out.write("<li>");
+            children[i].writeHtml(out, mapping, totalTime, unit, buffer, depth + 1);
+            out.write("</li>");
+            children[i] = null;
         }
-        builder.append("</ul>");
-        builder.append("</div>");
+        out.write("</ul>");
+        out.write("</div>");
+    }
+
+    /**
+     * Write this node and its descendants as HTML.
+     *
+     * @param out the writer
+     * @param mapping the mapping to deobfuscate names with
+     * @throws IOException on I/O error
+     */
+    void writeHtml(Writer out, McpMapping mapping) throws IOException {
+        writeHtml(out, mapping, "ms");
+    }
+
+    /**
+     * Write this node and its descendants as HTML, with totals in a unit
+     * other than milliseconds.
+     *
+     * @param out the writer
+     * @param mapping the mapping to deobfuscate names with
+     * @param unit the unit of the totals once divided by a million
+     * @throws IOException on I/O error
+     * @see View#getUnit()
+     */
+    void writeHtml(Writer out, McpMapping mapping, String unit) throws IOException {
+        writeHtml(out, mapping, getTotalTime(), unit, new RenderBuffer(), 0);
     }
 
     String toHtml(McpMapping mapping) {
-        StringBuilder builder = new StringBuilder();
-        writeHtml(builder, mapping, getTotalTime());
-        return builder.toString();
+        StringWriter writer = new StringWriter();
+        try {
+            writeHtml(writer, mapping);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return writer.toString();
     }
 
-    protected void writeJson(StringBuilder builder, McpMapping mapping, long totalTime) {
-        builder.append("{");
-        builder.append("\"name\":\"");
-        builder.append(getNameJson(mapping));
-        builder.append("\",\"percent\":");
-        builder.append(formatCssPct(getTotalTime() / (double) totalTime));
-        builder.append(",\"timeMs\":");
-        builder.append(getTotalTime());
-        builder.append(",\"children\":[");
-        for (Iterator<StackTraceNode> it = getChildren().iterator(); it.hasNext(); ) {
-            StackTraceNode node = it.next();
-            node.writeJson(builder, mapping, totalTime);
-            if (it.hasNext()) {
-                builder.append(",");
+    private void writeJson(Writer out, McpMapping mapping, long totalTime,
+            RenderBuffer buffer, int depth) throws IOException {
+        out.write("{");
+        out.write("\"name\":\"");
+        out.write(getNameJson(mapping));
+        out.write("\",\"percent\":");
+        buffer.writeDecimal2(out, getTotalTime() / (double) totalTime * 100);
+        out.write(",\"timeMs\":");
+        buffer.writeLong(out, getTotalTime() / NANOS_PER_MS);
+        out.write(",\"children\":[");
+        int count = getChildCount();
+        Node[] children = buffer.getChildren(this, depth);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.write(",");
             }
+            children[i].writeJson(out, mapping, totalTime, buffer, depth + 1);
+            children[i] = null;
         }
-        builder.append("]}");
+        out.write("]}");
+    }
+
+    /**
+     * Write this node and its descendants as JSON.
+     *
+     * @param out the writer
+     * @param mapping the mapping to deobfuscate names with
+     * @throws IOException on I/O error
+     */
+    void writeJson(Writer out, McpMapping mapping) throws IOException {
+        writeJson(out, mapping, getTotalTime(), new RenderBuffer(), 0);
     }
 
     String toJson(McpMapping mapping) {
-        StringBuilder builder = new StringBuilder();
-        writeJson(builder, mapping, getTotalTime());
-        return builder.toString();
+        StringWriter writer = new StringWriter();
+        try {
+            writeJson(writer, mapping);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return writer.toString();
     }
     
     private void writeString(StringBuilder builder, int indent) {
@@ -182,7 +203,7 @@ public abstract class Node implements Comparable<Node> {
         for (Node child : getChildren()) {
             builder.append(padding).append(child.getName());
             builder.append(" ");
-            builder.append(getTotalTime()).append("ms");
+            builder.append(getTotalTime() / NANOS_PER_MS).append("ms");
             builder.append("\n");
             child.writeString(builder, indent + 1);
         }
@@ -195,10 +216,6 @@ public abstract class Node implements Comparable<Node> {
         return builder.toString();
     }
     
-    private static String formatCssPct(double pct) {
-        return cssDec.format(pct);
-    }
-    
     static String escapeHtml(String str) {
         return htmlEscaper.escape(str);
     }
@@ -0,0 +1,104 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Arrays;
+
+/**
+ * Adds up time per node of a {@link CallTree}, in an open-addressing map
+ * from node IDs to nanoseconds.
+ */
+class NodeTimes {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private long[] times;
+    private int size;
+
+    NodeTimes() {
+        keys = new int[16];
+        times = new long[16];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(int id, long time) {
+        int mask = keys.length - 1;
+        for (int i = IntMap.mix(id) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == id) {
+                times[i] += time;
+                return;
+            } else if (k == EMPTY) {
+                if ((size + 1) * 2 > keys.length) {
+                    resize(keys.length * 2);
+                    add(id, time);
+                    return;
+                }
+                keys[i] = id;
+                times[i] = time;
+                size++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add every node's time to an array indexed by node ID.
+     *
+     * @param out the array, longer than the largest ID
+     */
+    void addTo(long[] out) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                out[keys[i]] += times[i];
+            }
+        }
+    }
+
+    long estimateBytes() {
+        // Object header + two references + size, then the two arrays
+        return 24 + IntMap.arrayBytes(keys.length, 4) + IntMap.arrayBytes(times.length, 8);
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldTimes = times;
+        keys = new int[capacity];
+        times = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != EMPTY) {
+                int i = IntMap.mix(key) & mask;
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                times[i] = oldTimes[j];
+            }
+        }
+    }
+
+}
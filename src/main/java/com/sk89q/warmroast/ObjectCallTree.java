@@ -0,0 +1,145 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Arrays;
+
+/**
+ * A call tree made of {@link ObjectNode}s, each with a map of children
+ * keyed by frame ID.
+ *
+ * <p>The estimate of its size is kept up to date as nodes are added, so
+ * reading it does not walk the tree.</p>
+ */
+public class ObjectCallTree implements CallTree {
+
+    private final FrameTable frames;
+    private final RevisionCounter revisions;
+    private final ObjectNode root = new ObjectNode(0, null, null);
+    private ObjectNode[] nodes = new ObjectNode[64];
+    private int size;
+    private long bytes = ObjectNode.SHALLOW_SIZE;
+
+    public ObjectCallTree(FrameTable frames) {
+        this(frames, new RevisionCounter());
+    }
+
+    public ObjectCallTree(FrameTable frames, RevisionCounter revisions) {
+        this.frames = frames;
+        this.revisions = revisions;
+        nodes[0] = root;
+    }
+
+    @Override
+    public int log(StackTraceElement[] elements, long time) {
+        int revision = revisions.get();
+        ObjectNode node = root;
+        node.addTime(time, revision);
+        for (int i = elements.length - 1; i >= 0; i--) {
+            StackTraceElement element = elements[i];
+            Frame frame = frames.intern(element.getClassName(), element.getMethodName());
+            ObjectNode child = node.getChild(frame.getId());
+            if (child == null) {
+                child = add(node, frame);
+            }
+            child.addTime(time, revision);
+            node = child;
+        }
+        return node.getId();
+    }
+
+    @Override
+    public int log(int[] frameIds, int length, long time) {
+        int revision = revisions.get();
+        ObjectNode node = root;
+        node.addTime(time, revision);
+        for (int i = 0; i < length; i++) {
+            ObjectNode child = node.getChild(frameIds[i]);
+            if (child == null) {
+                child = add(node, frames.get(frameIds[i]));
+            }
+            child.addTime(time, revision);
+            node = child;
+        }
+        return node.getId();
+    }
+
+    @Override
+    public int addChild(int parentId, int frameId) {
+        ObjectNode parent = nodes[parentId];
+        ObjectNode child = parent.getChild(frameId);
+        if (child == null) {
+            child = add(parent, frames.get(frameId));
+        }
+        return child.getId();
+    }
+
+    @Override
+    public void addTime(int id, long time) {
+        nodes[id].addTime(time, revisions.get());
+    }
+
+    private ObjectNode add(ObjectNode parent, Frame frame) {
+        if (size + 1 == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        long childrenBytes = parent.estimateChildrenBytes();
+        ObjectNode child = parent.addChild(++size, frame);
+        nodes[size] = child;
+        bytes += ObjectNode.SHALLOW_SIZE + parent.estimateChildrenBytes() - childrenBytes;
+        return child;
+    }
+
+    @Override
+    public long getTotalTime() {
+        return root.getTotalTime();
+    }
+
+    @Override
+    public ObjectNode getRoot() {
+        return root;
+    }
+
+    @Override
+    public int getParent(int id) {
+        ObjectNode parent = nodes[id].getParent();
+        return parent != null ? parent.getId() : -1;
+    }
+
+    @Override
+    public Frame getFrame(int id) {
+        return nodes[id].getFrame();
+    }
+
+    @Override
+    public void visitChangedSince(int revision, Visitor visitor) {
+        root.visitChangedSince(revision, visitor);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long estimateBytes() {
+        return bytes + IntMap.arrayBytes(nodes.length, 4);
+    }
+
+}
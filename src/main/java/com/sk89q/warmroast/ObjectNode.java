@@ -0,0 +1,133 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A frame node in an {@link ObjectCallTree}.
+ */
+class ObjectNode extends StackTraceNode {
+
+    // Object header + frame + parent + children + totalTime + id + revision
+    static final int SHALLOW_SIZE = 40;
+
+    private final int id;
+    private final ObjectNode parent;
+    private IntMap<ObjectNode> children;
+    private long totalTime;
+    private int revision;
+
+    ObjectNode(int id, ObjectNode parent, Frame frame) {
+        super(frame);
+        this.id = id;
+        this.parent = parent;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    ObjectNode getParent() {
+        return parent;
+    }
+
+    ObjectNode getChild(int frameId) {
+        return children != null ? children.get(frameId) : null;
+    }
+
+    @Override
+    ObjectNode findChild(int frameId) {
+        return getChild(frameId);
+    }
+
+    ObjectNode addChild(int id, Frame frame) {
+        if (children == null) {
+            children = new IntMap<>();
+        }
+        ObjectNode child = new ObjectNode(id, this, frame);
+        children.put(frame.getId(), child);
+        return child;
+    }
+
+    void addTime(long time, int revision) {
+        totalTime += time;
+        this.revision = revision;
+    }
+
+    void visitChangedSince(int revision, CallTree.Visitor visitor) {
+        if (children == null) {
+            return;
+        }
+        for (int i = 0; i < children.capacity(); i++) {
+            ObjectNode child = children.valueAt(i);
+            if (child != null && child.revision > revision) {
+                visitor.visit(child.id, id, child.getFrame(), child.totalTime);
+                child.visitChangedSince(revision, visitor);
+            }
+        }
+    }
+
+    @Override
+    long getTotalTime() {
+        return totalTime;
+    }
+
+    @Override
+    Collection<ObjectNode> getChildren() {
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        List<ObjectNode> list = new ArrayList<>(children.size());
+        children.values(list);
+        Collections.sort(list);
+        return list;
+    }
+
+    @Override
+    int getChildCount() {
+        return children != null ? children.size() : 0;
+    }
+
+    @Override
+    void fillChildren(Node[] out) {
+        if (children != null) {
+            int n = 0;
+            for (int i = 0; i < children.capacity(); i++) {
+                ObjectNode child = children.valueAt(i);
+                if (child != null) {
+                    out[n++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimate the heap used by the map of children, but not the children.
+     *
+     * @return the estimated size in bytes, or 0 if there is no map
+     */
+    long estimateChildrenBytes() {
+        return children != null ? children.estimateBytes() : 0;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads ProGuard mapping files, which is the format of Mojang's official
+ * mappings.
+ *
+ * <p>These map readable names to obfuscated ones, so they are read in
+ * reverse. Inlined and overloaded methods can give one obfuscated method
+ * several names, which are shown as multiple matches.</p>
+ */
+class ProGuardMappingProvider implements MappingProvider {
+
+    private static final String ARROW = " -> ";
+
+    private final File file;
+
+    ProGuardMappingProvider(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public List<File> getFiles() {
+        return Collections.singletonList(file);
+    }
+
+    @Override
+    public void read(MappingBuilder builder) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            String owner = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int arrow = line.lastIndexOf(ARROW);
+                if (arrow < 0) {
+                    continue;
+                }
+
+                if (line.charAt(0) != ' ') {
+                    // com.example.Readable -> a:
+                    if (line.endsWith(":")) {
+                        owner = line.substring(arrow + ARROW.length(), line.length() - 1);
+                        builder.addClass(owner, line.substring(0, arrow));
+                    }
+                } else if (owner != null) {
+                    // [start:end:]type name(arguments)[:line[:line]] -> a
+                    int paren = line.indexOf('(');
+                    if (paren < 0 || paren > arrow) {
+                        continue; // A field
+                    }
+                    int space = line.lastIndexOf(' ', paren);
+                    String name = line.substring(space + 1, paren);
+                    builder.addMethod(owner, line.substring(arrow + ARROW.length()), name);
+                }
+            }
+        }
+    }
+
+}
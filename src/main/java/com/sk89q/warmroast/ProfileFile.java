@@ -0,0 +1,357 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Saves and loads profiles in WarmRoast's binary format.
+ *
+ * <p>A file starts with a fixed header: the magic number, a format version
+ * and a flags byte. The rest, deflated if {@link #FLAG_COMPRESSED} is set,
+ * is made of unsigned varints (see {@link Varints}):</p>
+ *
+ * <ul>
+ *     <li>the time the file was written, in ms since the epoch, the number
+ *     of samples taken and the sampling interval in nanoseconds</li>
+ *     <li>a string table: a count, then each string as a byte length and
+ *     UTF-8 bytes</li>
+ *     <li>a frame table: a count, then each frame as the string indexes of
+ *     its class and method names</li>
+ *     <li>a count of threads, then each thread's name (inline, like a
+ *     string table entry) and root node</li>
+ * </ul>
+ *
+ * <p>A node is its self time in nanoseconds, a count of children, then
+ * each child as a frame index followed by the child node.</p>
+ */
+final class ProfileFile {
+
+    static final int MAGIC = 0x57525046; // "WRPF"
+    static final int VERSION = 1;
+    static final int FLAG_COMPRESSED = 1;
+    // Deflate never shrinks data by more than this, which bounds how much a
+    // compressed file can hold
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private ProfileFile() {
+    }
+
+    /**
+     * Save the roast's trees to a file. The file is written next to the
+     * target and then moved over it, so readers never see a partial file.
+     *
+     * <p>The trees are copied with the roast locked, and only then written,
+     * so sampling is not held up by compression or the disk.</p>
+     *
+     * @param roast the roast, which must not be locked by the caller
+     * @param file the file
+     * @param compress whether to deflate the file
+     * @throws IOException on I/O error
+     */
+    static void save(WarmRoast roast, File file, boolean compress) throws IOException {
+        List<ThreadNode> threads;
+        long sampleCount;
+        synchronized (roast) {
+            threads = snapshot(roast.getFrames(), roast.getData().values());
+            sampleCount = roast.getCapturedCount();
+        }
+        save(file, roast.getFrames(), threads, sampleCount, roast.getInterval(), compress);
+    }
+
+    /**
+     * Copy threads' trees, so that they can be saved without holding the
+     * lock that guards them.
+     *
+     * @param frames the frame table
+     * @param threads the threads' trees, which must not change while they are copied
+     * @return the copies
+     */
+    static List<ThreadNode> snapshot(FrameTable frames, Collection<ThreadNode> threads) {
+        List<ThreadNode> copies = new ArrayList<>(threads.size());
+        for (ThreadNode thread : threads) {
+            copies.add(new ThreadNode(thread.getName(),
+                    CompactCallTree.copyOf(thread.getTree(), frames)));
+        }
+        return copies;
+    }
+
+    /**
+     * Save trees to a file, as {@link #save(WarmRoast, File, boolean)} does.
+     *
+     * @param file the file
+     * @param frames the frame table
+     * @param threads the threads' trees, which must not change while saving
+     * @param sampleCount the number of samples taken
+     * @param interval the sampling interval, in nanoseconds
+     * @param compress whether to deflate the file
+     * @throws IOException on I/O error
+     */
+    static void save(File file, FrameTable frames, Collection<ThreadNode> threads,
+            long sampleCount, long interval, boolean compress) throws IOException {
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        boolean moved = false;
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 65536)) {
+                write(out, frames, threads, sampleCount, interval, compress);
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                // Don't leave a partial file behind when the disk fills up
+                temp.delete();
+            }
+        }
+    }
+
+    static void write(OutputStream out, FrameTable frames, Collection<ThreadNode> threads,
+            long sampleCount, long interval, boolean compress) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compress ? FLAG_COMPRESSED : 0);
+        header.flush();
+
+        DeflaterOutputStream deflater = null;
+        if (compress) {
+            deflater = new DeflaterOutputStream(out, true);
+            out = deflater;
+        }
+        DataOutputStream data = new DataOutputStream(out);
+
+        Varints.writeVarLong(data, System.currentTimeMillis());
+        Varints.writeVarLong(data, sampleCount);
+        Varints.writeVarLong(data, interval);
+
+        int frameCount = frames.size();
+        Map<String, Integer> strings = new HashMap<>();
+        int[] frameStrings = new int[frameCount * 2];
+        for (int i = 0; i < frameCount; i++) {
+            Frame frame = frames.get(i);
+            frameStrings[i * 2] = intern(strings, frame.getClassName());
+            frameStrings[i * 2 + 1] = intern(strings, frame.getMethodName());
+        }
+        String[] table = new String[strings.size()];
+        for (Map.Entry<String, Integer> entry : strings.entrySet()) {
+            table[entry.getValue()] = entry.getKey();
+        }
+        Varints.writeVarInt(data, table.length);
+        for (String s : table) {
+            writeString(data, s);
+        }
+        Varints.writeVarInt(data, frameCount);
+        for (int index : frameStrings) {
+            Varints.writeVarInt(data, index);
+        }
+
+        Varints.writeVarInt(data, threads.size());
+        RenderBuffer buffer = new RenderBuffer();
+        for (ThreadNode thread : threads) {
+            writeString(data, thread.getName());
+            writeNode(data, thread, buffer, 0);
+        }
+
+        data.flush();
+        if (deflater != null) {
+            deflater.finish();
+        }
+        out.flush();
+    }
+
+    private static void writeNode(DataOutput out, Node node, RenderBuffer buffer, int depth)
+            throws IOException {
+        int count = node.getChildCount();
+        Node[] children = buffer.getChildren(node, depth);
+        long childTime = 0;
+        for (int i = 0; i < count; i++) {
+            childTime += children[i].getTotalTime();
+        }
+        Varints.writeVarLong(out, node.getTotalTime() - childTime);
+        Varints.writeVarInt(out, count);
+        for (int i = 0; i < count; i++) {
+            StackTraceNode child = (StackTraceNode) children[i];
+            children[i] = null;
+            Varints.writeVarInt(out, child.getFrame().getId());
+            writeNode(out, child, buffer, depth + 1);
+        }
+    }
+
+    /**
+     * Load a saved profile into a roast that has not sampled anything.
+     *
+     * <p>The file is memory-mapped rather than read through a stream
+     * buffer, so large profiles are decoded straight from the page
+     * cache.</p>
+     *
+     * @param roast the roast
+     * @param file the file
+     * @throws IOException on I/O error or if the file is not a profile
+     */
+    static void load(WarmRoast roast, File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 6 || buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a WarmRoast profile");
+        }
+        int version = buffer.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IOException(file + " has unsupported format version " + version);
+        }
+        int flags = buffer.get() & 0xFF;
+
+        InputStream in = new ByteBufferInputStream(buffer);
+        // Every count and length takes at least a byte of data to fill, so
+        // none can be larger than what is left of the file
+        int limit = buffer.remaining();
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            in = new BufferedInputStream(new InflaterInputStream(in), 65536);
+            limit = (int) Math.min(Integer.MAX_VALUE, (long) limit * MAX_DEFLATE_RATIO);
+        }
+        try {
+            read(new DataInputStream(in), roast, limit);
+        } catch (IOException e) {
+            String reason = e instanceof EOFException ? "it ends early" : e.getMessage();
+            throw new IOException(file + " is corrupt: " + reason, e);
+        }
+    }
+
+    private static void read(DataInput in, WarmRoast roast, int limit) throws IOException {
+        Varints.readVarLong(in); // Time written
+        roast.recordCaptured(Varints.readVarLong(in));
+        Varints.readVarLong(in); // Interval
+
+        String[] strings = new String[readCount(in, limit, "string count")];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in, limit);
+        }
+
+        FrameTable frames = roast.getFrames();
+        int[] frameIds = new int[readCount(in, limit, "frame count")];
+        for (int i = 0; i < frameIds.length; i++) {
+            String className = strings[readIndex(in, strings.length, "string index")];
+            String methodName = strings[readIndex(in, strings.length, "string index")];
+            frameIds[i] = frames.intern(className, methodName).getId();
+        }
+
+        synchronized (roast) {
+            roast.getRevisions().increment();
+            int threadCount = readCount(in, limit, "thread count");
+            for (int i = 0; i < threadCount; i++) {
+                ThreadNode thread = roast.getNode(readString(in, limit));
+                readNode(in, thread.getTree(), 0, frameIds, limit);
+            }
+        }
+    }
+
+    /**
+     * Read a count, which must be from 0 to a limit, so that a corrupt file
+     * fails to load instead of allocating huge arrays.
+     */
+    private static int readCount(DataInput in, int limit, String what) throws IOException {
+        int value = Varints.readVarInt(in);
+        if (value < 0 || value > limit) {
+            throw new IOException("Bad " + what + " " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Read an index into an array of the given length, so that a corrupt
+     * file fails to load instead of reading outside it.
+     */
+    private static int readIndex(DataInput in, int length, String what) throws IOException {
+        int value = Varints.readVarInt(in);
+        if (value < 0 || value >= length) {
+            throw new IOException("Bad " + what + " " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Read a node and its children into a tree. Children are added under
+     * the node directly, and each node's total is added once its children
+     * have been read, so every node is visited once.
+     *
+     * @return the node's total time, in nanoseconds
+     */
+    private static long readNode(DataInput in, CallTree tree, int node, int[] frameIds,
+            int limit) throws IOException {
+        long total = Varints.readVarLong(in);
+        if (total < 0) {
+            throw new IOException("Bad self time " + total);
+        }
+        int count = readCount(in, limit, "child count");
+        for (int i = 0; i < count; i++) {
+            int index = readIndex(in, frameIds.length, "frame index");
+            total += readNode(in, tree, tree.addChild(node, frameIds[index]), frameIds, limit);
+        }
+        tree.addTime(node, total);
+        return total;
+    }
+
+    private static int intern(Map<String, Integer> strings, String s) {
+        Integer index = strings.get(s);
+        if (index == null) {
+            index = strings.size();
+            strings.put(s, index);
+        }
+        return index;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        Varints.writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in, int limit) throws IOException {
+        byte[] bytes = new byte[readCount(in, limit, "string length")];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+/**
+ * Tunes the interval between samples so that capturing takes at most a
+ * budgeted fraction of wall time.
+ *
+ * <p>A capture's cost grows with the number of threads dumped, so the
+ * controller tracks the cost per thread and predicts the next capture from
+ * the latest thread count. The interval is then the predicted cost divided
+ * by the budget. A capture that costs more per thread is taken as the new
+ * cost at once, so the controller backs off on the next sample. Cheaper
+ * captures only pull a moving average down, and the interval shrinks by a
+ * bounded step at a time, so one quiet sample can't bring back a rate the
+ * target can't afford.</p>
+ *
+ * <p>Changing the interval does not bias the results, because
+ * {@link Sampler} weights each sample by the time that actually
+ * passed.</p>
+ *
+ * <p>This class also runs in the target VM, in {@link SamplingAgent}.</p>
+ */
+class RateController {
+
+    /** The longest interval, a second, unless the shortest is longer. */
+    static final long MAX_INTERVAL = 1000000000L;
+
+    /** The weight of a cheaper capture in the moving average. */
+    private static final double SMOOTHING = 0.2;
+
+    /** The least of the interval kept in one step, so it shrinks by at most a fifth. */
+    private static final double MIN_SHRINK_FACTOR = 0.8;
+
+    private final double budget;
+    private final long minInterval;
+    private final long maxInterval;
+    private double costPerThread = -1;
+    private volatile long interval;
+
+    /**
+     * Create a new controller.
+     *
+     * @param budget the fraction of wall time to spend capturing, such as 0.01
+     * @param minInterval the shortest interval, in nanoseconds, which is also
+     *     the one to start at
+     */
+    RateController(double budget, long minInterval) {
+        if (budget <= 0 || budget >= 1) {
+            throw new IllegalArgumentException("The budget must be between 0 and 1");
+        }
+        if (minInterval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.budget = budget;
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, MAX_INTERVAL);
+        this.interval = minInterval;
+    }
+
+    double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Get the interval the controller last picked.
+     *
+     * @return the interval, in nanoseconds
+     */
+    long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Account for a capture and pick the interval to sample at next. This
+     * is called from one thread at a time.
+     *
+     * @param cost how long the capture took, in nanoseconds
+     * @param threads the number of threads it captured
+     * @return the interval, in nanoseconds
+     */
+    long update(long cost, int threads) {
+        int count = Math.max(1, threads);
+        double perThread = cost / (double) count;
+        if (perThread >= costPerThread) {
+            costPerThread = perThread;
+        } else {
+            costPerThread += SMOOTHING * (perThread - costPerThread);
+        }
+
+        long current = interval;
+        double target = costPerThread * count / budget;
+        long next;
+        if (target >= current) {
+            next = (long) Math.min(target, maxInterval);
+        } else {
+            next = (long) Math.max(target, current * MIN_SHRINK_FACTOR);
+        }
+        next = Math.max(minInterval, Math.min(maxInterval, next));
+        interval = next;
+        return next;
+    }
+
+}
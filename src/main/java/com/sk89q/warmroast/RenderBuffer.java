@@ -0,0 +1,138 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Scratch space reused for the whole of one render, so that writing a tree
+ * allocates neither a collection per node nor a string per number.
+ */
+final class RenderBuffer {
+
+    private Node[][] levels = new Node[32][];
+    private final char[] digits = new char[20];
+
+    /**
+     * Get a node's children, sorted, in an array owned by this buffer.
+     *
+     * <p>The array is only valid until the next call for the same depth,
+     * and only the first {@link Node#getChildCount()} entries are used.</p>
+     *
+     * @param node the node
+     * @param depth the depth of the node
+     * @return the children
+     */
+    Node[] getChildren(Node node, int depth) {
+        if (depth >= levels.length) {
+            levels = Arrays.copyOf(levels, Math.max(depth + 1, levels.length * 2));
+        }
+        int count = node.getChildCount();
+        Node[] children = levels[depth];
+        if (children == null || children.length < count) {
+            children = new Node[Math.max(count, 8)];
+            levels[depth] = children;
+        }
+        node.fillChildren(children);
+        Arrays.sort(children, 0, count);
+        return children;
+    }
+
+    void writeLong(Writer out, long value) throws IOException {
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        out.write(digits, i, digits.length - i);
+    }
+
+    /**
+     * Write a number with exactly two decimal places, rounding half up.
+     *
+     * @param out the writer
+     * @param value the number
+     * @throws IOException on I/O error
+     */
+    void writeFixed2(Writer out, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.write("0.00");
+            return;
+        }
+        long v = Math.round(value * 100);
+        if (v < 0) {
+            out.write('-');
+            v = -v;
+        }
+        writeLong(out, v / 100);
+        int fraction = (int) (v % 100);
+        out.write('.');
+        out.write('0' + fraction / 10);
+        out.write('0' + fraction % 10);
+    }
+
+    /**
+     * Write a fraction as a percentage with up to two decimal places,
+     * rounding half even, such as "12.5%".
+     *
+     * @param out the writer
+     * @param fraction the fraction, where 1 is 100%
+     * @throws IOException on I/O error
+     */
+    void writePercent(Writer out, double fraction) throws IOException {
+        writeDecimal2(out, fraction * 100);
+        out.write('%');
+    }
+
+    /**
+     * Write a number with up to two decimal places, rounding half even and
+     * dropping trailing zeros.
+     *
+     * @param out the writer
+     * @param value the number
+     * @throws IOException on I/O error
+     */
+    void writeDecimal2(Writer out, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.write('0');
+            return;
+        }
+        long v = (long) Math.rint(value * 100);
+        if (v < 0) {
+            out.write('-');
+            v = -v;
+        }
+        writeLong(out, v / 100);
+        int fraction = (int) (v % 100);
+        if (fraction != 0) {
+            out.write('.');
+            out.write('0' + fraction / 10);
+            if (fraction % 10 != 0) {
+                out.write('0' + fraction % 10);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+/**
+ * Counts changes to a set of call trees, so that a reader can ask for only
+ * the nodes that changed after a revision it has already seen.
+ *
+ * <p>Not thread-safe; it is guarded by the same lock as the trees.</p>
+ */
+public class RevisionCounter {
+
+    private int current;
+
+    /**
+     * Get the revision that changes are currently stamped with.
+     *
+     * @return the revision
+     */
+    public int get() {
+        return current;
+    }
+
+    /**
+     * Start a new revision.
+     *
+     * @return the new revision
+     */
+    public int increment() {
+        return ++current;
+    }
+
+}
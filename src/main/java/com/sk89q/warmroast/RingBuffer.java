@@ -0,0 +1,97 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free ring buffer for exactly one producer thread and
+ * one consumer thread.
+ *
+ * <p>When the buffer is full, {@link #offer(Object)} fails immediately and
+ * the item is counted as dropped, so the producer never waits.</p>
+ */
+class RingBuffer<T> {
+
+    private final Object[] items;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        items = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Add an item. Must only be called from the producer thread.
+     *
+     * @param item the item
+     * @return false if the buffer was full and the item was dropped
+     */
+    boolean offer(T item) {
+        long t = tail.get();
+        if (t - head.get() == items.length) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        items[(int) t & mask] = item;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Remove the oldest item. Must only be called from the consumer thread.
+     *
+     * @return the item, or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int i = (int) h & mask;
+        T item = (T) items[i];
+        items[i] = null;
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    int capacity() {
+        return items.length;
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+}
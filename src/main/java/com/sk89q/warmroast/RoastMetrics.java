@@ -0,0 +1,125 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+import static com.sk89q.warmroast.Metrics.toMillis;
+
+/**
+ * Exposes a roast's measurements of itself as a {@link RoastMetricsMXBean}.
+ */
+class RoastMetrics implements RoastMetricsMXBean {
+
+    private final WarmRoast roast;
+
+    RoastMetrics(WarmRoast roast) {
+        this.roast = roast;
+    }
+
+    @Override
+    public String getName() {
+        return roast.getName();
+    }
+
+    @Override
+    public long getCapturedSamples() {
+        return roast.getCapturedCount();
+    }
+
+    @Override
+    public long getAggregatedSamples() {
+        return roast.getAggregatedCount();
+    }
+
+    @Override
+    public long getDroppedSamples() {
+        return roast.getDroppedCount();
+    }
+
+    @Override
+    public long getBufferedSamples() {
+        return roast.getBufferedCount();
+    }
+
+    @Override
+    public long getMissedTicks() {
+        return roast.getSampler().getMissedTicks();
+    }
+
+    @Override
+    public double getMeanTickLatenessMillis() {
+        return toMillis(roast.getSampler().getLateness().getMean());
+    }
+
+    @Override
+    public double getMeanDumpMillis() {
+        return toMillis(roast.getDumpTimes().getMean());
+    }
+
+    @Override
+    public double getP99DumpMillis() {
+        return toMillis(roast.getDumpTimes().getQuantile(0.99));
+    }
+
+    @Override
+    public double getMaxDumpMillis() {
+        return toMillis(roast.getDumpTimes().getMax());
+    }
+
+    @Override
+    public double getMeanAggregationMillis() {
+        return toMillis(roast.getAggregationTimes().getMean());
+    }
+
+    @Override
+    public double getP99AggregationMillis() {
+        return toMillis(roast.getAggregationTimes().getQuantile(0.99));
+    }
+
+    @Override
+    public double getMaxAggregationMillis() {
+        return toMillis(roast.getAggregationTimes().getMax());
+    }
+
+    @Override
+    public double getCaptureOverhead() {
+        return roast.getSampler().getOverhead();
+    }
+
+    @Override
+    public double getIntervalMillis() {
+        return toMillis(roast.getSampler().getInterval());
+    }
+
+    @Override
+    public long getTreeNodes() {
+        return roast.getTreeSize();
+    }
+
+    @Override
+    public long getTreeBytes() {
+        return roast.estimateTreeBytes();
+    }
+
+    @Override
+    public long getHistoryBytes() {
+        return roast.estimateHistoryBytes();
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+/**
+ * What sampling one VM costs, registered as
+ * <code>com.sk89q.warmroast:type=Roast,vm=</code><i>id</i>, where the ID
+ * is the one the server's <code>vm</code> parameters take.
+ *
+ * @see Metrics
+ */
+public interface RoastMetricsMXBean {
+
+    String getName();
+
+    long getCapturedSamples();
+
+    long getAggregatedSamples();
+
+    long getDroppedSamples();
+
+    long getBufferedSamples();
+
+    long getMissedTicks();
+
+    double getMeanTickLatenessMillis();
+
+    double getMeanDumpMillis();
+
+    double getP99DumpMillis();
+
+    double getMaxDumpMillis();
+
+    double getMeanAggregationMillis();
+
+    double getP99AggregationMillis();
+
+    double getMaxAggregationMillis();
+
+    /**
+     * Get the fraction of wall time spent capturing samples.
+     *
+     * @return the fraction, between 0 and 1
+     */
+    double getCaptureOverhead();
+
+    /**
+     * Get the interval between samples, which changes if there is an
+     * overhead budget.
+     *
+     * @return the interval, in milliseconds
+     */
+    double getIntervalMillis();
+
+    long getTreeNodes();
+
+    /**
+     * Estimate the heap used by the trees of every view.
+     *
+     * @return the estimate, in bytes
+     */
+    long getTreeBytes();
+
+    /**
+     * Estimate the heap used by the history of every view.
+     *
+     * @return the estimate, in bytes
+     */
+    long getHistoryBytes();
+
+}
@@ -20,6 +20,9 @@ package com.sk89q.warmroast;
 
 import com.beust.jcommander.Parameter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class RoastOptions {
     
     @Parameter(names = { "-h", "--help" }, help = true)
@@ -31,21 +34,117 @@ public class RoastOptions {
     @Parameter(names = { "-p", "--port" }, description = "The port to bind the HTTP server to")
     public Integer port = 23000;
 
-    @Parameter(names = { "--pid" }, description = "The PID of the VM to attach to")
-    public Integer pid;
+    @Parameter(names = { "--pid" }, description = "The PID of a VM to attach to (may be given more than once)")
+    public List<Integer> pids = new ArrayList<>();
+
+    @Parameter(names = { "--name" }, description = "The name of a VM to attach to (may be given more than once)")
+    public List<String> vmNames = new ArrayList<>();
+
+    @Parameter(names = { "-t", "--thread" }, description = "The name of a thread to sample (may be given more than once)")
+    public List<String> threadNames = new ArrayList<>();
+
+    @Parameter(names = { "--thread-regex" }, description = "Sample the threads whose names match this regular expression")
+    public String threadRegex;
+
+    @Parameter(names = { "--thread-id" }, description = "The ID of a thread to sample (may be given more than once)")
+    public List<Long> threadIds = new ArrayList<>();
 
-    @Parameter(names = { "--name" }, description = "The name of the VM to attach to")
-    public String vmName;
+    @Parameter(names = { "--thread-group" }, description = "Sample the threads in this thread group (needs --agent)")
+    public String threadGroup;
 
-    @Parameter(names = { "-t", "--thread" }, description = "Optionally specify a thread to log only")
-    public String threadName;
+    @Parameter(names = { "--top-cpu" }, description = "Of the threads otherwise sampled, keep only this many that used the most CPU time since the last refresh")
+    public Integer topCpu = 0;
 
-    @Parameter(names = { "-m", "--mappings" }, description = "A directory with joined.srg and methods.csv")
-    public String mappingsDir;
+    @Parameter(names = { "--thread-refresh" }, description = "The number of seconds between refreshes of the threads to sample (may be fractional)")
+    public Double threadRefresh = 2.0;
 
-    @Parameter(names = { "--interval" }, description = "The sample rate, in milliseconds")
-    public Integer interval = 100;
+    @Parameter(names = { "-m", "--mappings" }, description = "A directory with joined.srg (or joined.tsrg) and methods.csv, or a TSRG, Tiny v2 or ProGuard mappings file")
+    public String mappingsPath;
+
+    @Parameter(names = { "--interval" }, description = "The sample rate, in milliseconds (may be fractional)")
+    public Double interval = 100.0;
+
+    @Parameter(names = { "--max-overhead" }, description = "Tune the interval so that at most this percentage of time is spent capturing samples; --interval becomes the shortest interval")
+    public Double maxOverhead;
     
+    @Parameter(names = { "--max-depth" }, description = "The number of innermost frames of each stack to capture, or 0 for all")
+    public Integer maxDepth = 0;
+
+    @Parameter(names = { "--fold" }, description = "A package, such as java.*, whose calls to itself are folded into the call into it (may be given more than once)")
+    public List<String> foldPackages = new ArrayList<>();
+
+    @Parameter(names = { "--fold-recursion" }, description = "Fold recursive calls into the first call")
+    public boolean foldRecursion;
+
+    @Parameter(names = { "--compact" }, description = "Store the call tree in primitive arrays to save memory")
+    public boolean compact;
+
+    @Parameter(names = { "--collapse-idle" }, description = "Log threads that are idle in a known waiting frame, such as Unsafe.park, as only that frame")
+    public boolean collapseIdle;
+
+    @Parameter(names = { "--cpu" }, description = "Also weight samples by thread CPU time and split them by thread state, for the cpu, runnable and waiting views")
+    public boolean cpu;
+
+    @Parameter(names = { "--alloc" }, description = "Also weight samples by the bytes their thread allocated, for the alloc view")
+    public boolean allocation;
+
+    @Parameter(names = { "--contention" }, description = "Also dump locked monitors and synchronizers and record which locks block which threads, for the contention view")
+    public boolean contention;
+
+    @Parameter(names = { "--agent" }, description = "Sample inside the target VM with an agent instead of over JMX")
+    public boolean agent;
+
+    @Parameter(names = { "--sampler-threads" }, description = "The number of threads that take samples, shared by all VMs")
+    public Integer samplerThreads = 1;
+
+    @Parameter(names = { "--buffer" }, description = "The number of samples that can wait to be added to the tree")
+    public Integer bufferSize = 256;
+
+    @Parameter(names = { "--epoch" }, description = "The length of each epoch of recent history, in seconds")
+    public Integer epoch = 10;
+
+    @Parameter(names = { "--history" }, description = "The number of seconds of recent samples to keep by epoch, for viewing windows of time, or 0 to keep none")
+    public Integer history = 600;
+
+    @Parameter(names = { "--trigger" }, description = "Capture at a higher rate and save a separate profile when cpu:<thread>:<percent>, gc:<ms> or frame:<class>.<method>:<ms> is exceeded (may be given more than once)")
+    public List<String> triggers = new ArrayList<>();
+
+    @Parameter(names = { "--trigger-interval" }, description = "The sample rate once a trigger fires, in milliseconds (may be fractional)")
+    public Double triggerInterval = 10.0;
+
+    @Parameter(names = { "--trigger-duration" }, description = "The number of seconds to sample at that rate once a trigger fires")
+    public Integer triggerDuration = 10;
+
+    @Parameter(names = { "--trigger-before" }, description = "The number of seconds of samples from before a trigger fires to save with it")
+    public Integer triggerBefore = 10;
+
+    @Parameter(names = { "--trigger-cooldown" }, description = "The number of seconds after a capture before triggers can fire again (default: --trigger-duration)")
+    public Integer triggerCooldown;
+
+    @Parameter(names = { "--trigger-keep" }, description = "The number of captures to keep in memory and show on the index page; older ones are only kept in --trigger-dir")
+    public Integer triggerKeep = 10;
+
+    @Parameter(names = { "--trigger-dir" }, description = "The directory to save the profiles captured by triggers to")
+    public String triggerDir = "triggers";
+
+    @Parameter(names = { "--folded" }, description = "A file to write folded stacks to when sampling stops or WarmRoast exits")
+    public String foldedFile;
+
+    @Parameter(names = { "-o", "--output" }, description = "A file to save the profile to periodically, when sampling stops and when WarmRoast exits")
+    public String outputFile;
+
+    @Parameter(names = { "--output-interval" }, description = "The number of seconds between saves of the profile, or 0 to save only at the end")
+    public Integer outputInterval = 60;
+
+    @Parameter(names = { "--compress" }, description = "Compress the saved profile")
+    public boolean compress;
+
+    @Parameter(names = { "--open" }, description = "A saved profile to view instead of attaching to a VM (may be given more than once)")
+    public List<String> openFiles = new ArrayList<>();
+
+    @Parameter(names = { "--baseline" }, description = "A saved profile to serve next to the VMs being sampled, to compare them against (may be given more than once)")
+    public List<String> baselineFiles = new ArrayList<>();
+
     @Parameter(names = { "--timeout" }, description = "The number of seconds before ceasing sampling (optional)")
     public Integer timeout;
 
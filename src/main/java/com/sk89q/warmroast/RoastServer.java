@@ -0,0 +1,91 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.handler.ResourceHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import javax.management.JMException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Serves the results of one or more roasts over HTTP. Requests pick a
+ * roast with the <code>vm</code> parameter.
+ *
+ * @see Servlets#findRoast
+ */
+class RoastServer {
+
+    private final List<WarmRoast> roasts;
+
+    RoastServer(List<WarmRoast> roasts) {
+        this.roasts = roasts;
+    }
+
+    /**
+     * Start the server and wait for it to stop.
+     *
+     * @param address the address to bind to
+     * @throws Exception on error
+     */
+    void serve(InetSocketAddress address) throws Exception {
+        Server server = new Server(address);
+        // Every roast shares the mappings
+        Metrics metrics = new Metrics(roasts, roasts.get(0).getMapping());
+
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        context.addServlet(new ServletHolder(new DataViewServlet(roasts)), "/stack");
+        context.addServlet(new ServletHolder(new DeltaServlet(roasts)), "/delta");
+        context.addServlet(new ServletHolder(new TreeServlet(roasts)), "/tree");
+        context.addServlet(new ServletHolder(new FoldedStackServlet(roasts)), "/folded");
+        context.addServlet(new ServletHolder(new VmListServlet(roasts)), "/vms");
+        context.addServlet(new ServletHolder(new ContentionServlet(roasts)), "/contention");
+        context.addServlet(new ServletHolder(new DiffServlet(roasts)), "/diff");
+        context.addServlet(new ServletHolder(new MetricsServlet(metrics)), "/metrics");
+        MetricsHandler timed = new MetricsHandler(metrics);
+        timed.setHandler(context);
+
+        ResourceHandler resources = new ResourceHandler();
+        String filesDir = WarmRoast.class.getResource("/www").toExternalForm();
+        resources.setResourceBase(filesDir);
+        resources.setDirectoriesListed(true);
+        resources.setWelcomeFiles(new String[]{ "index.html" });
+
+        HandlerList handlers = new HandlerList();
+        handlers.addHandler(timed);
+        handlers.addHandler(resources);
+        server.setHandler(handlers);
+
+        try {
+            metrics.register(ManagementFactory.getPlatformMBeanServer());
+        } catch (JMException e) {
+            System.err.println("Failed to register the metrics MXBeans: " + e.getMessage());
+        }
+
+        server.start();
+        server.join();
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.lang.management.ThreadInfo;
+
+/**
+ * One capture of the target's threads, waiting to be added to the tree.
+ */
+class Sample {
+
+    private final ThreadInfo[] threads;
+    private final long[] cpuTimes;
+    private final long[] allocatedBytes;
+    private final long time;
+    private final long capturedAt;
+
+    /**
+     * Create a new sample.
+     *
+     * @param threads the captured threads
+     * @param cpuTimes each thread's CPU time in nanoseconds, -1 where unknown, or null
+     * @param allocatedBytes the bytes each thread has allocated, -1 where unknown, or null
+     * @param time the time the sample stands for, in nanoseconds
+     * @param capturedAt when it was captured, in milliseconds since the epoch
+     */
+    Sample(ThreadInfo[] threads, long[] cpuTimes, long[] allocatedBytes,
+            long time, long capturedAt) {
+        this.threads = threads;
+        this.cpuTimes = cpuTimes;
+        this.allocatedBytes = allocatedBytes;
+        this.time = time;
+        this.capturedAt = capturedAt;
+    }
+
+    ThreadInfo[] getThreads() {
+        return threads;
+    }
+
+    /**
+     * Get the CPU time of each thread, if it was captured.
+     *
+     * @return the CPU times in nanoseconds, -1 where unknown, or null
+     */
+    long[] getCpuTimes() {
+        return cpuTimes;
+    }
+
+    /**
+     * Get the bytes each thread has allocated since it started, if they were
+     * captured.
+     *
+     * @return the allocated bytes, -1 where unknown, or null
+     */
+    long[] getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    long getCapturedAt() {
+        return capturedAt;
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives sampling at a fixed rate measured with {@link System#nanoTime()}.
+ *
+ * <p>Each sample is weighted by the time that actually passed since the
+ * previous one. If a capture overruns so that whole ticks are missed, the
+ * missed ticks are counted and skipped rather than fired in a burst, and
+ * the next sample's weight covers the gap.</p>
+ */
+class Sampler implements Runnable {
+
+    /**
+     * Takes one sample.
+     */
+    interface Task {
+        /**
+         * Capture a sample.
+         *
+         * @param weight the time the sample stands for, in nanoseconds
+         * @return false if sampling should stop
+         */
+        boolean capture(long weight);
+    }
+
+    /**
+     * Parking is only accurate to tens of microseconds, so the last stretch
+     * before a tick is spent yielding instead.
+     */
+    static final long SPIN_NANOS = 100000;
+
+    private final Task task;
+    private volatile long interval;
+    private volatile boolean running = true;
+    private volatile long missedTicks;
+    private volatile long samples;
+    private volatile long totalLatency;
+    private volatile long maxLatency;
+    private volatile long lastLatency;
+    private volatile long startTime;
+    private final Histogram lateness = Histogram.forLatency();
+    private long next;
+    private long last;
+
+    /**
+     * Create a new sampler.
+     *
+     * @param task the task that captures samples
+     * @param interval the interval between samples, in nanoseconds
+     */
+    Sampler(Task task, long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.task = task;
+        this.interval = interval;
+    }
+
+    @Override
+    public void run() {
+        start();
+        while (running) {
+            waitUntil(next);
+            tick();
+        }
+    }
+
+    /**
+     * Start the clock, for a sampler that is driven by something else.
+     *
+     * @see SamplingScheduler
+     */
+    void start() {
+        startTime = System.nanoTime();
+        next = startTime + interval;
+        last = startTime;
+    }
+
+    /**
+     * Get when the next sample is due, as a {@link System#nanoTime()} value.
+     *
+     * @return the time
+     */
+    long getNextTick() {
+        return next;
+    }
+
+    /**
+     * Take the sample that is due, and schedule the next one.
+     *
+     * @return false if sampling has stopped
+     */
+    boolean tick() {
+        long interval = this.interval;
+        long start = System.nanoTime();
+        long late = start - next;
+        lateness.record(Math.max(0, late));
+        if (late >= interval) {
+            long missed = late / interval;
+            missedTicks += missed;
+            next += missed * interval;
+        }
+
+        if (!task.capture(start - last)) {
+            running = false;
+            return false;
+        }
+
+        long latency = System.nanoTime() - start;
+        lastLatency = latency;
+        totalLatency += latency;
+        if (latency > maxLatency) {
+            maxLatency = latency;
+        }
+        samples++;
+
+        last = start;
+        next += interval;
+        return running;
+    }
+
+    /**
+     * Wait until a time, parking until shortly before it.
+     *
+     * @param deadline the time, as a {@link System#nanoTime()} value
+     */
+    static void waitUntil(long deadline) {
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            } else if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Mark the start of sampling that happens elsewhere.
+     *
+     * @see #record(long, long, long, long)
+     */
+    void markStarted() {
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Record samples that were captured elsewhere, such as by an agent in
+     * the target VM, so that they show up in this sampler's statistics.
+     *
+     * @param count the number of samples
+     * @param latency the total capture latency of the samples, in nanoseconds
+     * @param max the largest capture latency of the samples, in nanoseconds
+     * @param missed the number of ticks missed
+     */
+    void record(long count, long latency, long max, long missed) {
+        if (count > 0) {
+            lastLatency = latency / count;
+        }
+        totalLatency += latency;
+        if (max > maxLatency) {
+            maxLatency = max;
+        }
+        missedTicks += missed;
+        samples += count;
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Change the interval between samples. The sample that is already
+     * scheduled is taken first.
+     *
+     * @param interval the interval, in nanoseconds
+     */
+    void setInterval(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Get how late each tick fired, in nanoseconds, including ticks that
+     * were so late that the ones before them were missed.
+     *
+     * @return the histogram
+     */
+    Histogram getLateness() {
+        return lateness;
+    }
+
+    long getSampleCount() {
+        return samples;
+    }
+
+    long getMissedTicks() {
+        return missedTicks;
+    }
+
+    long getLastLatency() {
+        return lastLatency;
+    }
+
+    long getMaxLatency() {
+        return maxLatency;
+    }
+
+    long getTotalLatency() {
+        return totalLatency;
+    }
+
+    long getMeanLatency() {
+        long samples = this.samples;
+        return samples > 0 ? totalLatency / samples : 0;
+    }
+
+    /**
+     * Get the fraction of wall time spent capturing samples.
+     *
+     * @return the fraction, between 0 and 1
+     */
+    double getOverhead() {
+        long elapsed = System.nanoTime() - startTime;
+        return startTime != 0 && elapsed > 0 ? totalLatency / (double) elapsed : 0;
+    }
+
+}
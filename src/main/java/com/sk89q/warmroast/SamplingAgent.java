@@ -0,0 +1,250 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An agent loaded into the target VM that samples threads in-process and
+ * streams aggregated deltas back to WarmRoast over a local socket, so that
+ * stacks never go through JMX serialization.
+ *
+ * <p>This class runs in the target VM and must only use the JDK.</p>
+ */
+public class SamplingAgent implements Sampler.Task {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final DeltaTree tree = new DeltaTree();
+    private final DataOutputStream out;
+    private final ThreadSelection selection;
+    private final StackFolder folder;
+    private final long flushInterval;
+    private Sampler sampler;
+    private RateController rate;
+    private long lastFlush = System.nanoTime();
+    private long flushedSamples;
+    private long flushedLatency;
+    private long flushedMissed;
+    private long[] selectedIds;
+    private long selectedAt;
+
+    SamplingAgent(DataOutputStream out, ThreadSelection selection, StackFolder folder,
+            long flushInterval) {
+        this.out = out;
+        this.selection = selection;
+        this.folder = folder;
+        this.flushInterval = flushInterval;
+    }
+
+    public static void agentmain(String args, Instrumentation inst) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        int port = Integer.parseInt(options.get("port"));
+        long interval = Long.parseLong(options.get("interval"));
+        double budget = Double.parseDouble(options.get("budget"));
+        long flushInterval = Long.parseLong(options.get("flush"));
+        ThreadSelection selection = ThreadSelection.fromOptions(options);
+        StackFolder folder = StackFolder.fromOptions(options);
+
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        SamplingAgent agent = new SamplingAgent(out, selection, folder, flushInterval);
+        agent.sampler = new Sampler(agent, interval);
+        if (budget > 0) {
+            agent.rate = new RateController(budget, interval);
+        }
+        if (selection != null && selection.needsCpuTimes()
+                && agent.threadBean.isThreadCpuTimeSupported()) {
+            agent.threadBean.setThreadCpuTimeEnabled(true);
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                agent.sampler.run();
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }, "WarmRoast Agent");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    @Override
+    public boolean capture(long weight) {
+        long start = System.nanoTime();
+        ThreadInfo[] threadDumps;
+        int depth = folder != null && folder.getMaxDepth() > 0
+                ? folder.getMaxDepth() : Integer.MAX_VALUE;
+        if (selection == null && depth == Integer.MAX_VALUE) {
+            threadDumps = threadBean.dumpAllThreads(false, false);
+        } else if (selection == null) {
+            threadDumps = threadBean.getThreadInfo(threadBean.getAllThreadIds(), depth);
+        } else {
+            if (selectedIds == null || start - selectedAt >= selection.getRefreshInterval()) {
+                selectedIds = selectThreads();
+                selectedAt = start;
+            }
+            threadDumps = threadBean.getThreadInfo(selectedIds, depth);
+        }
+        if (rate != null) {
+            sampler.setInterval(rate.update(System.nanoTime() - start, threadDumps.length));
+        }
+        long self = Thread.currentThread().getId();
+        for (ThreadInfo threadInfo : threadDumps) {
+            // Threads that have died since they were listed are null
+            if (threadInfo == null) {
+                continue;
+            }
+
+            String threadName = threadInfo.getThreadName();
+            StackTraceElement[] stack = threadInfo.getStackTrace();
+
+            if (threadInfo.getThreadId() == self || threadName == null || stack == null) {
+                continue;
+            }
+
+            if (folder != null) {
+                tree.log(threadName, stack, folder, weight);
+            } else {
+                tree.log(threadName, stack, weight);
+            }
+        }
+
+        long now = System.nanoTime();
+        if (now - lastFlush >= flushInterval) {
+            lastFlush = now;
+            try {
+                flush();
+            } catch (IOException e) {
+                // WarmRoast has gone away
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * List the threads of this VM, with their groups, and pick the ones to
+     * sample.
+     *
+     * @return the IDs of the threads
+     */
+    private long[] selectThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() * 2 + 16];
+        int count = root.enumerate(threads, true);
+
+        long[] ids = new long[count];
+        String[] names = new String[count];
+        String[] groups = new String[count];
+        long[] cpuTimes = selection.needsCpuTimes() ? new long[count] : null;
+        for (int i = 0; i < count; i++) {
+            ids[i] = threads[i].getId();
+            names[i] = threads[i].getName();
+            ThreadGroup group = threads[i].getThreadGroup();
+            groups[i] = group != null ? group.getName() : null;
+            if (cpuTimes != null) {
+                cpuTimes[i] = threadBean.getThreadCpuTime(ids[i]);
+            }
+        }
+        return selection.select(ids, names, groups, cpuTimes);
+    }
+
+    private void flush() throws IOException {
+        tree.flush(out);
+        // The sampler's statistics cover samples up to the previous one,
+        // which is all the receiver needs
+        long count = sampler.getSampleCount();
+        long latency = sampler.getTotalLatency();
+        long missed = sampler.getMissedTicks();
+        out.writeByte(DeltaTree.MSG_END);
+        Varints.writeVarLong(out, count - flushedSamples);
+        Varints.writeVarLong(out, latency - flushedLatency);
+        Varints.writeVarLong(out, sampler.getMaxLatency());
+        Varints.writeVarLong(out, missed - flushedMissed);
+        Varints.writeVarLong(out, sampler.getInterval());
+        out.flush();
+        flushedSamples = count;
+        flushedLatency = latency;
+        flushedMissed = missed;
+    }
+
+    static String formatOptions(int port, long interval, double budget, long flushInterval,
+            ThreadSelection selection, StackFolder folder) {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("port", Integer.toString(port));
+        options.put("interval", Long.toString(interval));
+        options.put("budget", Double.toString(budget));
+        options.put("flush", Long.toString(flushInterval));
+        if (selection != null) {
+            selection.toOptions(options);
+        }
+        if (folder != null) {
+            folder.toOptions(options);
+        }
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String, String> entry : options.entrySet()) {
+                if (builder.length() > 0) {
+                    builder.append(',');
+                }
+                builder.append(entry.getKey()).append('=')
+                        .append(URLEncoder.encode(entry.getValue(), ENCODING));
+            }
+            return builder.toString();
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String args) throws UnsupportedEncodingException {
+        Map<String, String> options = new HashMap<>();
+        for (String part : args.split(",")) {
+            int i = part.indexOf('=');
+            if (i > 0) {
+                options.put(part.substring(0, i), URLDecoder.decode(part.substring(i + 1), ENCODING));
+            }
+        }
+        return options;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs any number of {@link Sampler}s on a fixed number of threads.
+ *
+ * <p>Each thread takes whichever sampler is due soonest, waits for its
+ * tick, captures and puts it back. Since a thread captures one sample at
+ * a time, the profiler never uses more than that many threads however
+ * many VMs it samples. When captures pile up, a sampler's tick comes late
+ * or is missed, which {@link Sampler} already accounts for in the weight
+ * of the next sample.</p>
+ */
+class SamplingScheduler {
+
+    private final int threads;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Sampler> queue =
+            new PriorityQueue<>(Comparator.comparingLong(Sampler::getNextTick));
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param threads the number of threads to sample on
+     */
+    SamplingScheduler(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("There must be at least one thread");
+        }
+        this.threads = threads;
+    }
+
+    void start() {
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::work, threads == 1 ? "Roast Pan" : "Roast Pan " + (i + 1));
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+        }
+    }
+
+    /**
+     * Start sampling with a sampler.
+     *
+     * @param sampler the sampler
+     */
+    void add(Sampler sampler) {
+        sampler.start();
+        offer(sampler);
+    }
+
+    private void offer(Sampler sampler) {
+        lock.lock();
+        try {
+            queue.add(sampler);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Sampler take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Sampler sampler = queue.peek();
+                if (sampler == null) {
+                    changed.await();
+                    continue;
+                }
+                long remaining = sampler.getNextTick() - System.nanoTime();
+                if (remaining > Sampler.SPIN_NANOS) {
+                    // Woken early if a sampler that is due sooner is added
+                    changed.awaitNanos(remaining - Sampler.SPIN_NANOS);
+                    continue;
+                }
+                queue.poll();
+                if (!queue.isEmpty()) {
+                    changed.signal();
+                }
+                return sampler;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                Sampler sampler = take();
+                Sampler.waitUntil(sampler.getNextTick());
+                if (sampler.isRunning() && sampler.tick()) {
+                    offer(sampler);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
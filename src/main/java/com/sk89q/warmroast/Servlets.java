@@ -0,0 +1,176 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Helpers shared by the servlets.
+ */
+final class Servlets {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private Servlets() {
+    }
+
+    /**
+     * Open a buffered UTF-8 writer for a response body, gzipped if the client
+     * accepts it. The writer must be closed to finish the response.
+     *
+     * @param request the request
+     * @param response the response
+     * @return the writer
+     * @throws IOException on I/O error
+     */
+    static Writer openWriter(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        OutputStream out = response.getOutputStream();
+        String accept = request.getHeader("Accept-Encoding");
+        if (accept != null && accept.contains("gzip")) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.addHeader("Vary", "Accept-Encoding");
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Find the roast that a request is for, from its <code>vm</code>
+     * parameter, which is an index into the list. Without the parameter,
+     * the first roast is used. If there is no such roast, a 404 is sent.
+     *
+     * @param roasts the roasts
+     * @param request the request
+     * @param response the response
+     * @return the roast, or null if an error was sent
+     * @throws IOException on I/O error
+     */
+    static WarmRoast findRoast(List<WarmRoast> roasts, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        return findRoast(roasts, "vm", request, response);
+    }
+
+    /**
+     * Find a roast from a parameter other than <code>vm</code>, as for
+     * {@link #findRoast(List, HttpServletRequest, HttpServletResponse)}.
+     *
+     * @param roasts the roasts
+     * @param name the name of the parameter
+     * @param request the request
+     * @param response the response
+     * @return the roast, or null if an error was sent
+     * @throws IOException on I/O error
+     */
+    static WarmRoast findRoast(List<WarmRoast> roasts, String name,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String param = request.getParameter(name);
+        int index = 0;
+        if (param != null) {
+            try {
+                index = Integer.parseInt(param);
+            } catch (NumberFormatException e) {
+                index = -1;
+            }
+        }
+        if (index < 0 || index >= roasts.size()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown VM");
+            return null;
+        }
+        return roasts.get(index);
+    }
+
+    /**
+     * Find the view a request asks for from its <code>view</code>
+     * parameter, which defaults to {@link View#WALL}. If the roast does not
+     * record that view, a 404 is sent.
+     *
+     * @param roast the roast
+     * @param request the request
+     * @param response the response
+     * @return the view, or null if an error was sent
+     * @throws IOException on I/O error
+     */
+    static View findView(WarmRoast roast, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        String param = request.getParameter("view");
+        View view = param != null && !param.isEmpty() ? View.forName(param) : View.WALL;
+        synchronized (roast) {
+            if (view != null && roast.getViews().contains(view)) {
+                return view;
+            }
+        }
+        response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown view, or one not recorded");
+        return null;
+    }
+
+    /**
+     * Get the range of time a request asks for, from either its
+     * <code>window</code> parameter, which is the number of seconds up to
+     * now, or its <code>from</code> and optional <code>to</code> parameters,
+     * which are in milliseconds since the epoch.
+     *
+     * @param request the request
+     * @return the range, or null for the whole session
+     * @throws NumberFormatException if a parameter is not a number
+     */
+    static TimeRange parseRange(HttpServletRequest request) {
+        String window = request.getParameter("window");
+        String from = request.getParameter("from");
+        String to = request.getParameter("to");
+        if (window != null && !window.isEmpty()) {
+            return TimeRange.last(Double.parseDouble(window));
+        } else if (from != null && !from.isEmpty()) {
+            return new TimeRange(Long.parseLong(from),
+                    to != null && !to.isEmpty() ? Long.parseLong(to) : Long.MAX_VALUE);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a <code>path</code> parameter: frame IDs from a thread's root,
+     * separated by dots.
+     *
+     * @param path the parameter, or null
+     * @return the frame IDs, which are empty for the root
+     * @throws NumberFormatException if an ID is not a number
+     */
+    static int[] parsePath(String path) {
+        if (path == null || path.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = path.split("\\.");
+        int[] ids = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ids[i] = Integer.parseInt(parts[i]);
+        }
+        return ids;
+    }
+
+}
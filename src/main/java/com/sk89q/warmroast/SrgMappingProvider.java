@@ -0,0 +1,290 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Reads MCP's joined.srg and, if given, methods.csv.
+ *
+ * <p>methods.csv is streamed on one thread while joined.srg is
+ * memory-mapped and split at line boundaries into a chunk per core, each
+ * parsed in a single pass on its own thread.</p>
+ */
+class SrgMappingProvider implements MappingProvider {
+
+    private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private final File joinedFile;
+    private final File methodsFile;
+
+    /**
+     * Create a new provider.
+     *
+     * @param joinedFile joined.srg
+     * @param methodsFile methods.csv, or null to leave method IDs unnamed
+     */
+    SrgMappingProvider(File joinedFile, File methodsFile) {
+        this.joinedFile = joinedFile;
+        this.methodsFile = methodsFile;
+    }
+
+    @Override
+    public List<File> getFiles() {
+        return methodsFile != null
+                ? Arrays.asList(joinedFile, methodsFile)
+                : Collections.singletonList(joinedFile);
+    }
+
+    @Override
+    public void read(MappingBuilder builder) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Mapping Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            Future<Map<String, String>> names = executor.submit(() -> methodsFile != null
+                    ? readMethodNames(methodsFile)
+                    : Collections.<String, String>emptyMap());
+
+            ByteBuffer joined = map(joinedFile);
+            int size = joined.limit();
+            int chunkCount = Math.max(1, Math.min(threads, size / MIN_CHUNK_SIZE));
+            List<Future<SrgChunk>> chunks = new ArrayList<>();
+            int start = 0;
+            for (int i = 1; i <= chunkCount; i++) {
+                int end = i == chunkCount ? size : nextLine(joined, (int) ((long) size * i / chunkCount));
+                if (end > start) {
+                    ByteBuffer slice = joined.duplicate();
+                    slice.limit(end);
+                    slice.position(start);
+                    chunks.add(executor.submit(() -> parseSrg(slice)));
+                }
+                start = end;
+            }
+
+            Map<String, String> methodNames = get(names);
+            for (Map.Entry<String, String> entry : methodNames.entrySet()) {
+                builder.addMethodName(entry.getKey(), entry.getValue());
+            }
+            for (Future<SrgChunk> chunk : chunks) {
+                List<String> c = get(chunk).classes;
+                for (int i = 0; i < c.size(); i += 2) {
+                    builder.addClass(c.get(i), c.get(i + 1));
+                }
+            }
+            for (Future<SrgChunk> chunk : chunks) {
+                List<String> m = get(chunk).methods;
+                for (int i = 0; i < m.size(); i += 3) {
+                    String id = m.get(i + 2);
+                    String name = methodNames.get(id);
+                    builder.addMethod(m.get(i), m.get(i + 1), name != null ? name : id);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Read the names for method IDs from MCP's methods.csv.
+     *
+     * @param methodsFile the file
+     * @return a map of IDs to names
+     * @throws IOException on I/O error
+     */
+    static Map<String, String> readMethodNames(File methodsFile) throws IOException {
+        Map<String, String> names = new HashMap<>();
+        try (CSVReader reader = new CSVReader(new FileReader(methodsFile))) {
+            boolean first = true;
+            String[] entry;
+            while ((entry = reader.readNext()) != null) {
+                if (entry.length < 2) {
+                    continue;
+                }
+                if (first) { // Header
+                    first = false;
+                    continue;
+                }
+                names.put(entry[0], entry[1]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Parse the CL: and MD: lines of part of joined.srg.
+     *
+     * @param in the part, which must start and end at line boundaries
+     * @return the parsed lines
+     */
+    private static SrgChunk parseSrg(ByteBuffer in) {
+        SrgChunk chunk = new SrgChunk();
+        byte[] line = new byte[256];
+        int[] spaces = new int[5];
+        while (in.hasRemaining()) {
+            int length = 0;
+            int fields = 1;
+            while (in.hasRemaining()) {
+                byte b = in.get();
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                if (b == ' ' && fields <= spaces.length) {
+                    spaces[fields - 1] = length;
+                    fields++;
+                } else if (b == ' ') {
+                    fields++;
+                }
+                line[length++] = b;
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length < 4 || line[2] != ':' || line[3] != ' ' || fields < 3) {
+                continue;
+            }
+            if (line[0] == 'C' && line[1] == 'L' && fields == 3) {
+                parseClass(chunk, line, length, spaces);
+            } else if (line[0] == 'M' && line[1] == 'D' && fields == 5) {
+                parseMethod(chunk, line, length, spaces);
+            }
+        }
+        return chunk;
+    }
+
+    private static void parseClass(SrgChunk chunk, byte[] line, int length, int[] spaces) {
+        int obfuscated = spaces[0] + 1;
+        int actual = spaces[1] + 1;
+        if (actual - obfuscated < 2 || length == actual) {
+            return;
+        }
+        for (int i = actual; i < length; i++) {
+            if (line[i] == '/') {
+                line[i] = '.';
+            }
+        }
+        chunk.classes.add(string(line, obfuscated, spaces[1]));
+        chunk.classes.add(string(line, actual, length));
+    }
+
+    private static void parseMethod(SrgChunk chunk, byte[] line, int length, int[] spaces) {
+        for (int i = 1; i < 4; i++) {
+            if (spaces[i] - spaces[i - 1] < 2) {
+                return;
+            }
+        }
+        if (length - spaces[3] < 2) {
+            return;
+        }
+        // Field 1 is class/method, split at the first slash
+        int start = spaces[0] + 1;
+        int slash = indexOf(line, (byte) '/', start, spaces[1]);
+        if (slash <= start || slash == spaces[1] - 1) {
+            return;
+        }
+        // Field 3 is the method's full SRG name; keep what is after the last slash
+        int id = spaces[2] + 1;
+        for (int i = spaces[3] - 1; i > spaces[2]; i--) {
+            if (line[i] == '/') {
+                id = i + 1;
+                break;
+            }
+        }
+        chunk.methods.add(string(line, start, slash));
+        chunk.methods.add(string(line, slash + 1, spaces[1]));
+        chunk.methods.add(string(line, id, spaces[3]));
+    }
+
+    private static int indexOf(byte[] line, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String string(byte[] line, int from, int to) {
+        return new String(line, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static int nextLine(ByteBuffer buffer, int position) {
+        int limit = buffer.limit();
+        while (position < limit && buffer.get(position - 1) != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while reading mappings", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to read mappings", e.getCause());
+        }
+    }
+
+    /**
+     * The lines parsed from part of joined.srg, kept flat to avoid an
+     * object per line.
+     */
+    private static class SrgChunk {
+        /** Pairs of obfuscated and actual class names. */
+        private final List<String> classes = new ArrayList<>();
+        /** Triples of obfuscated class, obfuscated method and method ID. */
+        private final List<String> methods = new ArrayList<>();
+    }
+
+}
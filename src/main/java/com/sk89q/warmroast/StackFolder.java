@@ -0,0 +1,192 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shortens sampled stacks before they are logged, so that deep recursion
+ * and library internals can't grow a tree without bound.
+ *
+ * <ul>
+ *     <li>Only the innermost frames, up to a maximum depth, are kept, as
+ *     with <code>ThreadMXBean.getThreadInfo(ids, maxDepth)</code>. A stack
+ *     that reaches the maximum starts with a {@link #TRUNCATED} frame, so
+ *     that truncated stacks are grouped together.</li>
+ *     <li>Calls within folded packages are folded into the frame that
+ *     called into the package, which then counts the time spent below it
+ *     as its own. A folded package is given by its prefix, such as
+ *     <code>java.</code>.</li>
+ *     <li>With recursion folding, a frame that is already on the path
+ *     folds everything since back into its first call, so no frame
+ *     appears twice on a path.</li>
+ * </ul>
+ *
+ * <p>Folders keep scratch space and must only be used by one thread at a
+ * time. This class also runs in the target VM, in {@link SamplingAgent},
+ * and must only use the JDK.</p>
+ */
+class StackFolder {
+
+    /** The class name of the frame that stands for frames cut off by the depth. */
+    static final String TRUNCATED = "(outer frames omitted)";
+
+    private final int maxDepth;
+    private final String[] packages;
+    private final boolean foldRecursion;
+    private int[] path = new int[64];
+    private int length;
+    // The position of each frame on the path, by frame ID; stale entries
+    // are recognized by checking the path
+    private int[] positions = new int[256];
+
+    /**
+     * Create a new folder.
+     *
+     * @param maxDepth the number of innermost frames to keep, or 0 for all
+     * @param packages the prefixes of packages to fold, with or without a
+     *     trailing <code>.</code> or <code>.*</code>
+     * @param foldRecursion whether to fold recursion
+     */
+    StackFolder(int maxDepth, List<String> packages, boolean foldRecursion) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("The maximum depth can't be negative");
+        }
+        this.maxDepth = maxDepth;
+        List<String> prefixes = new ArrayList<>();
+        for (String name : packages) {
+            String prefix = name.endsWith("*") ? name.substring(0, name.length() - 1) : name;
+            if (prefix.isEmpty()) {
+                throw new IllegalArgumentException("A folded package needs a name");
+            }
+            prefixes.add(prefix.endsWith(".") ? prefix : prefix + ".");
+        }
+        this.packages = prefixes.toArray(new String[0]);
+        this.foldRecursion = foldRecursion;
+    }
+
+    /**
+     * Get the depth to capture stacks to.
+     *
+     * @return the depth, or 0 for no limit
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Shorten a stack and intern its frames, leaving their IDs in
+     * {@link #getPath()}.
+     *
+     * @param stack the stack, innermost frame first
+     * @param frames the frame table
+     * @return the number of frame IDs
+     */
+    int fold(StackTraceElement[] stack, FrameTable frames) {
+        int start = stack.length - 1;
+        length = 0;
+        if (maxDepth > 0 && stack.length >= maxDepth) {
+            start = maxDepth - 1;
+            push(frames.intern(TRUNCATED, "").getId());
+        }
+
+        boolean outerFolded = false;
+        for (int i = start; i >= 0; i--) {
+            String className = stack[i].getClassName();
+            boolean folded = isFolded(className);
+            if (folded && outerFolded) {
+                continue;
+            }
+            outerFolded = folded;
+            push(frames.intern(className, stack[i].getMethodName()).getId());
+        }
+        return length;
+    }
+
+    /**
+     * Get the frame IDs of the last stack folded, outermost frame first.
+     *
+     * @return the IDs, in an array owned by this folder that is only valid
+     *     until the next call to {@link #fold(StackTraceElement[], FrameTable)}
+     */
+    int[] getPath() {
+        return path;
+    }
+
+    private void push(int frameId) {
+        if (foldRecursion) {
+            if (frameId >= positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(frameId + 1, positions.length * 2));
+            }
+            int position = positions[frameId];
+            if (position < length && path[position] == frameId) {
+                length = position + 1;
+                return;
+            }
+            positions[frameId] = length;
+        }
+        if (length == path.length) {
+            path = Arrays.copyOf(path, length * 2);
+        }
+        path[length++] = frameId;
+    }
+
+    /**
+     * Write the folder as options for {@link SamplingAgent}.
+     *
+     * @param options the options to add to
+     * @see #fromOptions(Map)
+     */
+    void toOptions(Map<String, String> options) {
+        options.put("depth", Integer.toString(maxDepth));
+        options.put("fold", String.join(" ", packages));
+        options.put("recursion", Boolean.toString(foldRecursion));
+    }
+
+    /**
+     * Read a folder from options written by {@link #toOptions(Map)}.
+     *
+     * @param options the options
+     * @return the folder, or null if there is none
+     */
+    static StackFolder fromOptions(Map<String, String> options) {
+        String depth = options.get("depth");
+        if (depth == null) {
+            return null;
+        }
+        String fold = options.get("fold");
+        return new StackFolder(Integer.parseInt(depth),
+                fold.isEmpty() ? new ArrayList<String>() : Arrays.asList(fold.split(" ")),
+                Boolean.parseBoolean(options.get("recursion")));
+    }
+
+    private boolean isFolded(String className) {
+        for (String prefix : packages) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
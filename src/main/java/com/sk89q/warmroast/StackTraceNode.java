@@ -20,27 +20,69 @@ package com.sk89q.warmroast;
 
 import java.util.List;
 
-public class StackTraceNode extends Node {
+/**
+ * A node for a single stack frame, regardless of how the tree is stored.
+ */
+public abstract class StackTraceNode extends Node {
     
-    private final String className;
-    private final String methodName;
+    private final Frame frame;
 
-    public StackTraceNode(String className, String methodName) {
-        super(getName(className, methodName));
-        this.className = className;
-        this.methodName = methodName;
+    StackTraceNode(Frame frame) {
+        this.frame = frame;
     }
 
+    /**
+     * Get the name of a frame. A frame without a method name, such as
+     * {@link StackFolder#TRUNCATED}, stands for something other than a
+     * method and is named by its class name alone.
+     *
+     * @param className the class name
+     * @param methodName the method name
+     * @return the name
+     */
     public static String getName(String className, String methodName) {
+        if (methodName.isEmpty()) {
+            return className;
+        }
         return className + "." + methodName + "()";
     }
 
+    public Frame getFrame() {
+        return frame;
+    }
+
+    /**
+     * Find the child for a frame without changing the tree.
+     *
+     * @param frameId the frame ID
+     * @return the child, or null if there is none
+     */
+    abstract StackTraceNode findChild(int frameId);
+
+    @Override
+    String getName() {
+        return frame.toString();
+    }
+
     @Override
     public String getNameHtml(McpMapping mapping) {
-        ClassMapping classMapping = mapping.mapClass(className);
+        return mapping.getNames(frame).getHtml();
+    }
+
+    @Override
+    public String getNameJson(McpMapping mapping) {
+        return mapping.getNames(frame).getJson();
+    }
+
+    static String getNameHtml(Frame frame, McpMapping mapping) {
+        String methodName = frame.getMethodName();
+        if (methodName.isEmpty()) {
+            return escapeHtml(frame.getClassName());
+        }
+        ClassMapping classMapping = mapping.mapClass(frame.getClassName());
         if (classMapping != null) {
             String className = "<span class=\"matched\" title=\"" +
-                    escapeHtml(this.className) + "\">" +
+                    escapeHtml(frame.getClassName()) + "\">" +
                     escapeHtml(classMapping.getActual()) + "</span>";
 
             List<String> actualMethods = classMapping.mapMethod(methodName);
@@ -66,6 +108,7 @@ public class StackTraceNode extends Node {
                             builder.toString() + "\">" + escapeHtml(methodName) + "</span>()";
             }
         } else {
+            String className = frame.getClassName();
             String actualMethod = mapping.mapMethodId(methodName);
             if (actualMethod == null) {
                 return escapeHtml(className) + "." + escapeHtml(methodName) + "()";
@@ -78,12 +121,49 @@ public class StackTraceNode extends Node {
         }
     }
 
-    @Override
-    public String getNameJson(McpMapping mapping) {
+    /**
+     * Get the deobfuscated name of a frame as plain text. When a method has
+     * several possible names, the obfuscated name is kept.
+     *
+     * @param frame the frame
+     * @param mapping the mapping
+     * @return the name
+     */
+    static String getNameText(Frame frame, McpMapping mapping) {
+        String className = frame.getClassName();
+        String methodName = frame.getMethodName();
+        if (methodName.isEmpty()) {
+            return className;
+        }
         ClassMapping classMapping = mapping.mapClass(className);
         if (classMapping != null) {
-            // TODO finish writing this
-            return null;
+            className = classMapping.getActual();
+            List<String> actualMethods = classMapping.mapMethod(methodName);
+            if (actualMethods.size() == 1) {
+                methodName = actualMethods.get(0);
+            }
+        } else {
+            String actualMethod = mapping.mapMethodId(methodName);
+            if (actualMethod != null) {
+                methodName = actualMethod;
+            }
+        }
+        return getName(className, methodName);
+    }
+
+    static String getNameJson(Frame frame, McpMapping mapping) {
+        String className = frame.getClassName();
+        String methodName = frame.getMethodName();
+        if (methodName.isEmpty()) {
+            return escapeJson(className);
+        }
+        ClassMapping classMapping = mapping.mapClass(className);
+        if (classMapping != null) {
+            List<String> actualMethods = classMapping.mapMethod(methodName);
+            if (actualMethods.size() == 1) {
+                methodName = actualMethods.get(0);
+            }
+            return escapeJson(classMapping.getActual() + "." + methodName);
         } else {
             String actualMethod = mapping.mapMethodId(methodName);
             if (actualMethod == null) {
@@ -0,0 +1,79 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.management.MBeanServerConnection;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Fires when a thread uses more than a fraction of a CPU between polls,
+ * such as a game's main thread during a slow tick.
+ */
+class ThreadCpuTrigger extends Trigger {
+
+    private final String threadName;
+    private final double threshold;
+    private volatile long threadId = -1;
+    private long lastCpuTime = -1;
+
+    /**
+     * Create a new trigger.
+     *
+     * @param threadName the thread's name
+     * @param threshold the fraction of a CPU
+     */
+    ThreadCpuTrigger(String threadName, double threshold) {
+        this.threadName = threadName;
+        this.threshold = threshold;
+    }
+
+    @Override
+    String getName() {
+        return "cpu";
+    }
+
+    @Override
+    boolean sample(ThreadInfo thread, long weight) {
+        // The thread's ID is found from the samples rather than a separate dump
+        if (threadId == -1 && threadName.equals(thread.getThreadName())) {
+            threadId = thread.getThreadId();
+        }
+        return false;
+    }
+
+    @Override
+    boolean poll(MBeanServerConnection connection, ThreadMXBean threads, long elapsed) {
+        long threadId = this.threadId;
+        if (threadId == -1) {
+            return false;
+        }
+        long cpuTime = threads.getThreadCpuTime(threadId);
+        if (cpuTime == -1) {
+            // The thread has died or CPU time is not measured
+            this.threadId = -1;
+            lastCpuTime = -1;
+            return false;
+        }
+        long used = lastCpuTime != -1 ? cpuTime - lastCpuTime : 0;
+        lastCpuTime = cpuTime;
+        return used > threshold * elapsed;
+    }
+
+}
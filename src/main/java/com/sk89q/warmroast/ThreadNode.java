@@ -1,8 +1,51 @@
 package com.sk89q.warmroast;
 
+import java.util.Collection;
+
 public class ThreadNode extends Node {
-    ThreadNode(String threadName) {
-        super(threadName);
+    private final String threadName;
+    private final CallTree tree;
+
+    ThreadNode(String threadName, CallTree tree) {
+        this.threadName = threadName;
+        this.tree = tree;
+    }
+
+    @Override
+    String getName() {
+        return threadName;
+    }
+
+    CallTree getTree() {
+        return tree;
+    }
+
+    @Override
+    Collection<? extends Node> getChildren() {
+        return tree.getRoot().getChildren();
+    }
+
+    @Override
+    int getChildCount() {
+        return tree.getRoot().getChildCount();
+    }
+
+    @Override
+    void fillChildren(Node[] out) {
+        tree.getRoot().fillChildren(out);
+    }
+
+    @Override
+    long getTotalTime() {
+        return tree.getTotalTime();
+    }
+
+    int log(StackTraceElement[] elements, long time) {
+        return tree.log(elements, time);
+    }
+
+    int log(int[] frameIds, int length, long time) {
+        return tree.log(frameIds, length, time);
     }
 
     @Override
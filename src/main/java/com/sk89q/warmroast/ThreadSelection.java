@@ -0,0 +1,241 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the threads to sample, so that only their stacks are fetched.
+ *
+ * <p>A thread is picked if it has one of the given names, matches the
+ * pattern, has one of the given IDs or is in the given thread group, or,
+ * if none of those are given, always. If a number of top threads is given,
+ * only that many of the picked threads are kept: the ones that used the
+ * most CPU time since the previous selection.</p>
+ *
+ * <p>Selections are made every so often from a cheap listing of the
+ * target's threads, and the IDs are sampled in between, so new threads
+ * are picked up at the next refresh.</p>
+ *
+ * <p>This class also runs in the target VM, in {@link SamplingAgent}, and
+ * must only use the JDK.</p>
+ */
+class ThreadSelection {
+
+    private final Set<String> names;
+    private final Pattern pattern;
+    private final Set<Long> ids;
+    private final String group;
+    private final int top;
+    private final long refreshInterval;
+    private Map<Long, Long> lastCpuTimes = new HashMap<>();
+
+    /**
+     * Create a new selection.
+     *
+     * @param names exact thread names
+     * @param pattern a pattern that the whole name must match, or null
+     * @param ids thread IDs
+     * @param group the name of a thread group, or null
+     * @param top the number of threads with the most CPU time to keep, or 0 to keep all
+     * @param refreshInterval the time between selections, in nanoseconds
+     */
+    ThreadSelection(List<String> names, Pattern pattern, List<Long> ids, String group,
+            int top, long refreshInterval) {
+        if (top < 0) {
+            throw new IllegalArgumentException("The number of top threads can't be negative");
+        }
+        if (refreshInterval <= 0) {
+            throw new IllegalArgumentException("The refresh interval must be positive");
+        }
+        this.names = new LinkedHashSet<>(names);
+        this.pattern = pattern;
+        this.ids = new LinkedHashSet<>(ids);
+        this.group = group;
+        this.top = top;
+        this.refreshInterval = refreshInterval;
+    }
+
+    long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Get whether selecting needs the names of the threads.
+     *
+     * @return true if it does
+     */
+    boolean needsNames() {
+        return !names.isEmpty() || pattern != null;
+    }
+
+    /**
+     * Get whether selecting needs the thread groups of the threads, which
+     * are only known inside the target VM.
+     *
+     * @return true if it does
+     */
+    boolean needsGroups() {
+        return group != null;
+    }
+
+    /**
+     * Get whether selecting needs the CPU time of the threads.
+     *
+     * @return true if it does
+     */
+    boolean needsCpuTimes() {
+        return top > 0;
+    }
+
+    /**
+     * Check whether a thread is picked, before the top threads are kept.
+     *
+     * @param id the thread's ID
+     * @param name the thread's name, or null if not known
+     * @param group the name of the thread's group, or null if not known
+     * @return true if it is picked
+     */
+    boolean matches(long id, String name, String group) {
+        if (names.isEmpty() && pattern == null && ids.isEmpty() && this.group == null) {
+            return true;
+        }
+        return ids.contains(id)
+                || (name != null && (names.contains(name)
+                        || (pattern != null && pattern.matcher(name).matches())))
+                || (group != null && group.equals(this.group));
+    }
+
+    /**
+     * Select threads from a listing of the target's threads. This is
+     * called from one thread at a time.
+     *
+     * @param ids the IDs of the threads
+     * @param names their names, or null if not {@link #needsNames() needed};
+     *     a null name is a thread that has died
+     * @param groups the names of their groups, or null if not
+     *     {@link #needsGroups() needed}
+     * @param cpuTimes the CPU time each thread has used, in nanoseconds,
+     *     or null if not {@link #needsCpuTimes() needed}
+     * @return the IDs of the selected threads
+     */
+    long[] select(long[] ids, String[] names, String[] groups, long[] cpuTimes) {
+        List<Integer> picked = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (matches(ids[i], names != null ? names[i] : null, groups != null ? groups[i] : null)) {
+                picked.add(i);
+            }
+        }
+
+        if (top > 0 && cpuTimes != null) {
+            // Ranked by the CPU time used since the previous selection, or
+            // since the thread started if it is new
+            Map<Long, Long> seen = new HashMap<>();
+            long[] used = new long[ids.length];
+            for (int i : picked) {
+                if (cpuTimes[i] >= 0) {
+                    Long last = lastCpuTimes.get(ids[i]);
+                    used[i] = last != null ? cpuTimes[i] - last : cpuTimes[i];
+                    seen.put(ids[i], cpuTimes[i]);
+                }
+            }
+            lastCpuTimes = seen;
+            picked.sort((a, b) -> Long.compare(used[b], used[a]));
+            if (picked.size() > top) {
+                picked = picked.subList(0, top);
+            }
+        }
+
+        long[] selected = new long[picked.size()];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = ids[picked.get(i)];
+        }
+        return selected;
+    }
+
+    /**
+     * Write the selection as options for {@link SamplingAgent}.
+     *
+     * @param options the options to add to
+     * @see #fromOptions(Map)
+     */
+    void toOptions(Map<String, String> options) {
+        if (!names.isEmpty()) {
+            options.put("names", String.join("\n", names));
+        }
+        if (pattern != null) {
+            options.put("pattern", pattern.pattern());
+        }
+        if (!ids.isEmpty()) {
+            StringBuilder builder = new StringBuilder();
+            for (long id : ids) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(id);
+            }
+            options.put("ids", builder.toString());
+        }
+        if (group != null) {
+            options.put("group", group);
+        }
+        if (top > 0) {
+            options.put("top", Integer.toString(top));
+        }
+        options.put("refresh", Long.toString(refreshInterval));
+    }
+
+    /**
+     * Read a selection from options written by {@link #toOptions(Map)}.
+     *
+     * @param options the options
+     * @return the selection, or null if there is none
+     */
+    static ThreadSelection fromOptions(Map<String, String> options) {
+        String refresh = options.get("refresh");
+        if (refresh == null) {
+            return null;
+        }
+        String names = options.get("names");
+        String pattern = options.get("pattern");
+        String ids = options.get("ids");
+        String top = options.get("top");
+        List<Long> idList = new ArrayList<>();
+        if (ids != null) {
+            for (String id : ids.split(" ")) {
+                idList.add(Long.parseLong(id));
+            }
+        }
+        return new ThreadSelection(
+                names != null ? Arrays.asList(names.split("\n")) : new ArrayList<String>(),
+                pattern != null ? Pattern.compile(pattern) : null,
+                idList, options.get("group"),
+                top != null ? Integer.parseInt(top) : 0,
+                Long.parseLong(refresh));
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+/**
+ * A range of wall clock time to show samples from.
+ */
+class TimeRange {
+
+    private final long from;
+    private final long to;
+
+    /**
+     * Create a new range.
+     *
+     * @param from the start, in milliseconds since the epoch
+     * @param to the end, in milliseconds since the epoch
+     */
+    TimeRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Create a range covering the last few seconds.
+     *
+     * @param seconds the number of seconds
+     * @return the range
+     */
+    static TimeRange last(double seconds) {
+        return new TimeRange(System.currentTimeMillis() - (long) (seconds * 1000), Long.MAX_VALUE);
+    }
+
+    long getFrom() {
+        return from;
+    }
+
+    long getTo() {
+        return to;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads Tiny v2 files, as used by Fabric.
+ *
+ * <p>Names are mapped from the first namespace (usually
+ * <code>official</code>) to the last (usually <code>named</code>). Names
+ * in the namespaces between (usually <code>intermediary</code>) are mapped
+ * to the last too, since that is what a game running with Fabric's
+ * runtime mappings reports, and their method names are also kept as
+ * method IDs, like MCP's <code>func_</code> names.</p>
+ */
+class TinyMappingProvider implements MappingProvider {
+
+    private final File file;
+
+    TinyMappingProvider(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public List<File> getFiles() {
+        return Collections.singletonList(file);
+    }
+
+    @Override
+    public void read(MappingBuilder builder) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith("tiny\t2\t")) {
+                throw new IOException(file.getAbsolutePath() + " is not a Tiny v2 file");
+            }
+            int namespaces = header.split("\t").length - 3;
+            if (namespaces < 2) {
+                throw new IOException(file.getAbsolutePath() + " has fewer than two namespaces");
+            }
+
+            String line;
+            String[] owner = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("c\t")) {
+                    // c, then a name per namespace
+                    owner = names(line.split("\t", -1), 1, namespaces, true);
+                    for (int i = 0; i < namespaces - 1; i++) {
+                        builder.addClass(owner[i], owner[namespaces - 1]);
+                    }
+                } else if (owner != null && line.startsWith("\tm\t")) {
+                    // Tab, m, descriptor, then a name per namespace
+                    String[] names = names(line.split("\t", -1), 3, namespaces, false);
+                    String mapped = names[namespaces - 1];
+                    for (int i = 0; i < namespaces - 1; i++) {
+                        builder.addMethod(owner[i], names[i], mapped);
+                        if (i > 0) {
+                            builder.addMethodName(names[i], mapped);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the names in each namespace from a line's columns. A missing
+     * name is the same as the one in the namespace before it.
+     */
+    private static String[] names(String[] columns, int start, int count, boolean className) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            String name = start + i < columns.length ? columns[start + i] : "";
+            if (name.isEmpty() && i > 0) {
+                name = names[i - 1];
+            } else if (className) {
+                name = name.replace('/', '.');
+            }
+            names[i] = name;
+        }
+        return names;
+    }
+
+}
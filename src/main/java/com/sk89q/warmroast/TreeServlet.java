@@ -0,0 +1,176 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Serves parts of the tree on demand, so that a browser only downloads the
+ * nodes that the user expands.
+ *
+ * <p>Parameters, all optional:</p>
+ *
+ * <ul>
+ *     <li><code>view</code>: the name of the {@link View} (default
+ *     <code>wall</code>)</li>
+ *     <li><code>thread</code>: only this thread</li>
+ *     <li><code>path</code>: frame IDs from the thread's root, separated by
+ *     dots, of the node whose children are wanted</li>
+ *     <li><code>depth</code>: how many levels of children to include
+ *     (default 1)</li>
+ *     <li><code>min</code>: leave out nodes below this percentage of their
+ *     thread's time (default 0)</li>
+ * </ul>
+ *
+ * <p>Times are in microseconds, or in kilobytes for views of bytes, and
+ * <code>unit</code> is what they are in once divided by another thousand,
+ * for display. A node's <code>children</code> is only
+ * present if they were loaded; <code>childCount</code> says how many there
+ * are, and <code>omitted</code> counts those pruned by <code>min</code>.</p>
+ */
+public class TreeServlet extends HttpServlet {
+
+    private static final long serialVersionUID = -4620470232707315128L;
+    private static final int MAX_DEPTH = 1024;
+
+    private final List<WarmRoast> roasts;
+
+    public TreeServlet(List<WarmRoast> roasts) {
+        this.roasts = roasts;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        WarmRoast roast = Servlets.findRoast(roasts, request, response);
+        View view = roast != null ? Servlets.findView(roast, request, response) : null;
+        if (view == null) {
+            return;
+        }
+
+        String threadName = request.getParameter("thread");
+        int[] path;
+        int depth;
+        double min;
+        TimeRange range;
+        try {
+            path = Servlets.parsePath(request.getParameter("path"));
+            String param = request.getParameter("depth");
+            depth = param != null ? Math.min(MAX_DEPTH, Integer.parseInt(param)) : 1;
+            param = request.getParameter("min");
+            min = param != null ? Double.parseDouble(param) / 100 : 0;
+            range = Servlets.parseRange(request);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Bad 'path', 'depth', 'min', 'window', 'from' or 'to'");
+            return;
+        }
+
+        response.setContentType("application/json; charset=utf-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        try (Writer w = Servlets.openWriter(request, response)) {
+            RenderBuffer buffer = new RenderBuffer();
+            McpMapping mapping = roast.getMapping();
+            // Only the levels that are written are copied, and the copies are
+            // written after the lock is released so that sampling carries on
+            Collection<ThreadNode> threads = roast.snapshot(
+                    view, range, threadName, path, depth + 1, min).values();
+
+            w.write("{\"unit\":\"");
+            w.write(view.getUnit());
+            w.write("\",\"threads\":[");
+            boolean first = true;
+            for (ThreadNode thread : threads) {
+                if (!first) {
+                    w.write(",");
+                }
+                first = false;
+                long total = thread.getTotalTime();
+                w.write("{\"name\":\"");
+                w.write(Node.escapeJson(thread.getName()));
+                w.write("\",\"time\":");
+                buffer.writeLong(w, total / 1000);
+                StackTraceNode node = find(thread.getTree().getRoot(), path);
+                if (node != null) {
+                    w.write(",");
+                    writeChildren(w, node, mapping, buffer, 0, depth, (long) (total * min));
+                }
+                w.write("}");
+            }
+            w.write("]}");
+        }
+    }
+
+    static StackTraceNode find(StackTraceNode node, int[] path) {
+        for (int i = 0; i < path.length && node != null; i++) {
+            node = node.findChild(path[i]);
+        }
+        return node;
+    }
+
+    private static void writeChildren(Writer w, Node node, McpMapping mapping,
+            RenderBuffer buffer, int level, int depth, long minTime) throws IOException {
+        int count = node.getChildCount();
+        Node[] children = buffer.getChildren(node, level);
+        int omitted = 0;
+        w.write("\"childCount\":");
+        buffer.writeLong(w, count);
+        w.write(",\"children\":[");
+        boolean first = true;
+        for (int i = 0; i < count; i++) {
+            StackTraceNode child = (StackTraceNode) children[i];
+            children[i] = null;
+            if (child.getTotalTime() < minTime) {
+                // Children are sorted by time, so the rest are smaller still
+                omitted = count - i;
+                Arrays.fill(children, i, count, null);
+                break;
+            }
+            if (!first) {
+                w.write(",");
+            }
+            first = false;
+            w.write("{\"frame\":");
+            buffer.writeLong(w, child.getFrame().getId());
+            w.write(",\"name\":\"");
+            w.write(mapping.getNames(child.getFrame()).getHtmlJson());
+            w.write("\",\"time\":");
+            buffer.writeLong(w, child.getTotalTime() / 1000);
+            w.write(",");
+            if (level + 1 < depth) {
+                writeChildren(w, child, mapping, buffer, level + 1, depth, minTime);
+            } else {
+                w.write("\"childCount\":");
+                buffer.writeLong(w, child.getChildCount());
+            }
+            w.write("}");
+        }
+        w.write("],\"omitted\":");
+        buffer.writeLong(w, omitted);
+    }
+}
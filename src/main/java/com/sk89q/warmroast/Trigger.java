@@ -0,0 +1,122 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.management.MBeanServerConnection;
+import java.io.IOException;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A condition that starts a high-rate capture when it is met.
+ *
+ * <p>A trigger may watch the samples as they are added to the tree, poll
+ * the target over JMX, or both. Either method returns true to fire.</p>
+ *
+ * @see TriggerWatcher
+ */
+abstract class Trigger {
+
+    /**
+     * Get a short name for file names and messages.
+     *
+     * @return the name
+     */
+    abstract String getName();
+
+    /**
+     * Look at a sampled thread. This is called on the aggregator thread,
+     * with the roast locked.
+     *
+     * @param thread the thread
+     * @param weight the time the sample stands for, in nanoseconds
+     * @return true to fire
+     */
+    boolean sample(ThreadInfo thread, long weight) {
+        return false;
+    }
+
+    /**
+     * Poll the target. This is called every {@link TriggerWatcher#PERIOD}
+     * milliseconds, on the watcher's thread.
+     *
+     * @param connection the connection to the target
+     * @param threads the target's thread bean
+     * @param elapsed the time since the last poll, in nanoseconds
+     * @return true to fire
+     * @throws IOException on a JMX error
+     */
+    boolean poll(MBeanServerConnection connection, ThreadMXBean threads, long elapsed)
+            throws IOException {
+        return false;
+    }
+
+    /**
+     * Create a trigger from a command line specification, which is one of
+     * <code>cpu:&lt;thread&gt;:&lt;percent&gt;</code>,
+     * <code>gc:&lt;ms&gt;</code> or
+     * <code>frame:&lt;class&gt;.&lt;method&gt;:&lt;ms&gt;</code>.
+     *
+     * @param spec the specification
+     * @return the trigger
+     * @throws IllegalArgumentException if the specification is not valid
+     */
+    static Trigger parse(String spec) {
+        int kindEnd = spec.indexOf(':');
+        int valueStart = spec.lastIndexOf(':');
+        if (kindEnd < 0) {
+            throw new IllegalArgumentException("Expected <kind>:...: " + spec);
+        }
+        String kind = spec.substring(0, kindEnd);
+        String target = kindEnd < valueStart ? spec.substring(kindEnd + 1, valueStart) : null;
+        double value;
+        try {
+            value = Double.parseDouble(spec.substring(valueStart + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number at the end: " + spec);
+        }
+        if (value <= 0) {
+            throw new IllegalArgumentException("Expected a positive number at the end: " + spec);
+        }
+
+        switch (kind) {
+            case "cpu":
+                if (target == null) {
+                    throw new IllegalArgumentException("Expected cpu:<thread>:<percent>: " + spec);
+                }
+                return new ThreadCpuTrigger(target, value / 100);
+            case "gc":
+                if (target != null) {
+                    throw new IllegalArgumentException("Expected gc:<ms>: " + spec);
+                }
+                return new GcTrigger((long) (value * Node.NANOS_PER_MS));
+            case "frame":
+                int dot = target != null ? target.lastIndexOf('.') : -1;
+                if (dot <= 0 || dot == target.length() - 1) {
+                    throw new IllegalArgumentException("Expected frame:<class>.<method>:<ms>: " + spec);
+                }
+                return new FrameTrigger(target.substring(0, dot), target.substring(dot + 1),
+                        (long) (value * Node.NANOS_PER_MS));
+            default:
+                throw new IllegalArgumentException("Unknown kind of trigger '" + kind +
+                        "'; expected cpu, gc or frame");
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package com.sk89q.warmroast;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Adds the captures that triggers save to the roasts that are served,
+ * keeping only the newest few in memory.
+ *
+ * <p>The newest capture takes the oldest one's place in the list, so the
+ * other roasts keep their IDs. A capture that is let go of is still on
+ * disk, and can be opened with {@code --open}.</p>
+ */
+class TriggerCaptures implements Consumer<WarmRoast> {
+
+    private final List<WarmRoast> roasts;
+    private final int limit;
+    private final Deque<WarmRoast> kept = new ArrayDeque<>();
+
+    /**
+     * Create a new list of captures.
+     *
+     * @param roasts the roasts that are served, which must allow setting
+     *     elements while they are read
+     * @param limit the number of captures to keep, which must be at least 1
+     */
+    TriggerCaptures(List<WarmRoast> roasts, int limit) {
+        this.roasts = roasts;
+        this.limit = limit;
+    }
+
+    @Override
+    public synchronized void accept(WarmRoast capture) {
+        if (kept.size() == limit) {
+            WarmRoast oldest = kept.removeFirst();
+            roasts.set(roasts.indexOf(oldest), capture);
+        } else {
+            roasts.add(capture);
+        }
+        kept.addLast(capture);
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ThreadInfo;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Checks a roast's triggers and, when one fires, samples at a higher rate
+ * for a while, then saves the time around it as a profile of its own.
+ *
+ * <p>The samples from before the trigger come from the roast's history,
+ * so the saved profile is rounded out to whole epochs of it (see
+ * {@link EpochRing}).</p>
+ *
+ * <p>Once a capture is saved, triggers are ignored for a cooldown, so a
+ * condition that lasts does not keep the roast at the higher rate.</p>
+ */
+class TriggerWatcher implements Runnable {
+
+    /**
+     * The time between polls of the triggers, in milliseconds.
+     */
+    static final long PERIOD = 250;
+
+    private final WarmRoast roast;
+    private final List<Trigger> triggers;
+    private final long fastInterval;
+    private final long duration;
+    private final long cooldown;
+    private final long before;
+    private final File directory;
+    private final boolean compress;
+    private final Consumer<WarmRoast> listener;
+    private Trigger fired;
+    private long firedAt;
+    private long firedCount;
+    private long quietUntil;
+
+    /**
+     * Create a new watcher.
+     *
+     * @param roast the roast
+     * @param triggers the triggers, which belong to this watcher
+     * @param fastInterval the interval to sample at once a trigger fires, in nanoseconds
+     * @param duration how long to sample at that rate, in milliseconds
+     * @param cooldown how long to ignore triggers for after a capture, in milliseconds
+     * @param before how much history from before the trigger to save, in milliseconds
+     * @param directory the directory to save profiles to
+     * @param compress whether to compress the profiles
+     * @param listener receives a roast for each profile that is saved, or
+     *     null if the profiles should only be saved
+     */
+    TriggerWatcher(WarmRoast roast, List<Trigger> triggers, long fastInterval,
+            long duration, long cooldown, long before, File directory, boolean compress,
+            Consumer<WarmRoast> listener) {
+        this.roast = roast;
+        this.triggers = new CopyOnWriteArrayList<>(triggers);
+        this.fastInterval = fastInterval;
+        this.duration = duration;
+        this.cooldown = cooldown;
+        this.before = before;
+        this.directory = directory;
+        this.compress = compress;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        long last = System.nanoTime();
+        while (!roast.isPastEndTime()) {
+            try {
+                Thread.sleep(PERIOD);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            poll(now - last);
+            last = now;
+
+            Trigger finished = null;
+            long finishedAt = 0;
+            long finishedCount = 0;
+            synchronized (this) {
+                long time = System.currentTimeMillis();
+                if (fired != null && time >= firedAt + duration) {
+                    finished = fired;
+                    finishedAt = firedAt;
+                    finishedCount = firedCount;
+                    fired = null;
+                    quietUntil = time + cooldown;
+                }
+            }
+            if (finished != null) {
+                roast.releaseInterval();
+                save(finished, finishedAt, roast.getCapturedCount() - finishedCount);
+            }
+        }
+    }
+
+    /**
+     * Pass a sampled thread to the triggers. This is called on the
+     * aggregator thread, with the roast locked.
+     *
+     * @param thread the thread
+     * @param weight the time the sample stands for, in nanoseconds
+     */
+    void sample(ThreadInfo thread, long weight) {
+        for (Trigger trigger : triggers) {
+            if (trigger.sample(thread, weight)) {
+                fire(trigger);
+            }
+        }
+    }
+
+    private void poll(long elapsed) {
+        for (Trigger trigger : triggers) {
+            try {
+                if (trigger.poll(roast.getConnection(), roast.getThreadBean(), elapsed)) {
+                    fire(trigger);
+                }
+            } catch (IOException | RuntimeException e) {
+                // JMX proxies throw unchecked exceptions once the VM is gone
+                System.err.println("Failed to check the " + trigger.getName() + " trigger of " +
+                        roast.getName() + ", which is now off: " + e);
+                triggers.remove(trigger);
+            }
+        }
+    }
+
+    private void fire(Trigger trigger) {
+        synchronized (this) {
+            long time = System.currentTimeMillis();
+            if (fired != null || time < quietUntil) {
+                return;
+            }
+            fired = trigger;
+            firedAt = time;
+            firedCount = roast.getCapturedCount();
+        }
+        roast.holdInterval(fastInterval);
+        System.err.println("The " + trigger.getName() + " trigger of " + roast.getName() +
+                " fired; sampling every " + (fastInterval / (double) Node.NANOS_PER_MS) +
+                "ms for " + (duration / 1000.0) + "s.");
+    }
+
+    private void save(Trigger trigger, long firedAt, long sampleCount) {
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(firedAt)) +
+                "-" + roast.getName().replaceAll("[^A-Za-z0-9._-]+", "_") +
+                "-" + trigger.getName() + ".wrp";
+        File file = new File(directory, name);
+        TimeRange range = new TimeRange(firedAt - before, System.currentTimeMillis());
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory.getAbsolutePath());
+            }
+            List<ThreadNode> threads;
+            synchronized (roast) {
+                threads = ProfileFile.snapshot(roast.getFrames(), roast.getData(range).values());
+            }
+            ProfileFile.save(file, roast.getFrames(), threads, sampleCount, fastInterval, compress);
+            System.err.println("Saved the capture of the " + trigger.getName() + " trigger of " +
+                    roast.getName() + " to " + file.getAbsolutePath());
+            if (listener == null) {
+                return;
+            }
+
+            WarmRoast capture = new WarmRoast(null, roast.getMapping(), roast.getFrames(),
+                    fastInterval, 1);
+            capture.setName(roast.getName() + ": " + trigger.getName() + " trigger at " +
+                    String.format("%tT", firedAt));
+            ProfileFile.load(capture, file);
+            listener.accept(capture);
+        } catch (IOException e) {
+            System.err.println("Failed to save the capture of the " + trigger.getName() +
+                    " trigger to " + file.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+}
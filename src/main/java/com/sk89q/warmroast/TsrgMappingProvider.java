@@ -0,0 +1,108 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads TSRG files, as used by MCPConfig, in either version.
+ *
+ * <p>Classes are lines of an obfuscated and a mapped name, and their
+ * methods follow on lines indented by one tab. In TSRG v2, which starts
+ * with a header naming several namespaces, names are mapped from the first
+ * namespace to the second. If MCP's methods.csv is given, method names
+ * are further mapped through it, as they are for SRG files.</p>
+ */
+class TsrgMappingProvider implements MappingProvider {
+
+    private final File file;
+    private final File methodsFile;
+
+    /**
+     * Create a new provider.
+     *
+     * @param file the TSRG file
+     * @param methodsFile methods.csv, or null
+     */
+    TsrgMappingProvider(File file, File methodsFile) {
+        this.file = file;
+        this.methodsFile = methodsFile;
+    }
+
+    @Override
+    public List<File> getFiles() {
+        return methodsFile != null
+                ? Arrays.asList(file, methodsFile)
+                : Collections.singletonList(file);
+    }
+
+    @Override
+    public void read(MappingBuilder builder) throws IOException {
+        Map<String, String> methodNames = Collections.emptyMap();
+        if (methodsFile != null) {
+            methodNames = SrgMappingProvider.readMethodNames(methodsFile);
+            for (Map.Entry<String, String> entry : methodNames.entrySet()) {
+                builder.addMethodName(entry.getKey(), entry.getValue());
+            }
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            String owner = null;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                if (first) {
+                    first = false;
+                    if (line.startsWith("tsrg2 ")) {
+                        continue;
+                    }
+                }
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                if (line.charAt(0) != '\t') {
+                    String[] parts = line.split(" ");
+                    if (parts.length >= 2) {
+                        owner = parts[0].replace('/', '.');
+                        builder.addClass(owner, parts[1].replace('/', '.'));
+                    } else {
+                        owner = null;
+                    }
+                } else if (owner != null && line.length() > 1 && line.charAt(1) != '\t') {
+                    // A method is "name (descriptor) mapped"; a field has no descriptor
+                    String[] parts = line.substring(1).split(" ");
+                    if (parts.length >= 3 && parts[1].startsWith("(")) {
+                        String name = methodNames.get(parts[2]);
+                        builder.addMethod(owner, parts[0], name != null ? name : parts[2]);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+/**
+ * A way of adding up a roast's samples. Each view has trees of its own.
+ */
+enum View {
+
+    /**
+     * Every sample, weighted by the wall time it stands for.
+     */
+    WALL("wall", "wall time", "ms"),
+    /**
+     * Samples weighted by the CPU time their thread used since the
+     * previous sample, leaving out threads idle in waiting frames.
+     */
+    CPU("cpu", "CPU time", "ms"),
+    /**
+     * Samples of runnable threads, leaving out threads idle in waiting
+     * frames, weighted by wall time.
+     */
+    RUNNABLE("runnable", "runnable threads", "ms"),
+    /**
+     * Every sample not in {@link #RUNNABLE}: threads that were blocked,
+     * waiting, or idle in waiting frames, weighted by wall time.
+     */
+    WAITING("waiting", "blocked and waiting threads", "ms"),
+    /**
+     * Samples of threads blocked on a monitor or parked acquiring a lock,
+     * in one tree per lock class that merges every instance of it and every
+     * thread blocked on one, weighted by the time the thread spent blocked
+     * since the previous sample.
+     *
+     * @see LockContention
+     */
+    CONTENTION("contention", "lock contention", "ms"),
+    /**
+     * Samples weighted by the bytes their thread allocated since the
+     * previous sample. Its trees count bytes rather than nanoseconds.
+     */
+    ALLOCATION("alloc", "allocated bytes", "MB");
+
+    private final String name;
+    private final String description;
+    private final String unit;
+
+    View(String name, String description, String unit) {
+        this.name = name;
+        this.description = description;
+        this.unit = unit;
+    }
+
+    /**
+     * Get the name used in requests.
+     *
+     * @return the name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get a description of what the view counts, for pages.
+     *
+     * @return the description
+     */
+    String getDescription() {
+        return description;
+    }
+
+    /**
+     * Get the unit of a tree's totals once divided by a million: milliseconds
+     * for views of time, and megabytes for views of bytes.
+     *
+     * @return the unit
+     */
+    String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Find a view by the name used in requests.
+     *
+     * @param name the name
+     * @return the view, or null if there is none by that name
+     */
+    static View forName(String name) {
+        for (View view : values()) {
+            if (view.name.equals(name)) {
+                return view;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * WarmRoast
+ * Copyright (C) 2013 Albert Pham <http://www.sk89q.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.sk89q.warmroast;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the VMs being profiled, as JSON:
+ *
+ * <pre>
+ * {"vms":[{"id":0,"name":"12345 net.md_5.bungee.Bootstrap","time":1500000,
+ *   "views":["wall"]}]}
+ * </pre>
+ *
+ * <p>The <code>id</code> is what other endpoints take as their
+ * <code>vm</code> parameter, <code>time</code> is the total time
+ * sampled across threads, in microseconds, and <code>views</code> are the
+ * names of the {@link View}s recorded.</p>
+ */
+public class VmListServlet extends HttpServlet {
+
+    private static final long serialVersionUID = -2207316021738463520L;
+
+    private final List<WarmRoast> roasts;
+
+    public VmListServlet(List<WarmRoast> roasts) {
+        this.roasts = roasts;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("application/json; charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        RenderBuffer buffer = new RenderBuffer();
+        try (Writer w = Servlets.openWriter(request, response)) {
+            w.write("{\"vms\":[");
+            for (int i = 0; i < roasts.size(); i++) {
+                WarmRoast roast = roasts.get(i);
+                long time = 0;
+                List<View> views;
+                synchronized (roast) {
+                    for (ThreadNode node : roast.getData().values()) {
+                        time += node.getTotalTime();
+                    }
+                    views = new ArrayList<>(roast.getViews());
+                }
+                if (i > 0) {
+                    w.write(',');
+                }
+                w.write("{\"id\":");
+                buffer.writeLong(w, i);
+                w.write(",\"name\":\"");
+                w.write(Node.escapeJson(roast.getName()));
+                w.write("\",\"time\":");
+                buffer.writeLong(w, time / 1000);
+                w.write(",\"views\":[");
+                for (int j = 0; j < views.size(); j++) {
+                    if (j > 0) {
+                        w.write(',');
+                    }
+                    w.write('"');
+                    w.write(views.get(j).getName());
+                    w.write('"');
+                }
+                w.write("]}");
+            }
+            w.write("]}");
+        }
+    }
+}
@@ -22,11 +22,6 @@ import com.google.common.collect.Iterables;
 import com.sun.tools.attach.AgentInitializationException;
 import com.sun.tools.attach.AgentLoadException;
 import com.sun.tools.attach.VirtualMachine;
-import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.server.handler.HandlerList;
-import org.eclipse.jetty.server.handler.ResourceHandler;
-import org.eclipse.jetty.servlet.ServletContextHandler;
-import org.eclipse.jetty.servlet.ServletHolder;
 
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
@@ -34,37 +29,306 @@ import javax.management.ObjectName;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
-import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.concurrent.locks.LockSupport;
 
-public class WarmRoast extends TimerTask {
+public class WarmRoast {
 
-    private final int interval;
+    private final long interval;
     private final VirtualMachine vm;
-    private final Timer timer = new Timer("Roast Pan", true);
-    private final McpMapping mapping = new McpMapping();
+    private final Sampler sampler;
+    private final McpMapping mapping;
+    private final FrameTable frames;
+    private final RevisionCounter revisions = new RevisionCounter();
     private final SortedMap<String, ThreadNode> nodes = new TreeMap<>();
+    private final Map<View, SortedMap<String, ThreadNode>> views = new EnumMap<>(View.class);
+    private final Map<View, EpochRing> histories = new EnumMap<>(View.class);
+    private final RingBuffer<Sample> samples;
+    private final Thread aggregator = new Thread(this::aggregate, "Roast Aggregator");
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong aggregated = new AtomicLong();
+    private final Histogram dumpTimes = Histogram.forLatency();
+    private final Histogram aggregationTimes = Histogram.forLatency();
+    private final Object saveLock = new Object();
     private MBeanServerConnection mbsc;
     private ThreadMXBean threadBean;
-    private String filterThread;
+    private String name = "VM";
+    private ThreadSelection selection;
+    private long[] selectedIds;
+    private long selectedAt;
+    private StackFolder folder;
+    private StackTraceElement[] foldedStack;
+    private int foldedLength;
+    private boolean compactTree;
+    private boolean agentMode;
+    private AgentReceiver agent;
     private long endTime = -1;
+    private File foldedOutput;
+    private File profileOutput;
+    private boolean compressOutput;
+    private long outputInterval;
+    private long epochLength;
+    private int epochs;
+    private boolean cpuMode;
+    private Map<Long, Long> lastCpuTimes = new HashMap<>();
+    private boolean collapseIdle;
+    private boolean allocationMode;
+    private Map<Long, Long> lastAllocatedBytes = new HashMap<>();
+    private LockContention contention;
+    private TriggerWatcher triggers;
+    private RateController rate;
+    private volatile boolean intervalHeld;
     
-    public WarmRoast(VirtualMachine vm, int interval) {
+    /**
+     * Create a new roast.
+     *
+     * @param vm the VM to sample
+     * @param interval the interval between samples, in nanoseconds
+     * @param bufferSize the number of samples that can wait for aggregation
+     */
+    public WarmRoast(VirtualMachine vm, long interval, int bufferSize) {
+        this(vm, new McpMapping(), new FrameTable(), interval, bufferSize);
+    }
+
+    /**
+     * Create a new roast that shares mappings and frames with others.
+     *
+     * @param vm the VM to sample
+     * @param mapping the mappings
+     * @param frames the frame table
+     * @param interval the interval between samples, in nanoseconds
+     * @param bufferSize the number of samples that can wait for aggregation
+     */
+    public WarmRoast(VirtualMachine vm, McpMapping mapping, FrameTable frames,
+            long interval, int bufferSize) {
         this.vm = vm;
+        this.mapping = mapping;
+        this.frames = frames;
         this.interval = interval;
+        this.sampler = new Sampler(this::capture, interval);
+        this.samples = new RingBuffer<>(bufferSize);
+        views.put(View.WALL, nodes);
+        aggregator.setDaemon(true);
+    }
+
+    /**
+     * Get the name the VM is shown under.
+     *
+     * @return the name
+     */
+    String getName() {
+        return name;
+    }
+
+    void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Sample only some threads, fetching only their stacks.
+     *
+     * @param selection the selection, or null to sample every thread
+     */
+    void setThreadSelection(ThreadSelection selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * Shorten stacks before they are logged, and capture them only to the
+     * folder's maximum depth.
+     *
+     * @param folder the folder, or null to log whole stacks
+     */
+    void setStackFolder(StackFolder folder) {
+        this.folder = folder;
+    }
+
+    void setCompactTree(boolean compactTree) {
+        this.compactTree = compactTree;
+    }
+
+    /**
+     * Also record the CPU time of each thread and its state, for the
+     * {@link View#CPU}, {@link View#RUNNABLE} and {@link View#WAITING} views.
+     *
+     * @param cpuMode true to record them
+     */
+    void setCpuMode(boolean cpuMode) {
+        this.cpuMode = cpuMode;
+        for (View view : new View[] { View.CPU, View.RUNNABLE, View.WAITING }) {
+            if (cpuMode) {
+                views.put(view, new TreeMap<String, ThreadNode>());
+            } else {
+                views.remove(view);
+            }
+        }
+    }
+
+    /**
+     * Log threads that are idle in a known waiting frame (see
+     * {@link IdleFrames}) as that frame alone, rather than walking their
+     * whole stack into the wall and waiting trees on every sample.
+     *
+     * @param collapseIdle true to log idle threads as one frame
+     */
+    void setCollapseIdle(boolean collapseIdle) {
+        this.collapseIdle = collapseIdle;
+    }
+
+    /**
+     * Also record the bytes each thread allocates, for the
+     * {@link View#ALLOCATION} view.
+     *
+     * @param allocationMode true to record them
+     */
+    void setAllocationMode(boolean allocationMode) {
+        this.allocationMode = allocationMode;
+        if (allocationMode) {
+            views.put(View.ALLOCATION, new TreeMap<String, ThreadNode>());
+        } else {
+            views.remove(View.ALLOCATION);
+        }
+    }
+
+    /**
+     * Also dump locked monitors and synchronizers and record which locks
+     * block which threads, for the {@link View#CONTENTION} view.
+     *
+     * @param contentionMode true to record them
+     */
+    void setContentionMode(boolean contentionMode) {
+        if (contentionMode) {
+            contention = new LockContention(frames);
+            views.put(View.CONTENTION, new TreeMap<String, ThreadNode>());
+        } else {
+            contention = null;
+            views.remove(View.CONTENTION);
+        }
     }
 
-    void setFilterThread(String filterThread) {
-        this.filterThread = filterThread;
+    /**
+     * Get the summary of lock contention, if it is recorded. Callers
+     * synchronize on this roast.
+     *
+     * @return the summary, or null
+     */
+    LockContention getContention() {
+        return contention;
+    }
+
+    /**
+     * Get the views that are recorded.
+     *
+     * @return the views
+     */
+    Set<View> getViews() {
+        return views.keySet();
+    }
+
+    void setAgentMode(boolean agentMode) {
+        this.agentMode = agentMode;
+    }
+
+    void setFoldedOutput(File foldedOutput) {
+        this.foldedOutput = foldedOutput;
+    }
+
+    /**
+     * Save the profile to a file when sampling stops, on exit and,
+     * if the interval is positive, periodically.
+     *
+     * @param file the file
+     * @param compress whether to compress the file
+     * @param interval the time between saves, in milliseconds
+     */
+    void setProfileOutput(File file, boolean compress, long interval) {
+        this.profileOutput = file;
+        this.compressOutput = compress;
+        this.outputInterval = interval;
+    }
+
+    /**
+     * Keep recent samples by epoch, so that windows of time can be viewed.
+     *
+     * @param epochLength the length of an epoch, in milliseconds
+     * @param epochs the number of epochs to keep, or 0 to keep none
+     */
+    void setHistory(long epochLength, int epochs) {
+        this.epochLength = epochLength;
+        this.epochs = epochs;
+    }
+
+    /**
+     * Get the history of a view.
+     *
+     * @param view the view
+     * @return the history, or null if none has been recorded
+     */
+    EpochRing getHistory(View view) {
+        return histories.get(view);
+    }
+
+    /**
+     * Tune the interval to spend at most a fraction of wall time capturing,
+     * never sampling more often than the interval this roast was created
+     * with.
+     *
+     * @param budget the fraction, such as 0.01, or 0 for a fixed interval
+     * @see RateController
+     */
+    void setMaxOverhead(double budget) {
+        rate = budget > 0 ? new RateController(budget, interval) : null;
+    }
+
+    /**
+     * Get the controller that tunes the interval.
+     *
+     * @return the controller, or null if the interval is fixed
+     */
+    RateController getRateController() {
+        return rate;
+    }
+
+    /**
+     * Sample at a fixed interval until {@link #releaseInterval()}, whatever
+     * the overhead budget.
+     *
+     * @param interval the interval, in nanoseconds
+     */
+    void holdInterval(long interval) {
+        intervalHeld = true;
+        sampler.setInterval(interval);
+    }
+
+    /**
+     * Go back to the interval from before {@link #holdInterval(long)}.
+     */
+    void releaseInterval() {
+        intervalHeld = false;
+        sampler.setInterval(rate != null ? rate.getInterval() : interval);
+    }
+
+    void setTriggerWatcher(TriggerWatcher triggers) {
+        this.triggers = triggers;
     }
 
     void setEndTime(long l) {
@@ -74,22 +338,236 @@ public class WarmRoast extends TimerTask {
     Map<String, ThreadNode> getData() {
         return nodes;
     }
+
+    /**
+     * Get the trees of every thread for a range of time. Callers
+     * synchronize on this roast while they use the trees.
+     *
+     * @param range the range, or null for the whole session
+     * @return the trees by thread name, which are empty if the range is
+     *     older than the history that is kept
+     */
+    Map<String, ThreadNode> getData(TimeRange range) {
+        return getData(View.WALL, range);
+    }
+
+    /**
+     * Get the trees of every thread in a view for a range of time. Callers
+     * synchronize on this roast while they use the trees.
+     *
+     * @param view the view
+     * @param range the range, or null for the whole session
+     * @return the trees by thread name, which are empty if the view is not
+     *     recorded or the range is older than the history that is kept
+     */
+    Map<String, ThreadNode> getData(View view, TimeRange range) {
+        SortedMap<String, ThreadNode> data = views.get(view);
+        EpochRing history = histories.get(view);
+        if (data == null) {
+            return Collections.emptySortedMap();
+        } else if (range == null) {
+            return data;
+        } else if (history == null) {
+            return Collections.emptySortedMap();
+        } else {
+            return history.query(range.getFrom(), range.getTo(), frames);
+        }
+    }
     
-    private Node getNode(String name) {
+    /**
+     * Copy the trees of every thread in a view for a range of time, so that
+     * they can be rendered and written out without holding this roast's
+     * lock. The aggregator needs that lock, so a render that held it while
+     * a slow client read the response would fill the sample buffer, and
+     * samples would be dropped.
+     *
+     * @param view the view
+     * @param range the range, or null for the whole session
+     * @param threadName the only thread to copy, or null for every thread
+     * @return the copies by thread name
+     */
+    SortedMap<String, ThreadNode> snapshot(View view, TimeRange range, String threadName) {
+        return snapshot(view, range, threadName,
+                thread -> CompactCallTree.copyOf(thread.getTree(), frames));
+    }
+
+    /**
+     * Copy part of the trees of every thread in a view for a range of time,
+     * as {@link #snapshot(View, TimeRange, String)} does: the nodes on a
+     * path from each root and the given number of levels below it.
+     *
+     * @param view the view
+     * @param range the range, or null for the whole session
+     * @param threadName the only thread to copy, or null for every thread
+     * @param path frame IDs from each root
+     * @param levels the number of levels to copy below the end of the path
+     * @param min the share of a thread's time that a node needs for its
+     *     grandchildren to be copied, from 0 to 1
+     * @return the copies by thread name
+     * @see CompactCallTree#copyOf(StackTraceNode, int[], int, long, FrameTable)
+     */
+    SortedMap<String, ThreadNode> snapshot(View view, TimeRange range, String threadName,
+            int[] path, int levels, double min) {
+        return snapshot(view, range, threadName, thread -> CompactCallTree.copyOf(
+                thread.getTree().getRoot(), path, levels,
+                (long) (thread.getTotalTime() * min), frames));
+    }
+
+    private synchronized SortedMap<String, ThreadNode> snapshot(View view, TimeRange range,
+            String threadName, Function<ThreadNode, CallTree> copier) {
+        SortedMap<String, ThreadNode> copies = new TreeMap<>();
+        for (ThreadNode thread : getData(view, range).values()) {
+            if (threadName == null || threadName.equals(thread.getName())) {
+                // Windows of history are built for each query and never
+                // change afterwards, so only the session's trees are copied
+                copies.put(thread.getName(), range != null ? thread
+                        : new ThreadNode(thread.getName(), copier.apply(thread)));
+            }
+        }
+        return copies;
+    }
+
+    boolean isPastEndTime() {
+        return endTime >= 0 && endTime <= System.currentTimeMillis();
+    }
+
+    ThreadNode getNode(String name) {
+        return getNode(View.WALL, name);
+    }
+
+    private ThreadNode getNode(View view, String name) {
+        SortedMap<String, ThreadNode> nodes = views.get(view);
         ThreadNode node = nodes.get(name);
         if (node == null) {
-            node = new ThreadNode(name);
+            CallTree tree = compactTree
+                    ? new CompactCallTree(frames, revisions)
+                    : new ObjectCallTree(frames, revisions);
+            node = new ThreadNode(name, tree);
             nodes.put(name, node);
         }
         return node;
     }
     
+    FrameTable getFrames() {
+        return frames;
+    }
+
+    RevisionCounter getRevisions() {
+        return revisions;
+    }
+
+    void recordCaptured(long count) {
+        captured.addAndGet(count);
+        aggregated.addAndGet(count);
+    }
+
+    long getCapturedCount() {
+        return captured.get();
+    }
+
+    long getAggregatedCount() {
+        return aggregated.get();
+    }
+
+    long getDroppedCount() {
+        return samples.getDropped();
+    }
+
+    int getBufferedCount() {
+        return samples.size();
+    }
+
+    Sampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Get how long each thread dump took, in nanoseconds.
+     *
+     * @return the histogram
+     */
+    Histogram getDumpTimes() {
+        return dumpTimes;
+    }
+
+    /**
+     * Get how long each sample took to add to the trees, in nanoseconds.
+     *
+     * @return the histogram
+     */
+    Histogram getAggregationTimes() {
+        return aggregationTimes;
+    }
+
+    /**
+     * Count the nodes in the trees of every view.
+     *
+     * @return the number of nodes
+     */
+    synchronized long getTreeSize() {
+        long size = 0;
+        for (SortedMap<String, ThreadNode> data : views.values()) {
+            for (ThreadNode node : data.values()) {
+                size += node.getTree().size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the heap used by the trees of every view.
+     *
+     * @return the estimate, in bytes
+     * @see CallTree#estimateBytes()
+     */
+    synchronized long estimateTreeBytes() {
+        long bytes = 0;
+        for (SortedMap<String, ThreadNode> data : views.values()) {
+            for (ThreadNode node : data.values()) {
+                bytes += node.getTree().estimateBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimate the heap used by the history of every view.
+     *
+     * @return the estimate, in bytes
+     * @see EpochRing#estimateBytes()
+     */
+    synchronized long estimateHistoryBytes() {
+        long bytes = 0;
+        for (EpochRing history : histories.values()) {
+            bytes += history.estimateBytes();
+        }
+        return bytes;
+    }
+
     McpMapping getMapping() {
         return mapping;
     }
 
+    long getInterval() {
+        return interval;
+    }
+
+    MBeanServerConnection getConnection() {
+        return mbsc;
+    }
+
+    ThreadMXBean getThreadBean() {
+        return threadBean;
+    }
+
     void connect()
             throws IOException, AgentLoadException, AgentInitializationException {
+        if (agentMode) {
+            agent = new AgentReceiver(this);
+            agent.attach(vm, interval, rate != null ? rate.getBudget() : 0, selection, folder);
+            return;
+        }
+
         // Load the agent
         String connectorAddr = vm.getAgentProperties().getProperty(
                 "com.sun.management.jmxremote.localConnectorAddress");
@@ -105,36 +583,186 @@ public class WarmRoast extends TimerTask {
         // Connect
         JMXServiceURL serviceURL = new JMXServiceURL(connectorAddr);
         JMXConnector connector = JMXConnectorFactory.connect(serviceURL);
-        mbsc = connector.getMBeanServerConnection();
+        connect(connector.getMBeanServerConnection());
+    }
+
+    /**
+     * Sample the VM behind an MBean server connection, such as this VM's
+     * own platform MBean server, instead of attaching to one.
+     *
+     * @param mbsc the connection
+     * @throws IOException on I/O error
+     */
+    void connect(MBeanServerConnection mbsc) throws IOException {
+        this.mbsc = mbsc;
         try {
             threadBean = getThreadMXBean();
         } catch (MalformedObjectNameException e) {
             throw new IOException("Bad MX bean name", e);
         }
+
+        if (cpuMode || (selection != null && selection.needsCpuTimes())) {
+            if (!threadBean.isThreadCpuTimeSupported()) {
+                System.err.println(name + " can't measure thread CPU time, so the CPU view will be empty " +
+                        "and top threads are picked in no particular order.");
+            } else if (!threadBean.isThreadCpuTimeEnabled()) {
+                System.err.println("Turning on thread CPU time measurement in " + name + ".");
+                threadBean.setThreadCpuTimeEnabled(true);
+            }
+        }
+
+        if (allocationMode) {
+            if (!(threadBean instanceof com.sun.management.ThreadMXBean)
+                    || !((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+                System.err.println(name + " can't measure allocated bytes, so the allocation view will be empty.");
+                allocationMode = false;
+            } else if (!((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled()) {
+                System.err.println("Turning on thread allocation measurement in " + name + ".");
+                ((com.sun.management.ThreadMXBean) threadBean).setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+
+        if (contention != null) {
+            if (!threadBean.isThreadContentionMonitoringSupported()) {
+                System.err.println(name + " can't measure blocked time, so contention is weighted by samples.");
+            } else if (!threadBean.isThreadContentionMonitoringEnabled()) {
+                System.err.println("Turning on thread contention monitoring in " + name + ".");
+                threadBean.setThreadContentionMonitoringEnabled(true);
+            }
+        }
+    }
+
+    /**
+     * Start sampling.
+     *
+     * @param scheduler the scheduler to sample on, unless sampling with an agent
+     */
+    void start(SamplingScheduler scheduler) {
+        if (agent != null) {
+            Thread receiverThread = new Thread(agent, "Roast Agent Receiver");
+            receiverThread.setDaemon(true);
+            receiverThread.start();
+        } else {
+            aggregator.start();
+            scheduler.add(sampler);
+        }
+
+        if (triggers != null) {
+            Thread triggerThread = new Thread(triggers, "Roast Trigger");
+            triggerThread.setDaemon(true);
+            triggerThread.start();
+        }
+
+        if (profileOutput != null && outputInterval > 0) {
+            Thread saverThread = new Thread(this::saveProfilePeriodically, "Roast Saver");
+            saverThread.setDaemon(true);
+            saverThread.start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveOutputs, "Roast Saver"));
     }
 
-    void start(InetSocketAddress address) throws Exception {
-        timer.scheduleAtFixedRate(this, interval, interval);
+    /**
+     * Record a sampled stack, given as frame IDs, in a thread's tree and in
+     * the history. Callers synchronize on this roast.
+     *
+     * @param threadName the thread
+     * @param frameIds the frame IDs, outermost frame first
+     * @param length the number of frame IDs to use
+     * @param time the time the stack stands for, in nanoseconds
+     * @param now when it was sampled, in milliseconds since the epoch
+     */
+    void log(String threadName, int[] frameIds, int length, long time, long now) {
+        ThreadNode node = getNode(threadName);
+        record(View.WALL, node, node.log(frameIds, length, time), time, now);
+    }
 
-        Server server = new Server(address);
+    private void log(View view, String threadName, StackTraceElement[] stack,
+            long time, long now) {
+        ThreadNode node = getNode(view, threadName);
+        int leaf;
+        if (folder != null) {
+            // A thread's stack is logged to several views, but folded once
+            if (stack != foldedStack) {
+                foldedLength = folder.fold(stack, frames);
+                foldedStack = stack;
+            }
+            leaf = node.log(folder.getPath(), foldedLength, time);
+        } else {
+            leaf = node.log(stack, time);
+        }
+        record(view, node, leaf, time, now);
+    }
 
-        ServletContextHandler context = new ServletContextHandler();
-        context.setContextPath("/");
-        context.addServlet(new ServletHolder(new DataViewServlet(this)), "/stack");
+    private void record(View view, ThreadNode node, int leaf, long time, long now) {
+        if (epochs > 0) {
+            EpochRing history = histories.get(view);
+            if (history == null) {
+                history = new EpochRing(epochLength, epochs);
+                histories.put(view, history);
+            }
+            history.record(node, leaf, time, now);
+        }
+    }
 
-        ResourceHandler resources = new ResourceHandler();
-        String filesDir = WarmRoast.class.getResource("/www").toExternalForm();
-        resources.setResourceBase(filesDir);
-        resources.setDirectoriesListed(true);
-        resources.setWelcomeFiles(new String[]{ "index.html" });
+    /**
+     * Write every thread's tree, or only one thread's, as folded stacks.
+     *
+     * @param out the writer
+     * @param view the view
+     * @param range the range of time, or null for the whole session
+     * @param threadName the thread, or null for all threads
+     * @throws IOException on I/O error
+     * @see FoldedStackWriter
+     */
+    void writeFolded(Writer out, View view, TimeRange range, String threadName)
+            throws IOException {
+        FoldedStackWriter writer = new FoldedStackWriter(out, mapping);
+        for (ThreadNode node : snapshot(view, range, threadName).values()) {
+            writer.write(node);
+        }
+    }
 
-        HandlerList handlers = new HandlerList();
-        handlers.addHandler(context);
-        handlers.addHandler(resources);
-        server.setHandler(handlers);
+    /**
+     * Write the outputs requested on the command line, if any.
+     */
+    void saveOutputs() {
+        saveProfile();
+        if (foldedOutput != null) {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(foldedOutput), StandardCharsets.UTF_8))) {
+                writeFolded(out, View.WALL, null, null);
+                System.err.println("Wrote folded stacks to " + foldedOutput.getAbsolutePath());
+            } catch (IOException e) {
+                System.err.println("Failed to write folded stacks to " +
+                        foldedOutput.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+    }
 
-        server.start();
-        server.join();
+    private void saveProfile() {
+        if (profileOutput != null) {
+            // Only the copy of the trees holds up sampling, but two saves
+            // at once would write the same temporary file
+            synchronized (saveLock) {
+                try {
+                    ProfileFile.save(this, profileOutput, compressOutput);
+                } catch (IOException e) {
+                    System.err.println("Failed to save the profile to " +
+                            profileOutput.getAbsolutePath() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void saveProfilePeriodically() {
+        while (!isPastEndTime()) {
+            try {
+                Thread.sleep(outputInterval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            saveProfile();
+        }
     }
 
     private ThreadMXBean getThreadMXBean() 
@@ -145,38 +773,216 @@ public class WarmRoast extends TimerTask {
             throw new IOException("No thread MX bean found");
         }
 
-        return ManagementFactory.newPlatformMXBeanProxy(
-                mbsc, name.toString(), ThreadMXBean.class);
+        try {
+            // HotSpot's bean can fetch every thread's CPU time in one call
+            return ManagementFactory.newPlatformMXBeanProxy(
+                    mbsc, name.toString(), com.sun.management.ThreadMXBean.class);
+        } catch (IllegalArgumentException e) {
+            return ManagementFactory.newPlatformMXBeanProxy(
+                    mbsc, name.toString(), ThreadMXBean.class);
+        }
     }
 
-    @Override
-    public synchronized void run() {
-        if (endTime >= 0) {
-            if (endTime <= System.currentTimeMillis()) {
-                cancel();
-                System.err.println("Sampling has stopped.");
-                return;
+    private static long[] getThreadIds(ThreadInfo[] threads) {
+        long[] ids = new long[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            ids[i] = threads[i].getThreadId();
+        }
+        return ids;
+    }
+
+    private long[] getCpuTimes(long[] ids) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadCpuTime(ids);
+        }
+        long[] times = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            times[i] = threadBean.getThreadCpuTime(ids[i]);
+        }
+        return times;
+    }
+
+    /**
+     * List the target's threads without their stacks and pick the ones to
+     * sample.
+     *
+     * @return the IDs of the threads
+     */
+    private long[] selectThreads() {
+        long[] ids = threadBean.getAllThreadIds();
+        String[] names = null;
+        if (selection.needsNames()) {
+            ThreadInfo[] infos = threadBean.getThreadInfo(ids, 0);
+            names = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                names[i] = infos[i] != null ? infos[i].getThreadName() : null;
             }
         }
+        long[] cpuTimes = selection.needsCpuTimes() ? getCpuTimes(ids) : null;
+        return selection.select(ids, names, null, cpuTimes);
+    }
+
+    private static ThreadInfo[] removeDead(ThreadInfo[] threads) {
+        int alive = 0;
+        for (ThreadInfo thread : threads) {
+            if (thread != null) {
+                threads[alive++] = thread;
+            }
+        }
+        return alive < threads.length ? Arrays.copyOf(threads, alive) : threads;
+    }
+
+    /**
+     * Capture the target's threads and queue them for the aggregator.
+     *
+     * <p>This runs on the sampler thread and never waits on the tree, so a
+     * slow render cannot delay sampling.</p>
+     *
+     * @param weight the time the sample stands for, in nanoseconds
+     * @return false if sampling should stop
+     */
+    boolean capture(long weight) {
+        if (isPastEndTime()) {
+            System.err.println("Sampling has stopped.");
+            saveOutputs();
+            return false;
+        }
         
-        ThreadInfo[] threadDumps = threadBean.dumpAllThreads(false, false);
-        for (ThreadInfo threadInfo : threadDumps) {
+        boolean locks = contention != null;
+        long start = System.nanoTime();
+        ThreadInfo[] threadDumps;
+        int depth = folder != null && folder.getMaxDepth() > 0
+                ? folder.getMaxDepth() : Integer.MAX_VALUE;
+        if (selection == null && (depth == Integer.MAX_VALUE || locks)) {
+            threadDumps = threadBean.dumpAllThreads(locks, locks);
+        } else if (selection == null) {
+            threadDumps = removeDead(threadBean.getThreadInfo(threadBean.getAllThreadIds(), depth));
+        } else {
+            if (selectedIds == null || start - selectedAt >= selection.getRefreshInterval()) {
+                selectedIds = selectThreads();
+                selectedAt = start;
+            }
+            // Only the variant without locks takes a depth before Java 10,
+            // so with locks the folder cuts stacks short instead
+            threadDumps = removeDead(locks
+                    ? threadBean.getThreadInfo(selectedIds, true, true)
+                    : threadBean.getThreadInfo(selectedIds, depth));
+        }
+        dumpTimes.record(System.nanoTime() - start);
+        long[] ids = cpuMode || allocationMode ? getThreadIds(threadDumps) : null;
+        long[] cpuTimes = cpuMode ? getCpuTimes(ids) : null;
+        // Only HotSpot's bean measures allocation, which connect() checked
+        long[] allocatedBytes = allocationMode
+                ? ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(ids) : null;
+        if (rate != null) {
+            // The controller keeps learning while a trigger holds the interval
+            long next = rate.update(System.nanoTime() - start, threadDumps.length);
+            if (!intervalHeld) {
+                sampler.setInterval(next);
+            }
+        }
+        captured.incrementAndGet();
+        if (samples.offer(new Sample(threadDumps, cpuTimes, allocatedBytes,
+                weight, System.currentTimeMillis()))) {
+            LockSupport.unpark(aggregator);
+        }
+        return true;
+    }
+
+    private void aggregate() {
+        while (true) {
+            if (!aggregateNext()) {
+                LockSupport.parkNanos(this, interval);
+            }
+        }
+    }
+
+    /**
+     * Add the oldest captured sample to the trees, on the calling thread.
+     *
+     * @return false if no sample was waiting
+     */
+    boolean aggregateNext() {
+        Sample sample = samples.poll();
+        if (sample == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        aggregate(sample);
+        aggregationTimes.record(System.nanoTime() - start);
+        aggregated.incrementAndGet();
+        return true;
+    }
+
+    private synchronized void aggregate(Sample sample) {
+        revisions.increment();
+        ThreadInfo[] threads = sample.getThreads();
+        long[] cpuTimes = sample.getCpuTimes();
+        Map<Long, Long> seenCpuTimes = cpuTimes != null ? new HashMap<Long, Long>() : null;
+        long[] allocatedBytes = sample.getAllocatedBytes();
+        Map<Long, Long> seenAllocatedBytes = allocatedBytes != null ? new HashMap<Long, Long>() : null;
+        long time = sample.getTime();
+        long now = sample.getCapturedAt();
+        long[] contendedTimes = contention != null
+                ? contention.sample(threads, time) : null;
+        for (int i = 0; i < threads.length; i++) {
+            ThreadInfo threadInfo = threads[i];
             String threadName = threadInfo.getThreadName();
             StackTraceElement[] stack = threadInfo.getStackTrace();
             
             if (threadName == null || stack == null) {
                 continue;
             }
-            
-            if (filterThread != null && !filterThread.equals(threadName)) {
-                continue;
+
+            if (triggers != null) {
+                triggers.sample(threadInfo, sample.getTime());
             }
             
-            Node node = getNode(threadName);
-            node.log(stack, interval);
-        }
-    }
+            // Idle threads are found from their innermost frame alone, and
+            // are never walked into the CPU or runnable trees
+            boolean idle = (cpuTimes != null || collapseIdle) && IdleFrames.isIdle(stack);
+            StackTraceElement[] logged = idle && collapseIdle ? IdleFrames.innermost(stack) : stack;
+
+            log(View.WALL, threadName, logged, time, now);
+
+            if (contendedTimes != null && contendedTimes[i] > 0) {
+                // One tree per lock class, as instances and threads come and go
+                log(View.CONTENTION, threadInfo.getLockInfo().getClassName(), stack,
+                        contendedTimes[i], now);
+            }
+
+            if (cpuTimes != null) {
+                boolean runnable = !idle && threadInfo.getThreadState() == Thread.State.RUNNABLE;
+                log(runnable ? View.RUNNABLE : View.WAITING, threadName, logged, time, now);
 
+                long cpuTime = cpuTimes[i];
+                if (cpuTime >= 0) {
+                    Long last = lastCpuTimes.get(threadInfo.getThreadId());
+                    seenCpuTimes.put(threadInfo.getThreadId(), cpuTime);
+                    if (!idle && last != null && cpuTime > last) {
+                        log(View.CPU, threadName, stack, cpuTime - last, now);
+                    }
+                }
+            }
 
+            if (allocatedBytes != null && allocatedBytes[i] >= 0) {
+                // The bytes allocated since the previous sample are put on
+                // the stack the thread is in now
+                Long last = lastAllocatedBytes.get(threadInfo.getThreadId());
+                seenAllocatedBytes.put(threadInfo.getThreadId(), allocatedBytes[i]);
+                if (last != null && allocatedBytes[i] > last) {
+                    log(View.ALLOCATION, threadName, stack, allocatedBytes[i] - last, now);
+                }
+            }
+        }
+        if (seenCpuTimes != null) {
+            // Only threads that are still alive are kept
+            lastCpuTimes = seenCpuTimes;
+        }
+        if (seenAllocatedBytes != null) {
+            lastAllocatedBytes = seenAllocatedBytes;
+        }
+        foldedStack = null;
+    }
 
 }
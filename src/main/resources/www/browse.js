@@ -0,0 +1,78 @@
+// Loads the tree from /tree a few levels at a time as nodes are expanded,
+// instead of downloading the whole tree up front.
+
+var LEVELS = 2;
+var unit = "ms";
+
+function escapeHtml(text) {
+    return $(document.createElement("div")).text(text).html();
+}
+
+function formatPercent(fraction) {
+    return (fraction * 100).toFixed(2) + "%";
+}
+
+function createNode(nameHtml, time, total, thread, path) {
+    var $el = $("<div class=\"node collapsed\"><div class=\"name\"></div><ul class=\"children\"></ul></div>");
+    $el.children(".name").html(nameHtml +
+        "<span class=\"percent\">" + formatPercent(time / total) + "</span>" +
+        "<span class=\"time\">" + Math.floor(time / 1000) + unit + "</span>" +
+        "<span class=\"bar\"><span class=\"bar-inner\" style=\"width:" +
+        formatPercent(time / total) + "\"></span></span>");
+    $el.data({ thread: thread, path: path, total: total, loaded: false });
+    return $el;
+}
+
+function addChildren($el, data) {
+    var $ul = $el.children("ul");
+    var thread = $el.data("thread");
+    var path = $el.data("path");
+    var total = $el.data("total");
+    $.each(data.children || [], function(i, child) {
+        var childPath = path.concat([child.frame]);
+        var $child = createNode(child.name, child.time, total, thread, childPath);
+        $ul.append($("<li>").append($child));
+        if (child.children) {
+            addChildren($child, child);
+        }
+    });
+    if (data.omitted > 0) {
+        $ul.append($("<li class=\"omitted\">").text(data.omitted + " smaller nodes not shown"));
+    }
+    $el.data("loaded", data.children !== undefined);
+}
+
+function load(params, callback) {
+    $.getJSON("/tree", params).done(callback);
+}
+
+// Runs before warmroast.js expands the node, so children can be fetched first
+$(".stack").on("click", ".name", function(event) {
+    var $node = $(this).parent();
+    if (!$node.hasClass("collapsed") || $node.data("loaded")) {
+        return;
+    }
+    event.stopImmediatePropagation();
+    $node.data("loaded", true);
+    load({ thread: $node.data("thread"), path: $node.data("path").join("."), depth: LEVELS },
+        function(data) {
+            if (data.threads.length) {
+                addChildren($node, data.threads[0]);
+            }
+            $node.children(".name").click();
+        });
+});
+
+load({ depth: LEVELS }, function(data) {
+    unit = data.unit;
+    var $stack = $(".stack");
+    $.each(data.threads, function(i, thread) {
+        var $el = createNode(escapeHtml(thread.name), thread.time, thread.time, thread.name, []);
+        $stack.append($el);
+        addChildren($el, thread);
+    });
+    if (data.threads.length == 0) {
+        $stack.append("<p class=\"no-results\">There are no results. " +
+            "(Thread filter does not match thread?)</p>");
+    }
+});
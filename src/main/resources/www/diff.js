@@ -0,0 +1,120 @@
+// Compares two VMs or saved profiles with /diff, loading the merged tree a
+// few levels at a time as nodes are expanded. Bars are red where a stack
+// took more time than in the base and green where it took less.
+
+var LEVELS = 2;
+var unit = "ms";
+
+function param(name) {
+    return (new RegExp("[?&]" + name + "=([\\w.]+)").exec(location.search) || [])[1];
+}
+
+// By default the first VM is compared against the second, such as a live
+// VM against a profile given with --baseline
+var PARAMS = {
+    base: param("base") || 1,
+    vm: param("vm") || 0,
+    sort: param("sort") || "regression",
+    normalize: param("normalize") || 1
+};
+
+function escapeHtml(text) {
+    return $(document.createElement("div")).text(text).html();
+}
+
+function formatChange(before, after) {
+    var delta = after - before;
+    var text = (delta >= 0 ? "+" : "") + Math.round(delta / 1000) + unit;
+    if (before > 0) {
+        text += " (" + (delta >= 0 ? "+" : "") + (delta / before * 100).toFixed(1) + "%)";
+    } else if (after > 0) {
+        text += " (new)";
+    }
+    return text;
+}
+
+function createNode(nameHtml, before, after, scale, thread, path) {
+    var delta = after - before;
+    var width = scale > 0 ? Math.min(1, Math.abs(delta) / scale) : 0;
+    var $el = $("<div class=\"node collapsed\"><div class=\"name\"></div><ul class=\"children\"></ul></div>");
+    $el.children(".name").html(nameHtml +
+        "<span class=\"percent\">" + formatChange(before, after) + "</span>" +
+        "<span class=\"time\">" + Math.floor(before / 1000) + unit + " &rarr; " +
+        Math.floor(after / 1000) + unit + "</span>" +
+        "<span class=\"bar\"><span class=\"bar-inner " + (delta > 0 ? "regression" : "improvement") +
+        "\" style=\"width:" + (width * 100).toFixed(2) + "%\"></span></span>");
+    $el.data({ thread: thread, path: path, scale: scale, loaded: false });
+    return $el;
+}
+
+function addChildren($el, data) {
+    var $ul = $el.children("ul");
+    $.each(data.children || [], function(i, child) {
+        var $child = createNode(child.name, child.before, child.after, $el.data("scale"),
+            $el.data("thread"), $el.data("path").concat([child.frame]));
+        $ul.append($("<li>").append($child));
+        if (child.children) {
+            addChildren($child, child);
+        }
+    });
+    if (data.omitted > 0) {
+        $ul.append($("<li class=\"omitted\">").text(data.omitted + " smaller nodes not shown"));
+    }
+    $el.data("loaded", data.children !== undefined);
+}
+
+function load(params, callback) {
+    $.getJSON("/diff", $.extend({}, PARAMS, params)).done(callback).fail(function(xhr) {
+        $(".loading").text("Could not compare them: " + xhr.statusText).show();
+    });
+}
+
+function toggle($node) {
+    $node.toggleClass("collapsed");
+    $node.children("ul").slideToggle(50);
+}
+
+$(".stack").on("click", ".name", function() {
+    var $node = $(this).parent();
+    if (!$node.hasClass("collapsed") || $node.data("loaded")) {
+        toggle($node);
+        return;
+    }
+    $node.data("loaded", true);
+    load({ thread: $node.data("thread"), path: $node.data("path").join("."), depth: LEVELS },
+        function(data) {
+            if (data.threads.length) {
+                addChildren($node, data.threads[0]);
+            }
+            toggle($node);
+        });
+});
+
+$.getJSON("/vms").done(function(data) {
+    $.each(["base", "vm"], function(i, name) {
+        var $select = $("select[data-param=" + name + "]");
+        $.each(data.vms, function(j, vm) {
+            $select.append($("<option>").val(vm.id).text(vm.name));
+        });
+        $select.val(PARAMS[name]);
+    });
+    $("select[data-param=sort]").val(PARAMS.sort);
+    $("select[data-param=normalize]").val(PARAMS.normalize);
+
+    load({ depth: LEVELS }, function(data) {
+        unit = data.unit;
+        var $stack = $(".stack");
+        $.each(data.threads, function(i, thread) {
+            // Bars are drawn to the scale of the thread's larger total
+            var $el = createNode(escapeHtml(thread.name), thread.before, thread.after,
+                Math.max(thread.before, thread.after), thread.name, []);
+            $stack.append($el);
+            addChildren($el, thread);
+        });
+        if (data.threads.length == 0) {
+            $stack.append("<p class=\"no-results\">There are no results.</p>");
+        }
+        $(".loading").hide();
+        $stack.show();
+    });
+});
@@ -0,0 +1,144 @@
+// Draws each thread's call tree from /tree as a flame graph, with the
+// outermost frame at the top. Frames below MIN_PERCENT of the thread are
+// left out to keep the download small.
+
+var MIN_PERCENT = 0.1;
+var ROW_HEIGHT = 16;
+var MAX_DEPTH = 1024;
+
+function textOf(html) {
+    return $(document.createElement("div")).html(html).text();
+}
+
+function color(name) {
+    var hash = 0;
+    for (var i = 0; i < name.length; i++) {
+        hash = (hash * 31 + name.charCodeAt(i)) | 0;
+    }
+    var r = 205 + (hash & 0x31);
+    var g = 80 + ((hash >> 8) & 0x7f);
+    return "rgb(" + r + "," + g + ",50)";
+}
+
+function treeDepth(node) {
+    var depth = 0;
+    $.each(node.children || [], function(i, child) {
+        depth = Math.max(depth, treeDepth(child));
+    });
+    return depth + 1;
+}
+
+function Flame(thread, unit) {
+    var self = this;
+    this.unit = unit;
+    this.root = { name: thread.name, time: thread.time, children: thread.children };
+    this.focus = this.root;
+    this.rects = [];
+    this.$canvas = $("<canvas>");
+    this.$canvas.on("click", function(event) {
+        var hit = self.hit(event);
+        if (hit) {
+            self.focus = hit.node === self.focus ? self.root : hit.node;
+            self.draw();
+        }
+    });
+    this.$canvas.on("mousemove", function(event) {
+        var hit = self.hit(event);
+        var $tip = $("#flame-tip");
+        if (hit) {
+            $tip.text(hit.node.name + " — " + Math.floor(hit.node.time / 1000) + self.unit + " (" +
+                (hit.node.time / self.root.time * 100).toFixed(2) + "%)")
+                .css({ left: event.pageX + 12, top: event.pageY + 12 }).show();
+        } else {
+            $tip.hide();
+        }
+    });
+    this.$canvas.on("mouseleave", function() {
+        $("#flame-tip").hide();
+    });
+}
+
+Flame.prototype.hit = function(event) {
+    var offset = this.$canvas.offset();
+    var x = event.pageX - offset.left;
+    var y = event.pageY - offset.top;
+    for (var i = 0; i < this.rects.length; i++) {
+        var r = this.rects[i];
+        if (x >= r.x && x < r.x + r.w && y >= r.y && y < r.y + ROW_HEIGHT) {
+            return r;
+        }
+    }
+    return null;
+};
+
+Flame.prototype.draw = function() {
+    var canvas = this.$canvas[0];
+    var width = this.$canvas.parent().width();
+    canvas.width = width;
+    canvas.height = treeDepth(this.focus) * ROW_HEIGHT;
+    var ctx = canvas.getContext("2d");
+    ctx.font = "11px Arial, sans-serif";
+    ctx.textBaseline = "middle";
+    this.rects = [];
+    this.drawNode(ctx, this.focus, 0, 0, width / this.focus.time);
+};
+
+Flame.prototype.drawNode = function(ctx, node, x, depth, scale) {
+    var w = node.time * scale;
+    if (w < 1) {
+        return;
+    }
+    var y = depth * ROW_HEIGHT;
+    ctx.fillStyle = node === this.root ? "#ccc" : color(node.name);
+    ctx.fillRect(x, y, w - 1, ROW_HEIGHT - 1);
+    if (w > 30) {
+        ctx.save();
+        ctx.beginPath();
+        ctx.rect(x, y, w - 4, ROW_HEIGHT);
+        ctx.clip();
+        ctx.fillStyle = "#000";
+        ctx.fillText(node.name, x + 3, y + ROW_HEIGHT / 2);
+        ctx.restore();
+    }
+    this.rects.push({ node: node, x: x, y: y, w: w });
+    var self = this;
+    $.each(node.children || [], function(i, child) {
+        self.drawNode(ctx, child, x, depth + 1, scale);
+        x += child.time * scale;
+    });
+};
+
+function prepare(node) {
+    $.each(node.children || [], function(i, child) {
+        child.name = textOf(child.name);
+        prepare(child);
+    });
+}
+
+// Draws a flame graph per thread into a container. The parameters are
+// passed on to /tree, such as to pick a VM.
+function loadFlames($container, params) {
+    params = $.extend({ depth: MAX_DEPTH, min: MIN_PERCENT }, params);
+    $.getJSON("/tree", params).done(function(data) {
+        var flames = [];
+        $container.siblings(".loading").hide();
+        $.each(data.threads, function(i, thread) {
+            prepare(thread);
+            var flame = new Flame(thread, data.unit);
+            $container.append($("<h3>").text(thread.name), flame.$canvas);
+            flames.push(flame);
+        });
+        $.each(flames, function(i, flame) {
+            flame.draw();
+        });
+        $(window).on("resize", function() {
+            $.each(flames, function(i, flame) {
+                flame.draw();
+            });
+        });
+        if (data.threads.length == 0) {
+            $container.append("<p class=\"no-results\">There are no results. " +
+                "(Thread filter does not match thread?)</p>");
+        }
+    });
+}
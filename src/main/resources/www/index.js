@@ -0,0 +1,27 @@
+// Lists the VMs being profiled, when there is more than one, with links to
+// each view of each VM, and links to lock contention where it is recorded.
+
+function recordsContention(vm) {
+    return $.inArray("contention", vm.views) >= 0;
+}
+
+$.getJSON("/vms").done(function(data) {
+    $("p.contention").toggle(data.vms.length > 0 && recordsContention(data.vms[0]));
+    if (data.vms.length < 2) {
+        return;
+    }
+    var $list = $(".vms ul");
+    $.each(data.vms, function(i, vm) {
+        var query = "?vm=" + vm.id;
+        $list.append($("<li>").text(vm.name + " ").append(
+            $("<a>").attr("href", "/stack" + query).text("results"), " ",
+            $("<a>").attr("href", "browse.html" + query).text("browse"), " ",
+            $("<a>").attr("href", "flame.html" + query).text("flame graph"), " ",
+            $("<a>").attr("href", "live.html" + query).text("live")));
+        if (recordsContention(vm)) {
+            $list.children().last().append(" ",
+                $("<a>").attr("href", "contention.html" + query).text("contention"));
+        }
+    });
+    $(".vms").show();
+});
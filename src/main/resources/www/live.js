@@ -0,0 +1,110 @@
+// Keeps the tree up to date by asking /delta for only the nodes that
+// changed since the last revision we saw and patching them in place.
+
+var revision = 0;
+var unit = "ms";
+var threads = {};
+
+function escapeHtml(text) {
+    return $(document.createElement("div")).text(text).html();
+}
+
+function createNode(nameHtml) {
+    var $el = $("<div class=\"node collapsed\"><div class=\"name\"></div><ul class=\"children\"></ul></div>");
+    $el.children(".name").html(nameHtml + "<span class=\"percent\"></span>" +
+        "<span class=\"time\"></span>" +
+        "<span class=\"bar\"><span class=\"bar-inner\"></span></span>");
+    var node = { $el: $el, time: 0, children: [], expanded: false, dirty: false };
+    $el.data("node", node);
+    return node;
+}
+
+function addThread(name) {
+    var root = createNode(escapeHtml(name));
+    var thread = { name: name, nodes: { 0: root } };
+    threads[name] = thread;
+
+    // Keep threads sorted by name
+    var $stack = $(".stack");
+    var $before = null;
+    $stack.children(".node").each(function(i, el) {
+        if ($before == null && $(el).data("thread") > name) {
+            $before = $(el);
+        }
+    });
+    root.$el.data("thread", name);
+    if ($before != null) {
+        root.$el.insertBefore($before);
+    } else {
+        $stack.append(root.$el);
+    }
+    return thread;
+}
+
+function refresh(node, total) {
+    var pct = total > 0 ? node.time / total : 0;
+    var $name = node.$el.children(".name");
+    $name.children(".percent").text((pct * 100).toFixed(2) + "%");
+    $name.children(".time").text(Math.floor(node.time / 1000) + unit);
+    $name.find(".bar-inner").css("width", (pct * 100).toFixed(2) + "%");
+
+    // Collapsed subtrees are brought up to date when they are expanded
+    if (node.expanded) {
+        if (node.dirty) {
+            node.children.sort(function(a, b) { return b.time - a.time; });
+            var $ul = node.$el.children("ul");
+            $.each(node.children, function(i, child) {
+                $ul.append(child.$el.parent());
+            });
+            node.dirty = false;
+        }
+        $.each(node.children, function(i, child) {
+            refresh(child, total);
+        });
+    }
+}
+
+function update(data) {
+    unit = data.unit;
+    $.each(data.threads, function(i, t) {
+        var thread = threads[t.name] || addThread(t.name);
+        var root = thread.nodes[0];
+        root.time = t.time;
+        thread.total = t.time;
+        $.each(t.nodes, function(j, n) {
+            var node = thread.nodes[n[0]];
+            if (!node) {
+                node = createNode(n[2]);
+                node.parent = thread.nodes[n[1]];
+                thread.nodes[n[0]] = node;
+                node.parent.children.push(node);
+                node.parent.$el.children("ul").append($("<li>").append(node.$el));
+            }
+            node.time = n[3];
+            node.parent.dirty = true;
+        });
+        refresh(root, t.time);
+    });
+    revision = data.revision;
+}
+
+function poll() {
+    $.getJSON("/delta", { since: revision })
+        .done(update)
+        .always(function() {
+            setTimeout(poll, 2000);
+        });
+}
+
+$(".stack").on("click", ".name", function(event) {
+    var $node = $(this).parent();
+    var node = $node.data("node");
+    node.expanded = !$node.hasClass("collapsed");
+    if (node.expanded) {
+        var $root = $node.parents(".node").last();
+        var thread = threads[($root.length ? $root : $node).data("thread")];
+        refresh(node, thread.total);
+    }
+});
+
+poll();
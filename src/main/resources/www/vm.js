@@ -0,0 +1,58 @@
+// Passes the page's ?vm=, ?view= and time window (?window=, ?from= and
+// ?to=) on to every request to the server, and to links marked with the
+// "vm-link" class, so each view works for any of the VMs being profiled,
+// any of their views and any window of time.
+
+var PASSED = $.grep(location.search.substring(1).split("&"), function(param) {
+    return /^(vm|view|window|from|to)=[\w.]+$/.test(param);
+}).join("&");
+
+function withParams(url) {
+    return PASSED ? url + (url.indexOf("?") < 0 ? "?" : "&") + PASSED : url;
+}
+
+if (PASSED) {
+    $.ajaxPrefilter(function(options) {
+        if (options.url.charAt(0) == "/") {
+            options.url = withParams(options.url);
+        }
+    });
+
+    $(function() {
+        $("a.vm-link").each(function() {
+            $(this).attr("href", withParams($(this).attr("href")));
+        });
+    });
+}
+
+// A <select data-param="..."> picks that parameter by reloading the page
+$(function() {
+    $("select[data-param]").each(function() {
+        var name = $(this).data("param");
+        var replaced = name == "window" ? /^(window|from|to)=/ : new RegExp("^" + name + "=");
+        var current = (new RegExp("[?&]" + name + "=([\\w.]+)").exec(location.search) || [])[1] || "";
+        $(this).val(current).change(function() {
+            var params = $.grep(location.search.substring(1).split("&"), function(param) {
+                return param && !replaced.test(param);
+            });
+            if ($(this).val()) {
+                params.push(name + "=" + $(this).val());
+            }
+            location.search = params.length ? "?" + params.join("&") : "";
+        });
+    });
+
+    // Only offer the views that the VM records
+    var $views = $("select[data-param=view]");
+    if ($views.length) {
+        $.getJSON("/vms").done(function(data) {
+            var vm = data.vms[(/[?&]vm=(\d+)/.exec(location.search) || [])[1] || 0];
+            $views.children("option").each(function() {
+                if (this.value && (!vm || $.inArray(this.value, vm.views) < 0)) {
+                    $(this).remove();
+                }
+            });
+            $views.closest(".view-picker").toggle($views.children("option").length > 1);
+        });
+    }
+});
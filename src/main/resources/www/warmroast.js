@@ -1,4 +1,4 @@
-$(".name").on("click", function(event) {
+$(".stack").on("click", ".name", function(event) {
     var $parent = $(this).parent();
     if ($parent.hasClass("collapsed")) {
         $parent.removeClass("collapsed");
@@ -17,7 +17,7 @@ function extractTime($el) {
 
 var $overlay = $("#overlay");
 
-$(".name").on("mouseenter", function(event) {
+$(".stack").on("mouseenter", ".name", function(event) {
     var $this = $(this);
     var thisTime = null;
     $overlay.empty();
@@ -0,0 +1,159 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CallTreeTest {
+
+    private static final StackTraceElement[] STACK = {
+            new StackTraceElement("a.B", "inner", null, -1),
+            new StackTraceElement("a.B", "outer", null, -1),
+    };
+    private static final StackTraceElement[] OTHER_STACK = {
+            new StackTraceElement("a.B", "other", null, -1),
+            new StackTraceElement("a.B", "outer", null, -1),
+    };
+
+    private static void logAll(CallTree tree) {
+        tree.log(STACK, 10);
+        tree.log(OTHER_STACK, 20);
+        tree.log(STACK, 5);
+    }
+
+    @Test
+    public void logMergesFrames() {
+        FrameTable frames = new FrameTable();
+        ThreadNode node = new ThreadNode("main", new ObjectCallTree(frames));
+        node.log(STACK, 10);
+        node.log(STACK, 5);
+        assertEquals(15, node.getTotalTime());
+        assertEquals(2, node.getTree().size());
+        assertEquals(2, frames.size());
+        assertEquals("a.B.outer()", frames.get(0).toString());
+    }
+
+    @Test
+    public void compactMatchesObjectTree() {
+        FrameTable frames = new FrameTable();
+        ThreadNode object = new ThreadNode("main", new ObjectCallTree(frames));
+        ThreadNode compact = new ThreadNode("main", new CompactCallTree(frames));
+        logAll(object.getTree());
+        logAll(compact.getTree());
+        McpMapping mapping = new McpMapping();
+        assertEquals(3, compact.getTree().size());
+        assertEquals(object.toHtml(mapping), compact.toHtml(mapping));
+        assertEquals(object.toJson(mapping), compact.toJson(mapping));
+    }
+
+    private static long walkBytes(ObjectNode node) {
+        long bytes = ObjectNode.SHALLOW_SIZE + node.estimateChildrenBytes();
+        for (ObjectNode child : node.getChildren()) {
+            bytes += walkBytes(child);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void objectTreeKeepsItsSize() {
+        FrameTable frames = new FrameTable();
+        ObjectCallTree tree = new ObjectCallTree(frames);
+        assertEquals(walkBytes(tree.getRoot()) + IntMap.arrayBytes(64, 4), tree.estimateBytes());
+        // Enough children of one node to grow its map, and fewer than 63
+        // nodes so that the array of nodes keeps its first size
+        for (int i = 0; i < 40; i++) {
+            tree.log(new StackTraceElement[] {
+                    new StackTraceElement("a.B", "m" + i, null, -1), STACK[0], STACK[1] }, 1);
+        }
+        assertEquals(42, tree.size());
+        assertEquals(walkBytes(tree.getRoot()) + IntMap.arrayBytes(64, 4), tree.estimateBytes());
+    }
+
+    @Test
+    public void snapshotDoesNotChangeWithTheRoast() {
+        WarmRoast roast = new WarmRoast(null, 1000000, 16);
+        logAll(roast.getNode("main").getTree());
+        McpMapping mapping = new McpMapping();
+        String before = roast.getData().get("main").toJson(mapping);
+
+        ThreadNode copy = roast.snapshot(View.WALL, null, null).get("main");
+        assertEquals(before, copy.toJson(mapping));
+        roast.getNode("main").log(OTHER_STACK, 100);
+        assertEquals(before, copy.toJson(mapping));
+        assertEquals(35, copy.getTotalTime());
+    }
+
+    @Test
+    public void partialSnapshotCopiesLevelsBelowThePath() {
+        WarmRoast roast = new WarmRoast(null, 1000000, 16);
+        CallTree tree = roast.getNode("main").getTree();
+        logAll(tree);
+        tree.log(new StackTraceElement[] {
+                new StackTraceElement("a.B", "deep", null, -1), STACK[0], STACK[1] }, 1);
+        int outer = roast.getFrames().intern("a.B", "outer").getId();
+        int inner = roast.getFrames().intern("a.B", "inner").getId();
+
+        CallTree copy = roast.snapshot(View.WALL, null, null, new int[0], 1, 0)
+                .get("main").getTree();
+        assertEquals(1, copy.size());
+        assertEquals(36, copy.getTotalTime());
+        assertEquals(36, copy.getRoot().findChild(outer).getTotalTime());
+
+        copy = roast.snapshot(View.WALL, null, null, new int[] { outer }, 2, 0)
+                .get("main").getTree();
+        assertEquals(4, copy.size());
+        // Below the threshold, a node is copied but not its children
+        copy = roast.snapshot(View.WALL, null, null, new int[] { outer }, 2, 0.5)
+                .get("main").getTree();
+        assertEquals(3, copy.size());
+        assertEquals(16, copy.getRoot().findChild(outer).findChild(inner).getTotalTime());
+
+        assertEquals(0, roast.snapshot(View.WALL, null, null, new int[] { -1 }, 2, 0)
+                .get("main").getTree().size());
+    }
+
+    @Test
+    public void htmlInViewUnit() throws Exception {
+        ThreadNode node = new ThreadNode("main", new CompactCallTree(new FrameTable()));
+        node.log(STACK, 3000000);
+        StringWriter out = new StringWriter();
+        node.writeHtml(out, new McpMapping(), View.ALLOCATION.getUnit());
+        assertTrue(out.toString().contains("<span class=\"time\">3MB</span>"));
+        assertTrue(node.toHtml(new McpMapping()).contains("<span class=\"time\">3ms</span>"));
+    }
+
+    private static List<String> changedSince(CallTree tree, int revision) {
+        List<String> changed = new ArrayList<>();
+        tree.visitChangedSince(revision, (id, parentId, frame, time) ->
+                changed.add(frame.getMethodName() + "=" + time));
+        return changed;
+    }
+
+    @Test
+    public void visitChangedSince() {
+        FrameTable frames = new FrameTable();
+        for (boolean compact : new boolean[] { false, true }) {
+            RevisionCounter revisions = new RevisionCounter();
+            CallTree tree = compact
+                    ? new CompactCallTree(frames, revisions)
+                    : new ObjectCallTree(frames, revisions);
+            revisions.increment();
+            tree.log(STACK, 10);
+            revisions.increment();
+            tree.log(OTHER_STACK, 20);
+
+            assertEquals(3, changedSince(tree, 0).size());
+            List<String> changed = changedSince(tree, 1);
+            assertEquals(2, changed.size());
+            assertEquals("outer=30", changed.get(0));
+            assertEquals("other=20", changed.get(1));
+            assertEquals(0, changedSince(tree, 2).size());
+        }
+    }
+
+}
@@ -1,12 +1,22 @@
 package com.sk89q.warmroast;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 public class ClassMappingTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void duplicateMethodMappings() throws IOException {
         File joinedFile = new File(getClass().getClassLoader().getResource("joined.srg").getFile());
@@ -16,4 +26,65 @@ public class ClassMappingTest {
 
         
     }
-}
\ No newline at end of file
+
+    @Test
+    public void indexMatchesText() throws IOException {
+        File joinedFile = new File(getClass().getClassLoader().getResource("joined.srg").getFile());
+        File methodsFile = new File(getClass().getClassLoader().getResource("methods.csv").getFile());
+        File index = new File(folder.getRoot(), "warmroast.idx");
+
+        MappingProvider provider = new SrgMappingProvider(joinedFile, methodsFile);
+        McpMapping text = new McpMapping();
+        assertFalse(text.load(provider, index));
+        McpMapping indexed = new McpMapping();
+        assertTrue(indexed.load(provider, index));
+
+        MappingTable expected = text.getTable();
+        MappingTable actual = indexed.getTable();
+        assertArrayEquals(expected.classKeys, actual.classKeys);
+        assertArrayEquals(expected.classNames, actual.classNames);
+        assertArrayEquals(expected.methodStart, actual.methodStart);
+        assertArrayEquals(expected.methodKeys, actual.methodKeys);
+        assertArrayEquals(expected.methodNames, actual.methodNames);
+        assertArrayEquals(expected.idKeys, actual.idKeys);
+        assertArrayEquals(expected.idNames, actual.idNames);
+    }
+
+    @Test
+    public void frameNames() throws IOException {
+        File joinedFile = new File(getClass().getClassLoader().getResource("joined.srg").getFile());
+        File methodsFile = new File(getClass().getClassLoader().getResource("methods.csv").getFile());
+        FrameTable frames = new FrameTable();
+        Frame single = frames.intern("a", "d");
+        Frame multiple = frames.intern("a", "a");
+        McpMapping mapping = new McpMapping();
+
+        assertEquals("a.d", mapping.getNames(single).getJson());
+
+        mapping.read(joinedFile, methodsFile);
+        assertEquals("net.minecraft.util.text.TextFormatting.isColor", mapping.getNames(single).getJson());
+        assertEquals("net.minecraft.util.text.TextFormatting.a", mapping.getNames(multiple).getJson());
+        assertEquals("net.minecraft.util.text.TextFormatting.isColor()", mapping.getNames(single).getText());
+        assertTrue(mapping.getNames(multiple).getHtml().contains("multiple-matches"));
+    }
+
+    @Test
+    public void frameNamesFromAnOldTableAreResolvedAgain() throws IOException {
+        File joinedFile = new File(getClass().getClassLoader().getResource("joined.srg").getFile());
+        File methodsFile = new File(getClass().getClassLoader().getResource("methods.csv").getFile());
+        FrameTable frames = new FrameTable();
+        Frame single = frames.intern("a", "d");
+        McpMapping mapping = new McpMapping();
+        FrameNames old = mapping.getNames(single);
+
+        // Names are tagged with their table, so they can't outlive a reload
+        mapping.read(joinedFile, methodsFile);
+        assertTrue(old.getTable() != mapping.getTable());
+        for (int i = 0; i < 2000; i++) {
+            mapping.getNames(frames.intern("b", "m" + i));
+        }
+        FrameNames names = mapping.getNames(single);
+        assertTrue(names.getTable() == mapping.getTable());
+        assertEquals("net.minecraft.util.text.TextFormatting.isColor", names.getJson());
+    }
+}
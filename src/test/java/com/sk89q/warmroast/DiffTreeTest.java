@@ -0,0 +1,78 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DiffTreeTest {
+
+    private static StackTraceElement[] stack(String... methods) {
+        StackTraceElement[] stack = new StackTraceElement[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            stack[i] = new StackTraceElement("a.B", methods[i], null, -1);
+        }
+        return stack;
+    }
+
+    private static Map<String, long[]> flatten(DiffTree diff, FrameTable frames) {
+        Map<String, long[]> nodes = new HashMap<>();
+        flatten(diff, frames, 0, "", nodes);
+        return nodes;
+    }
+
+    private static void flatten(DiffTree diff, FrameTable frames, int node, String path,
+            Map<String, long[]> out) {
+        out.put(path, new long[] { diff.getBefore(node), diff.getAfter(node) });
+        for (int i = 0; i < diff.getChildCount(node); i++) {
+            int child = diff.getFirstChild(node) + i;
+            String name = frames.get(diff.getFrameId(child)).getMethodName();
+            flatten(diff, frames, child, path.isEmpty() ? name : path + ";" + name, out);
+        }
+    }
+
+    @Test
+    public void mergesByPath() {
+        FrameTable frames = new FrameTable();
+        CallTree before = new ObjectCallTree(frames);
+        CallTree after = new CompactCallTree(frames);
+        before.log(stack("inner", "outer"), 10);
+        before.log(stack("gone", "outer"), 5);
+        after.log(stack("inner", "outer"), 30);
+        after.log(stack("added", "inner", "outer"), 7);
+
+        DiffTree diff = new DiffTree(before.getRoot(), after.getRoot());
+        Map<String, long[]> nodes = flatten(diff, frames);
+        assertEquals(5, diff.size());
+        assertEquals(5, nodes.size());
+        assertEquals(15, nodes.get("")[0]);
+        assertEquals(37, nodes.get("")[1]);
+        assertEquals(15, nodes.get("outer")[0]);
+        assertEquals(37, nodes.get("outer")[1]);
+        assertEquals(10, nodes.get("outer;inner")[0]);
+        assertEquals(37, nodes.get("outer;inner")[1]);
+        assertEquals(5, nodes.get("outer;gone")[0]);
+        assertEquals(0, nodes.get("outer;gone")[1]);
+        assertEquals(0, nodes.get("outer;inner;added")[0]);
+        assertEquals(7, nodes.get("outer;inner;added")[1]);
+
+        int outer = diff.findChild(0, frames.intern("a.B", "outer").getId());
+        assertEquals(2, diff.getChildCount(outer));
+        assertEquals(-1, diff.findChild(outer, frames.intern("a.B", "other").getId()));
+    }
+
+    @Test
+    public void oneSideEmpty() {
+        FrameTable frames = new FrameTable();
+        CallTree after = new ObjectCallTree(frames);
+        after.log(stack("inner", "outer"), 4);
+
+        DiffTree diff = new DiffTree(null, after.getRoot());
+        assertEquals(3, diff.size());
+        assertEquals(0, diff.getBefore(2));
+        assertEquals(4, diff.getAfter(2));
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EpochRingTest {
+
+    private static final StackTraceElement[] STACK = {
+            new StackTraceElement("a.B", "inner", null, -1),
+            new StackTraceElement("a.B", "outer", null, -1),
+    };
+    private static final StackTraceElement[] OTHER_STACK = {
+            new StackTraceElement("a.C", "other", null, -1),
+            new StackTraceElement("a.B", "outer", null, -1),
+    };
+
+    private final McpMapping mapping = new McpMapping();
+
+    private static void log(EpochRing ring, ThreadNode thread, StackTraceElement[] stack,
+            long time, long now) {
+        ring.record(thread, thread.log(stack, time), time, now);
+    }
+
+    private String expected(StackTraceElement[]... stacks) {
+        ThreadNode thread = new ThreadNode("main", new ObjectCallTree(new FrameTable()));
+        for (StackTraceElement[] stack : stacks) {
+            thread.log(stack, stack == STACK ? 10 : 20);
+        }
+        return thread.toJson(mapping);
+    }
+
+    private void windows(FrameTable frames, CallTree tree) {
+        ThreadNode thread = new ThreadNode("main", tree);
+        EpochRing ring = new EpochRing(1000, 3);
+        log(ring, thread, STACK, 10, 500);
+        log(ring, thread, OTHER_STACK, 20, 1500);
+        log(ring, thread, OTHER_STACK, 20, 1700);
+
+        assertEquals(expected(STACK), ring.query(0, 1000, frames).get("main").toJson(mapping));
+        assertEquals(expected(OTHER_STACK, OTHER_STACK), ring.query(1000, 2000, frames).get("main").toJson(mapping));
+        assertEquals(thread.toJson(mapping), ring.query(0, Long.MAX_VALUE, frames).get("main").toJson(mapping));
+
+        // Closed windows are reused until they change
+        assertSame(ring.query(0, 1000, frames), ring.query(0, 1000, frames));
+
+        log(ring, thread, OTHER_STACK, 20, 2500);
+        log(ring, thread, OTHER_STACK, 20, 3500);
+        assertEquals(3, ring.size());
+        assertTrue(ring.query(0, 1000, frames).isEmpty());
+        assertEquals(expected(OTHER_STACK, OTHER_STACK),
+                ring.query(2000, Long.MAX_VALUE, frames).get("main").toJson(mapping));
+    }
+
+    @Test
+    public void objectTree() {
+        FrameTable frames = new FrameTable();
+        windows(frames, new ObjectCallTree(frames));
+    }
+
+    @Test
+    public void compactTree() {
+        FrameTable frames = new FrameTable();
+        windows(frames, new CompactCallTree(frames));
+    }
+
+}
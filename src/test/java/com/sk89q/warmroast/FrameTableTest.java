@@ -0,0 +1,33 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class FrameTableTest {
+
+    @Test
+    public void internReturnsSameFrame() {
+        FrameTable frames = new FrameTable();
+        Frame a = frames.intern("a.B", "run");
+        Frame b = frames.intern(new String("a.B"), new String("run"));
+        assertSame(a, b);
+        assertNotSame(a, frames.intern("a.B", "tick"));
+        assertEquals(2, frames.size());
+    }
+
+    @Test
+    public void internGrowsPastInitialCapacity() {
+        FrameTable frames = new FrameTable();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, frames.intern("C" + i, "m").getId());
+        }
+        for (int i = 0; i < 5000; i++) {
+            Frame frame = frames.get(i);
+            assertSame(frame, frames.intern("C" + i, "m"));
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IdleFramesTest {
+
+    private static StackTraceElement[] stack(String... frames) {
+        StackTraceElement[] stack = new StackTraceElement[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            int dot = frames[i].lastIndexOf('.');
+            stack[i] = new StackTraceElement(frames[i].substring(0, dot),
+                    frames[i].substring(dot + 1), null, -1);
+        }
+        return stack;
+    }
+
+    @Test
+    public void innermostFrame() {
+        assertTrue(IdleFrames.isIdle(stack("sun.misc.Unsafe.park", "a.B.run")));
+        assertTrue(IdleFrames.isIdle(stack("sun.nio.ch.EPoll.wait", "a.B.run")));
+        assertTrue(IdleFrames.isIdle(stack()));
+        assertFalse(IdleFrames.isIdle(stack("a.B.wait", "sun.misc.Unsafe.park")));
+        assertFalse(IdleFrames.isIdle(stack("java.lang.Object.hashCode")));
+    }
+
+    private static volatile boolean stopped;
+
+    private static void descend(int depth, CountDownLatch started) {
+        if (depth > 0) {
+            descend(depth - 1, started);
+        } else {
+            started.countDown();
+            while (!stopped) {
+                LockSupport.park();
+            }
+        }
+    }
+
+    @Test
+    public void collapsesIdleThreads() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> descend(50, started), "Idle waiter");
+        waiter.setDaemon(true);
+        waiter.start();
+        started.await();
+        // Park is entered just after the latch opens
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        try {
+            WarmRoast roast = new WarmRoast(null, 1000000, 16);
+            roast.setCpuMode(true);
+            roast.setCollapseIdle(true);
+            roast.setThreadSelection(new ThreadSelection(Collections.singletonList("Idle waiter"),
+                    null, Collections.<Long>emptyList(), null, 0, Long.MAX_VALUE));
+            roast.connect(ManagementFactory.getPlatformMBeanServer());
+            for (int i = 0; i < 3; i++) {
+                roast.capture(1000000);
+                assertTrue(roast.aggregateNext());
+            }
+
+            synchronized (roast) {
+                for (View view : new View[] { View.WALL, View.WAITING }) {
+                    CallTree tree = roast.getData(view, null).get("Idle waiter").getTree();
+                    assertEquals(1, tree.size());
+                    assertEquals("park", tree.getFrame(1).getMethodName());
+                    assertEquals(3000000, tree.getTotalTime());
+                }
+                assertNull(roast.getData(View.RUNNABLE, null).get("Idle waiter"));
+                assertNull(roast.getData(View.CPU, null).get("Idle waiter"));
+            }
+        } finally {
+            stopped = true;
+            LockSupport.unpark(waiter);
+        }
+    }
+
+}
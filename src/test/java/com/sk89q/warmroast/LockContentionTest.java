@@ -0,0 +1,157 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LockContentionTest {
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void blockedOnMonitor() throws Exception {
+        threadBean.setThreadContentionMonitoringEnabled(true);
+        Object monitor = new Object();
+        Thread blocked = new Thread(() -> {
+            synchronized (monitor) {
+                monitor.hashCode();
+            }
+        }, "Blocked thread");
+
+        LockContention contention = new LockContention(new FrameTable());
+        synchronized (monitor) {
+            blocked.start();
+            awaitState(blocked, Thread.State.BLOCKED);
+            ThreadInfo[] first = dump(blocked);
+            assertTrue(LockContention.isContended(first[1]));
+            assertEquals(0, contention.sample(first, 1000000)[1]);
+
+            Thread.sleep(20);
+            long[] times = contention.sample(dump(blocked), 1000000);
+            assertEquals(0, times[0]);
+            assertTrue(times[1] >= 10000000);
+        }
+        blocked.join();
+
+        StringWriter out = new StringWriter();
+        contention.writeJson(out, new McpMapping(), new RenderBuffer());
+        String json = out.toString();
+        assertTrue(json.startsWith("{\"locks\":[{\"name\":\"java.lang.Object\""));
+        assertTrue(json.contains("\"instances\":[{\"name\":\"java.lang.Object@"
+                + Integer.toHexString(System.identityHashCode(monitor)) + "\""));
+        assertTrue(json.contains("\"threads\":[{\"name\":\"Blocked thread\""));
+        assertTrue(json.contains("\"frame\":\"com.sk89q.warmroast.LockContentionTest.blockedOnMonitor\""));
+    }
+
+    @Test
+    public void keepsTheLongestInstancesOfEachClass() throws Exception {
+        threadBean.setThreadContentionMonitoringEnabled(true);
+        Object[] monitors = new Object[LockContention.LIMIT + 2];
+        Thread[] blocked = new Thread[monitors.length];
+        for (int i = 0; i < monitors.length; i++) {
+            Object monitor = monitors[i] = new Object();
+            blocked[i] = new Thread(() -> {
+                synchronized (monitor) {
+                    monitor.hashCode();
+                }
+            }, "Blocked thread " + i);
+        }
+
+        LockContention contention = new LockContention(new FrameTable());
+        holdAll(monitors, 0, () -> {
+            for (Thread thread : blocked) {
+                thread.start();
+                awaitState(thread, Thread.State.BLOCKED);
+            }
+            contention.sample(dump(blocked), 1000000);
+            Thread.sleep(20);
+            contention.sample(dump(blocked), 1000000);
+        });
+        for (Thread thread : blocked) {
+            thread.join();
+        }
+
+        StringWriter out = new StringWriter();
+        contention.writeJson(out, new McpMapping(), new RenderBuffer());
+        String json = out.toString();
+        assertEquals(1, count(json, "\"name\":\"java.lang.Object\""));
+        assertEquals(LockContention.LIMIT, count(json, "\"name\":\"java.lang.Object@"));
+        assertEquals(LockContention.LIMIT + monitors.length, count(json, "\"name\":\"Blocked thread "));
+
+        // Threads that are no longer sampled are dropped from the counters
+        contention.sample(dump(), 1000000);
+        out = new StringWriter();
+        contention.writeJson(out, new McpMapping(), new RenderBuffer());
+        assertEquals(LockContention.LIMIT, count(out.toString(), "\"name\":\"Blocked thread "));
+    }
+
+    @Test
+    public void waitingForSignal() throws Exception {
+        ReentrantLock lock = new ReentrantLock();
+        Condition condition = lock.newCondition();
+        Thread waiting = new Thread(() -> {
+            lock.lock();
+            try {
+                condition.await();
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        }, "Waiting thread");
+        waiting.start();
+        awaitState(waiting, Thread.State.WAITING);
+        try {
+            assertFalse(LockContention.isContended(dump(waiting)[1]));
+        } finally {
+            waiting.interrupt();
+            waiting.join();
+        }
+    }
+
+    private static ThreadInfo[] dump(Thread... others) {
+        long[] ids = new long[others.length + 1];
+        ids[0] = Thread.currentThread().getId();
+        for (int i = 0; i < others.length; i++) {
+            ids[i + 1] = others[i].getId();
+        }
+        return threadBean.getThreadInfo(ids, true, true);
+    }
+
+    private interface Body {
+        void run() throws InterruptedException;
+    }
+
+    private static void holdAll(Object[] monitors, int i, Body body) throws InterruptedException {
+        if (i == monitors.length) {
+            body.run();
+        } else {
+            synchronized (monitors[i]) {
+                holdAll(monitors, i + 1, body);
+            }
+        }
+    }
+
+    private static int count(String s, String part) {
+        int count = 0;
+        for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+        while (thread.getState() != state) {
+            Thread.sleep(1);
+        }
+    }
+
+}
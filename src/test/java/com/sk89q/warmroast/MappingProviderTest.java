@@ -0,0 +1,75 @@
+package com.sk89q.warmroast;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappingProviderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private McpMapping load(String... lines) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        McpMapping mapping = new McpMapping();
+        mapping.load(MappingProvider.forPath(file));
+        return mapping;
+    }
+
+    private static void assertMapped(McpMapping mapping, String className, String methodName,
+            String actualClass, String... actualMethods) {
+        ClassMapping classMapping = mapping.mapClass(className);
+        assertEquals(actualClass, classMapping.getActual());
+        assertEquals(Arrays.asList(actualMethods), classMapping.mapMethod(methodName));
+    }
+
+    @Test
+    public void tsrg() throws IOException {
+        McpMapping mapping = load(
+                "tsrg2 obf srg",
+                "a net/minecraft/Foo",
+                "\ta (I)V tick",
+                "\t\t0 o p_1_",
+                "\tb field");
+        assertMapped(mapping, "a", "a", "net.minecraft.Foo", "tick");
+        assertTrue(mapping.mapClass("a").mapMethod("b").isEmpty());
+    }
+
+    @Test
+    public void tiny() throws IOException {
+        McpMapping mapping = load(
+                "tiny\t2\t0\tofficial\tintermediary\tnamed",
+                "c\ta\tnet/minecraft/class_1\tnet/minecraft/Foo",
+                "\tm\t(I)V\ta\tmethod_1\ttick",
+                "\t\tp\t1\t\t\tticks",
+                "\tf\tI\tb\tfield_1\tcount");
+        assertMapped(mapping, "a", "a", "net.minecraft.Foo", "tick");
+        assertMapped(mapping, "net.minecraft.class_1", "method_1", "net.minecraft.Foo", "tick");
+        assertEquals("tick", mapping.mapMethodId("method_1"));
+    }
+
+    @Test
+    public void proGuard() throws IOException {
+        McpMapping mapping = load(
+                "# comment",
+                "net.minecraft.Foo -> a:",
+                "    int count -> b",
+                "    1:2:void tick(int):10:11 -> a",
+                "    void tick() -> a",
+                "    void render() -> a");
+        assertMapped(mapping, "a", "a", "net.minecraft.Foo", "tick", "render");
+        assertEquals(Collections.emptyList(), mapping.mapClass("a").mapMethod("b"));
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Test
+    public void histogramBuckets() {
+        Histogram histogram = new Histogram(new long[] { 10, 100 });
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(100, 2);
+        histogram.record(5000);
+        assertArrayEquals(new long[] { 1, 3, 1 }, histogram.getCounts());
+        assertEquals(5, histogram.getCount());
+        assertEquals(5221, histogram.getSum());
+        assertEquals(5000, histogram.getMax());
+        assertEquals(10, histogram.getQuantile(0.2));
+        assertEquals(100, histogram.getQuantile(0.5));
+        assertEquals(5000, histogram.getQuantile(0.99));
+    }
+
+    @Test
+    public void prometheus() throws IOException {
+        McpMapping mapping = new McpMapping();
+        WarmRoast roast = new WarmRoast(null, mapping, new FrameTable(), 1000000, 16);
+        roast.setName("1 \"quoted\"");
+        roast.getNode("main").log(new StackTraceElement[] {
+                new StackTraceElement("a.B", "run", null, -1) }, 10);
+        roast.getDumpTimes().record(1500000);
+        Metrics metrics = new Metrics(Collections.singletonList(roast), mapping);
+        metrics.recordRender("/tree", 2000000, 3000);
+
+        StringWriter out = new StringWriter();
+        metrics.writePrometheus(out);
+        String text = out.toString();
+        String labels = "{vm=\"0\",name=\"1 \\\"quoted\\\"\"";
+        assertTrue(text.contains("# TYPE warmroast_dump_seconds histogram\n"));
+        assertTrue(text.contains("warmroast_dump_seconds_bucket" + labels + ",le=\"0.001\"} 0\n"));
+        assertTrue(text.contains("warmroast_dump_seconds_bucket" + labels + ",le=\"0.0025\"} 1\n"));
+        assertTrue(text.contains("warmroast_dump_seconds_bucket" + labels + ",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("warmroast_dump_seconds_sum" + labels + "} 0.0015\n"));
+        assertTrue(text.contains("warmroast_tree_nodes" + labels + "} 1\n"));
+        assertTrue(text.contains("warmroast_render_bytes_bucket{path=\"/tree\",le=\"4096\"} 1\n"));
+        assertTrue(text.contains("warmroast_mapping_load_seconds_count 0\n"));
+
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.startsWith("# ") || line.matches("warmroast_\\w+(\\{.*\\})? \\S+"));
+        }
+    }
+
+}
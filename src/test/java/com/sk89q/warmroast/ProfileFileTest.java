@@ -0,0 +1,153 @@
+package com.sk89q.warmroast;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProfileFileTest {
+
+    private static final StackTraceElement[] STACK = {
+            new StackTraceElement("a.B", "inner", null, -1),
+            new StackTraceElement("a.B", "outer", null, -1),
+    };
+    private static final StackTraceElement[] OTHER_STACK = {
+            new StackTraceElement("a.C", "other", null, -1),
+            new StackTraceElement("a.B", "outer", null, -1),
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void roundTrip(boolean compress) throws IOException {
+        WarmRoast saved = new WarmRoast(null, 1000000, 16);
+        saved.getNode("main").log(STACK, 10);
+        saved.getNode("main").log(OTHER_STACK, 20);
+        saved.getNode("main").log(new StackTraceElement[0], 3);
+        saved.getNode("other").log(STACK, 7);
+
+        File file = folder.newFile();
+        ProfileFile.save(saved, file, compress);
+
+        WarmRoast loaded = new WarmRoast(null, 1000000, 16);
+        loaded.setCompactTree(true);
+        ProfileFile.load(loaded, file);
+
+        McpMapping mapping = new McpMapping();
+        assertEquals(2, loaded.getData().size());
+        for (String name : new String[] { "main", "other" }) {
+            ThreadNode expected = saved.getData().get(name);
+            ThreadNode actual = loaded.getData().get(name);
+            assertEquals(expected.getTotalTime(), actual.getTotalTime());
+            assertEquals(expected.toJson(mapping), actual.toJson(mapping));
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    public void roundTripCompressed() throws IOException {
+        roundTrip(true);
+    }
+
+    @Test
+    public void loadsDeepStacks() throws IOException {
+        StackTraceElement[] stack = new StackTraceElement[2000];
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = new StackTraceElement("a.B", "m" + i, null, -1);
+        }
+        WarmRoast saved = new WarmRoast(null, 1000000, 16);
+        saved.getNode("main").log(stack, 5);
+        saved.getNode("main").log(Arrays.copyOfRange(stack, 1000, 2000), 2);
+
+        File file = folder.newFile();
+        ProfileFile.save(saved, file, true);
+        WarmRoast loaded = new WarmRoast(null, 1000000, 16);
+        ProfileFile.load(loaded, file);
+
+        CallTree tree = loaded.getData().get("main").getTree();
+        assertEquals(2000, tree.size());
+        assertEquals(7, tree.getTotalTime());
+        assertEquals(saved.getData().get("main").toJson(new McpMapping()),
+                loaded.getData().get("main").toJson(new McpMapping()));
+    }
+
+    private void assertCorrupt(byte[] bytes) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        try {
+            ProfileFile.load(new WarmRoast(null, 1000000, 16), file);
+            fail("Loaded a corrupt profile");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(file + " is corrupt: "));
+        }
+    }
+
+    @Test
+    public void corruptFilesFailToLoad() throws IOException {
+        WarmRoast saved = new WarmRoast(null, 1000000, 16);
+        saved.getNode("main").log(STACK, 10);
+        File file = folder.newFile();
+        ProfileFile.save(saved, file, false);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        assertCorrupt(Arrays.copyOf(bytes, bytes.length - 1));
+
+        // Counts and indexes that a varint can hold but the file can't,
+        // after the header, the time written, the sample count and the interval
+        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(prefix);
+        out.writeInt(ProfileFile.MAGIC);
+        out.writeByte(ProfileFile.VERSION);
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeByte(0);
+        for (int[] varints : new int[][] {
+                { -1 }, // Negative string count
+                { 1000000 }, // String count larger than the file
+                { 1, 1, 'a', 1, 0, 1 }, // String index past the table
+                { 1, 1, 'a', 1, 0, -1 }, // Negative string index
+                { 0, 0, 1, -1 }, // Negative thread name length
+                { 0, 0, 1, 0, 0, 1, 0 }, // Frame index past the table
+        }) {
+            ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+            corrupt.write(prefix.toByteArray());
+            DataOutputStream data = new DataOutputStream(corrupt);
+            for (int value : varints) {
+                Varints.writeVarInt(data, value);
+            }
+            assertCorrupt(corrupt.toByteArray());
+        }
+    }
+
+    @Test
+    public void failedSaveLeavesNoTemporaryFile() throws IOException {
+        WarmRoast saved = new WarmRoast(null, 1000000, 16);
+        saved.getNode("main").log(STACK, 10);
+        // A directory that isn't empty can't be replaced by the saved file
+        File file = folder.newFolder("profile.wrp");
+        new File(file, "child").createNewFile();
+        try {
+            ProfileFile.save(saved, file, false);
+            fail("Replaced a directory");
+        } catch (IOException expected) {
+        }
+        assertFalse(new File(folder.getRoot(), "profile.wrp.tmp").exists());
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RateControllerTest {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void backsOffAtOnce() {
+        RateController rate = new RateController(0.01, 10 * MS);
+        assertEquals(10 * MS, rate.getInterval());
+        // 50µs over 100 threads is under 1% of 10ms
+        assertEquals(10 * MS, rate.update(50000, 100));
+        // A 2ms capture needs 200ms to stay within 1%, without averaging it
+        // with the cheaper capture before it
+        assertEquals(200 * MS, rate.update(2 * MS, 100));
+        assertEquals(RateController.MAX_INTERVAL, rate.update(100 * MS, 100));
+    }
+
+    @Test
+    public void speedsUpGradually() {
+        RateController rate = new RateController(0.01, MS);
+        long slow = rate.update(5 * MS, 10);
+        assertEquals(500 * MS, slow);
+        long next = rate.update(0, 10);
+        assertEquals((long) (slow * 0.8), next);
+        for (int i = 0; i < 100; i++) {
+            next = rate.update(0, 10);
+        }
+        assertEquals(MS, next);
+    }
+
+    @Test
+    public void averagesOnlyCheaperCaptures() {
+        RateController rate = new RateController(0.01, MS);
+        assertEquals(500 * MS, rate.update(5 * MS, 10));
+        // A fifth of the way from 5ms to 0, and no more than a fifth shorter
+        assertEquals(400 * MS, rate.update(0, 10));
+        // A costlier capture than the average replaces it
+        assertEquals(450 * MS, rate.update((long) (4.5 * MS), 10));
+    }
+
+    @Test
+    public void predictsFromThreadCount() {
+        RateController rate = new RateController(0.01, MS);
+        assertEquals(100 * MS, rate.update(MS, 10));
+        // The same cost per thread, with five times the threads
+        assertEquals(500 * MS, rate.update(5 * MS, 50));
+        assertEquals(500 * MS, rate.update(5 * MS, 50));
+    }
+
+}
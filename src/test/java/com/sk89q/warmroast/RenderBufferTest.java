@@ -0,0 +1,44 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class RenderBufferTest {
+
+    private final RenderBuffer buffer = new RenderBuffer();
+
+    private String fixed2(double value) throws IOException {
+        StringWriter writer = new StringWriter();
+        buffer.writeFixed2(writer, value);
+        return writer.toString();
+    }
+
+    private String percent(double fraction) throws IOException {
+        StringWriter writer = new StringWriter();
+        buffer.writePercent(writer, fraction);
+        return writer.toString();
+    }
+
+    @Test
+    public void writeFixed2() throws IOException {
+        assertEquals("0.00", fixed2(0));
+        assertEquals("100.00", fixed2(100));
+        assertEquals("33.33", fixed2(100 / 3.0));
+        assertEquals("66.67", fixed2(200 / 3.0));
+        assertEquals("5.10", fixed2(5.1));
+    }
+
+    @Test
+    public void writePercent() throws IOException {
+        assertEquals("0%", percent(0));
+        assertEquals("100%", percent(1));
+        assertEquals("50%", percent(0.5));
+        assertEquals("12.5%", percent(0.125));
+        assertEquals("33.33%", percent(1 / 3.0));
+    }
+
+}
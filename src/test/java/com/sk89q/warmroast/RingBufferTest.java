@@ -0,0 +1,29 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void dropsWhenFull() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(1, buffer.getDropped());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.offer(5));
+        assertEquals(Integer.valueOf(5), buffer.poll());
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class StackFolderTest {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    /**
+     * Build a stack from frames given outermost first, as "class.method".
+     */
+    private static StackTraceElement[] stack(String... frames) {
+        StackTraceElement[] stack = new StackTraceElement[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            int dot = frames[i].lastIndexOf('.');
+            stack[frames.length - 1 - i] = new StackTraceElement(
+                    frames[i].substring(0, dot), frames[i].substring(dot + 1), null, -1);
+        }
+        return stack;
+    }
+
+    private static String fold(StackFolder folder, FrameTable frames, StackTraceElement[] stack) {
+        int length = folder.fold(stack, frames);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            names.add(frames.get(folder.getPath()[i]).toString());
+        }
+        return String.join(" > ", names);
+    }
+
+    @Test
+    public void keepsInnermostFrames() {
+        FrameTable frames = new FrameTable();
+        StackFolder folder = new StackFolder(2, NONE, false);
+        assertEquals("(outer frames omitted) > a.B.two() > a.B.three()",
+                fold(folder, frames, stack("a.B.one", "a.B.two", "a.B.three")));
+        assertEquals("(outer frames omitted) > a.B.one() > a.B.two()",
+                fold(folder, frames, stack("a.B.one", "a.B.two")));
+        assertEquals("a.B.one()", fold(folder, frames, stack("a.B.one")));
+    }
+
+    @Test
+    public void foldsPackagesIntoTheirEntry() {
+        FrameTable frames = new FrameTable();
+        StackFolder folder = new StackFolder(0, Arrays.asList("java.*", "sun"), false);
+        assertEquals("java.lang.Thread.run() > a.Server.tick() > java.util.HashMap.get() > a.Key.hashCode()",
+                fold(folder, frames, stack("java.lang.Thread.run", "a.Server.tick",
+                        "java.util.HashMap.get", "java.util.HashMap.getNode", "sun.misc.Unsafe.park",
+                        "a.Key.hashCode")));
+        assertEquals("a.Server.tick() > javax.Foo.bar()",
+                fold(folder, frames, stack("a.Server.tick", "javax.Foo.bar")));
+    }
+
+    @Test
+    public void foldsRecursion() {
+        FrameTable frames = new FrameTable();
+        StackFolder folder = new StackFolder(0, NONE, true);
+        assertEquals("a.W.gen() > a.W.chunk() > a.W.block()",
+                fold(folder, frames, stack("a.W.gen", "a.W.chunk", "a.W.gen", "a.W.chunk",
+                        "a.W.gen", "a.W.chunk", "a.W.block")));
+        assertEquals("a.W.gen() > a.W.chunk() > a.W.block()",
+                fold(folder, frames, stack("a.W.gen", "a.W.chunk", "a.W.block", "a.W.chunk",
+                        "a.W.block")));
+    }
+
+    @Test
+    public void boundsTreeSize() {
+        FrameTable frames = new FrameTable();
+        StackFolder folder = new StackFolder(0, NONE, true);
+        CallTree tree = new CompactCallTree(frames, new RevisionCounter());
+        for (int depth = 1; depth < 500; depth++) {
+            String[] names = new String[depth + 1];
+            names[0] = "a.T.run";
+            for (int i = 1; i <= depth; i++) {
+                names[i] = i % 2 == 0 ? "a.R.even" : "a.R.odd";
+            }
+            int length = folder.fold(stack(names), frames);
+            tree.log(folder.getPath(), length, 1);
+        }
+        assertEquals(3, tree.size());
+        assertEquals(499, tree.getTotalTime());
+    }
+
+    @Test
+    public void roundTripsOptions() {
+        StackFolder folder = new StackFolder(40, Arrays.asList("java.", "sun.*"), true);
+        Map<String, String> options = new HashMap<>();
+        folder.toOptions(options);
+        StackFolder read = StackFolder.fromOptions(options);
+        FrameTable frames = new FrameTable();
+        StackTraceElement[] stack = stack("a.A.a", "java.B.b", "sun.C.c", "a.A.a", "a.D.d");
+        assertEquals(fold(folder, frames, stack), fold(read, frames, stack));
+        assertEquals(40, read.getMaxDepth());
+        assertEquals(null, StackFolder.fromOptions(new HashMap<String, String>()));
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ThreadSelectionTest {
+
+    private static final long[] IDS = { 1, 2, 3, 4 };
+    private static final String[] NAMES = { "main", "Server thread", "Netty IO #1", "Netty IO #2" };
+    private static final String[] GROUPS = { "main", "main", "netty", "netty" };
+    private static final List<String> NONE = Collections.emptyList();
+
+    @Test
+    public void picksAnyMatch() {
+        ThreadSelection selection = new ThreadSelection(Arrays.asList("Server thread"),
+                Pattern.compile("Netty IO #\\d"), Arrays.asList(1L), null, 0, 1);
+        assertArrayEquals(new long[] { 1, 2, 3, 4 }, selection.select(IDS, NAMES, null, null));
+
+        selection = new ThreadSelection(NONE, null, Collections.<Long>emptyList(), "netty", 0, 1);
+        assertArrayEquals(new long[] { 3, 4 }, selection.select(IDS, NAMES, GROUPS, null));
+
+        // The pattern must match the whole name
+        selection = new ThreadSelection(NONE, Pattern.compile("Netty"),
+                Collections.<Long>emptyList(), null, 0, 1);
+        assertArrayEquals(new long[0], selection.select(IDS, NAMES, null, null));
+    }
+
+    @Test
+    public void keepsTopCpuSinceLastSelection() {
+        ThreadSelection selection = new ThreadSelection(NONE, Pattern.compile("Netty.*|main"),
+                Collections.<Long>emptyList(), null, 2, 1);
+        assertArrayEquals(new long[] { 4, 1 },
+                selection.select(IDS, NAMES, null, new long[] { 50, 999, 10, 70 }));
+        // Thread 3 used the most since, and thread 2 is never picked
+        assertArrayEquals(new long[] { 3, 1 },
+                selection.select(IDS, NAMES, null, new long[] { 60, 5000, 100, 75 }));
+    }
+
+    @Test
+    public void roundTripsOptions() {
+        ThreadSelection selection = new ThreadSelection(Arrays.asList("a,b", "c d"),
+                Pattern.compile("x.*"), Arrays.asList(7L, 9L), "g", 3, 5000);
+        Map<String, String> options = new HashMap<>();
+        selection.toOptions(options);
+        ThreadSelection read = ThreadSelection.fromOptions(options);
+        assertEquals(5000, read.getRefreshInterval());
+        long[] ids = { 7, 8, 9, 10, 11, 12 };
+        String[] names = { "q", "a,b", "r", "c d", "xy", "s" };
+        String[] groups = { "h", "h", "h", "h", "h", "g" };
+        assertArrayEquals(selection.select(ids, names, groups, null),
+                read.select(ids, names, groups, null));
+        assertArrayEquals(new long[] { 7, 8, 9, 10, 11, 12 }, read.select(ids, names, groups, null));
+        assertNull(ThreadSelection.fromOptions(new HashMap<String, String>()));
+    }
+
+}
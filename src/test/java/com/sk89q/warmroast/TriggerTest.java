@@ -0,0 +1,68 @@
+package com.sk89q.warmroast;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TriggerTest {
+
+    private static final long MS = Node.NANOS_PER_MS;
+
+    @Test
+    public void parse() {
+        assertTrue(Trigger.parse("cpu:Server thread:90") instanceof ThreadCpuTrigger);
+        assertTrue(Trigger.parse("cpu:a:b:50") instanceof ThreadCpuTrigger);
+        assertTrue(Trigger.parse("gc:100") instanceof GcTrigger);
+        assertEquals("frame", Trigger.parse("frame:a.b.C.tick:50").getName());
+
+        for (String spec : new String[] { "cpu", "cpu:90", "gc:x", "gc:a:10", "frame:tick:50",
+                "frame:a.B.:50", "load:10", "gc:0" }) {
+            try {
+                Trigger.parse(spec);
+                fail("Accepted " + spec);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void frameTrigger() {
+        ThreadInfo inside = ManagementFactory.getThreadMXBean()
+                .getThreadInfo(Thread.currentThread().getId(), Integer.MAX_VALUE);
+        Trigger trigger = Trigger.parse("frame:" + TriggerTest.class.getName() + ".frameTrigger:25");
+
+        assertFalse(trigger.sample(inside, 10 * MS));
+        assertFalse(trigger.sample(inside, 10 * MS));
+        assertTrue(trigger.sample(inside, 10 * MS));
+        assertFalse(trigger.sample(inside, 10 * MS));
+
+        Trigger other = Trigger.parse("frame:" + TriggerTest.class.getName() + ".parse:25");
+        for (int i = 0; i < 4; i++) {
+            assertFalse(other.sample(inside, 10 * MS));
+        }
+    }
+
+    @Test
+    public void capturesTakeTheOldestPlace() {
+        WarmRoast vm = new WarmRoast(null, 1000000, 16);
+        List<WarmRoast> roasts = new CopyOnWriteArrayList<>(Collections.singletonList(vm));
+        TriggerCaptures captures = new TriggerCaptures(roasts, 2);
+        WarmRoast[] saved = new WarmRoast[4];
+        for (int i = 0; i < saved.length; i++) {
+            saved[i] = new WarmRoast(null, 1000000, 16);
+            captures.accept(saved[i]);
+        }
+        assertEquals(Arrays.asList(vm, saved[2], saved[3]), roasts);
+    }
+
+}